@@ -0,0 +1,204 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * Measures the hot paths of the rules engine over a fixed corpus of positions
+ * Each entry point is warmed up and then timed on every position, reporting operations per second
+ * and the bytes allocated per operation, so numbers can be compared before and after engine changes
+ * Usage: java Benchmark [filter] [milliseconds per iteration]
+ * @author Stephen S
+ *
+ */
+public class Benchmark {
+	
+	//name and moves from the starting position, in from-to coordinates
+	private static final String[][] POSITIONS = {
+		{"start", ""},
+		{"opening", "e2e4 e7e5 g1f3 b8c6 f1b5 a7a6"},
+		{"middlegame", "e2e4 e7e5 g1f3 b8c6 f1c4 f8c5 c2c3 g8f6 d2d4 e5d4 c3d4 c5b4 b1c3 f6e4 e1g1 e4c3 b2c3 b4c3"},
+		{"endgame", "b2b3 a7a6 c2c3 b7b5 f2f4 f7f5 a2a3 d7d6 e2e4 f5e4 c3c4 d6d5 h2h3 c8h3 g2h3 b5c4 d2d3 d5d4 f4f5 a6a5 "
+				+ "d3e4 c4b3 d1b3 c7c6 b3g8 g7g5 g8h8 e7e6 h8f8 e8f8 e4e5 g5g4 f5e6 a5a4 h3g4 d8e8 h1h7 e8e6 g4g5 e6e5 "
+				+ "e1d2 e5g5 d2d3 g5c1 d3d4 c1b1 a1b1 c6c5 d4c5 a8a5 f1b5 a5b5 b1b5 f8g8 b5b8"},
+		{"en passant", "e2e4 a7a6 e4e5 d7d5"},
+		{"castling", "e2e4 e7e5 g1f3 b8c6 f1c4 f8c5"},
+		{"promotion", "e2e4 c7c6 e4e5 c6c5 c2c3 c5c4 f1c4 b7b6 f2f3 b6b5 g2g4 f7f5 e5f6 e7e5 h2h4 d7d6 f6g7 h7h5"}
+	};
+	
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASURED_ITERATIONS = 5;
+	private static final int BATCH = 64;
+	
+	//results are written here so the JIT cannot throw the work away
+	private static volatile long sink;
+	private static Object keep;
+	
+	//reused by the generate benchmark, as a search reuses one list per ply
+	private static MoveList list = new MoveList();
+	
+	//reused by the FEN benchmarks, as a pipeline would reuse them from position to position
+	private static StringBuilder fenBuilder = new StringBuilder();
+	private static Board fenBoard;
+	private static String fen;
+	
+	/**
+	 * One call of the code being measured
+	 */
+	private interface Operation {
+		long run(Board board, Move move);
+	}
+	
+	/**
+	 * Runs every benchmark whose name contains the filter
+	 * @param args optional filter and iteration length in milliseconds
+	 */
+	public static void main(String[] args) {
+		String filter = args.length > 0 ? args[0] : "";
+		long iterationMillis = args.length > 1 ? Long.parseLong(args[1]) : 500;
+		
+		//nothing has touched Bitboard yet, so this call pays for building its attack tables
+		long tableStart = System.nanoTime();
+		long tableBytes = Bitboard.tableBytes();
+		System.out.printf("attack tables built in %.1f ms, %d KB%n%n", (System.nanoTime() - tableStart) / 1e6, tableBytes / 1024);
+		fenBoard = new Board();
+		
+		String[] names = {"Board(Board)", "make/unmake", "check detection", "square attacks", "generate", "Game.getMoves", "Game.isGameOver",
+			"FEN read", "FEN write", "evaluate"};
+		Operation[] operations = {
+			(board, move) -> {
+				Board copy = new Board(board);
+				keep = copy;
+				return 1;
+			},
+			(board, move) -> {
+				board.makeMove(move.getCode());
+				long key = board.getKey();
+				board.unmakeMove();
+				return key;
+			},
+			(board, move) -> {
+				MoveGenerator generator = new MoveGenerator(board);
+				generator.update();
+				return generator.inCheck() ? 1 : 0;
+			},
+			(board, move) -> {
+				long attacked = 0;
+				for (int square = 0; square < Board.SQUARES; square++) {
+					if (board.isSquareAttacked(square, !board.isWhiteTurn())) {
+						attacked++;
+					}
+				}
+				return attacked;
+			},
+			(board, move) -> {
+				MoveGenerator generator = new MoveGenerator(board);
+				generator.update();
+				list.clear();
+				generator.generate(list);
+				return list.size();
+			},
+			(board, move) -> {
+				Game game = new Game(board);
+				long count = 0;
+				for (long own = board.getOccupancy(board.isWhiteTurn()); own != 0; own &= own - 1) {
+					count += game.getMoves(board.get(Bitboard.first(own))).size();
+				}
+				return count;
+			},
+			(board, move) -> new Game(board).isGameOver(),
+			(board, move) -> {
+				fenBoard.setPosition(fen);
+				return fenBoard.getKey();
+			},
+			(board, move) -> {
+				fenBuilder.setLength(0);
+				return board.appendFen(fenBuilder).length();
+			},
+			(board, move) -> Evaluation.evaluate(board)
+		};
+		
+		System.out.printf("%-18s %-12s %16s %14s%n", "benchmark", "position", "ops/s", "B/op");
+		
+		for (int i = 0; i < names.length; i++) {
+			if (!names[i].contains(filter)) {
+				continue;
+			}
+			
+			for (String[] position : POSITIONS) {
+				Board board = new Board();
+				Game game = new Game(board);
+				for (String move : position[1].split(" ")) {
+					if (!move.isEmpty()) {
+						Move m = game.findMove(move);
+						if (m == null) {
+							throw new IllegalArgumentException("Illegal move in benchmark corpus: " + move);
+						}
+						game.move(m);
+					}
+				}
+				
+				fen = board.toFen();
+				measure(names[i], position[0], operations[i], board, firstLegalMove(game, board), iterationMillis);
+			}
+		}
+	}
+	
+	/**
+	 * Warms up and then times one operation on one position
+	 */
+	private static void measure(String name, String position, Operation operation, Board board, Move move, long iterationMillis) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iterate(operation, board, move, iterationMillis);
+		}
+		
+		long ops = 0;
+		long start = System.nanoTime();
+		long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+		
+		for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+			ops += iterate(operation, board, move, iterationMillis);
+		}
+		
+		long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+		double seconds = (System.nanoTime() - start) / 1e9;
+		
+		System.out.printf("%-18s %-12s %16.0f %14.1f%n", name, position, ops / seconds, (double) allocated / ops);
+	}
+	
+	/**
+	 * Runs an operation in batches until the iteration time is used up
+	 * @return the number of operations run
+	 */
+	private static long iterate(Operation operation, Board board, Move move, long iterationMillis) {
+		long end = System.nanoTime() + iterationMillis * 1000000;
+		long ops = 0;
+		long result = 0;
+		
+		do {
+			for (int i = 0; i < BATCH; i++) {
+				result += operation.run(board, move);
+			}
+			ops += BATCH;
+		} while (System.nanoTime() < end);
+		
+		sink = result;
+		return ops;
+	}
+	
+	/**
+	 * @return the first legal move on the board, used by the make/unmake benchmark
+	 */
+	private static Move firstLegalMove(Game game, Board board) {
+		for (long own = board.getOccupancy(board.isWhiteTurn()); own != 0; own &= own - 1) {
+			ArrayList<Move> moves = game.getMoves(board.get(Bitboard.first(own)));
+			for (Move m : moves) {
+				if (m.legal) {
+					return m;
+				}
+			}
+		}
+		throw new IllegalArgumentException("No legal move in benchmark corpus position");
+	}
+}
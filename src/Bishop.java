@@ -5,12 +5,13 @@
  *
  */
 public class Bishop extends Piece {
-
+	
 	/**
 	 * Calls superclass constructor
 	 * @param isWhite color of the piece
+	 * @param id slot in the board's location index
 	 */
-	public Bishop(boolean isWhite) {
-		super(isWhite);
+	public Bishop(boolean isWhite, int id) {
+		super(isWhite, BISHOP, id);
 	}
 }
@@ -0,0 +1,353 @@
+/**
+ * Static helpers for 64-bit boards, one bit per square
+ * Squares are numbered y * SIDES + x, so a1 is bit 0 and h8 is bit 63, matching Board's (x, y) coordinates
+ * Attack sets come from tables built once when the class loads: one entry per square for knights, kings and pawns,
+ * and magic bitboard tables for rooks and bishops, which hash the blocking pieces on a square's lines to its attack set
+ * @author Stephen S
+ *
+ */
+public final class Bitboard {
+	
+	public static final long FILE_A = 0x0101010101010101L;
+	public static final long FILE_B = FILE_A << 1;
+	public static final long FILE_G = FILE_A << 6;
+	public static final long FILE_H = FILE_A << 7;
+	public static final long RANK_1 = 0xFFL;
+	public static final long RANK_8 = RANK_1 << 56;
+	
+	//multipliers that map every blocker set of a square to its own table entry, found by a seeded random search
+	private static final long[] ROOK_MAGICS = {
+		0x0480053081214000L, 0x0040100040002001L, 0x6080200080100008L, 0x0200082004411200L,
+		0x0200102008040200L, 0x1100240028210012L, 0x1080008001000200L, 0x0100020028488100L,
+		0x0001800220400086L, 0x2488804000802004L, 0x0C00801000200081L, 0x201C801000080080L,
+		0x0441000800100500L, 0x00A0808002000400L, 0x0125000402000100L, 0x0001002200409100L,
+		0x0280004020004000L, 0x5110084020004000L, 0x0001050020024011L, 0x0002020020081040L,
+		0x0800050008010010L, 0x81C0808002000400L, 0x8010808001000200L, 0x000006000100408CL,
+		0x0280400080008020L, 0x3000500040002000L, 0x8400200080801000L, 0x80A01001000D0020L,
+		0x900C001101000800L, 0x0110040080800200L, 0x1001000100040200L, 0x0060040200008041L,
+		0x4480804000800038L, 0x0040002001804080L, 0x2010882000801000L, 0x0000080282801000L,
+		0x0200080080800400L, 0x0206000400808002L, 0x2000020001010004L, 0x1014042042000091L,
+		0x0200208040008000L, 0x0040201000404002L, 0x0244200100110041L, 0x0041019000090020L,
+		0x0A28001100850008L, 0x0020020004008080L, 0x1001220108140010L, 0x8A0400408106000CL,
+		0x0000220100508200L, 0x6040048049003100L, 0x0000200011024300L, 0x0000900100082500L,
+		0x0870040008008080L, 0x0850800600040180L, 0x0006008104480200L, 0x1800040108B04200L,
+		0xD12C201080010341L, 0x0101042040008013L, 0x2801004008200273L, 0x001900614C500009L,
+		0x0202004461500802L, 0x0002001008040102L, 0x10001028B1080604L, 0x000D000040803201L
+	};
+	private static final long[] BISHOP_MAGICS = {
+		0x6460220208002480L, 0x8308C80104002010L, 0xB408121042008000L, 0x0C48205040021000L,
+		0x1002021000020000L, 0x0840882440802010L, 0x0080809008204040L, 0x00001402011028A0L,
+		0x088EC002040400B0L, 0x0005500608087180L, 0x0000A20089020010L, 0x000010908602C060L,
+		0x2810420210014000L, 0x0040024802400080L, 0x0408484230100840L, 0x00020A08A4011800L,
+		0x0020003062062848L, 0x0002504510440102L, 0xA23005310C008810L, 0x0048000104110044L,
+		0x010A000422010008L, 0x2021000200A0A400L, 0x0004400208124801L, 0x8000280480841000L,
+		0x8110100206600229L, 0x0814204102080909L, 0x00A0300002040840L, 0x8808080000202020L,
+		0x04040400C0410040L, 0x108404200C101400L, 0x01C1012000480802L, 0xA020520040420200L,
+		0x2404100800062001L, 0x0002014400208804L, 0x0100805000410402L, 0x0241420080080080L,
+		0x8040040444030100L, 0x0F50064242020110L, 0x0001020200888818L, 0x0801021200018069L,
+		0x2803086094A01040L, 0x2440482804444800L, 0x0002002024200804L, 0x880101420800C084L,
+		0x40A4182008200900L, 0x8420008102041040L, 0x00901001304A0508L, 0x0450021448519100L,
+		0x0402021002080A10L, 0x000D01009084020CL, 0x20800A0046480040L, 0x0000083020880220L,
+		0x0001010803040142L, 0x0000081001520000L, 0x0040100420809000L, 0x0022900428808202L,
+		0x0000404044202010L, 0x1008004044108804L, 0x1008305509415000L, 0x1000840400208840L,
+		0x0810260A12020201L, 0x3000A04410020210L, 0x0903102082008204L, 0x490808088808C308L
+	};
+	
+	private static final long[] KNIGHT_ATTACKS = new long[Board.SQUARES];
+	private static final long[] KING_ATTACKS = new long[Board.SQUARES];
+	private static final long[] WHITE_PAWN_ATTACKS = new long[Board.SQUARES];
+	private static final long[] BLACK_PAWN_ATTACKS = new long[Board.SQUARES];
+	
+	//squares whose pieces can block each slider square, leaving out the board edge
+	private static final long[] ROOK_MASKS = new long[Board.SQUARES];
+	private static final long[] BISHOP_MASKS = new long[Board.SQUARES];
+	private static final int[] ROOK_SHIFTS = new int[Board.SQUARES];
+	private static final int[] BISHOP_SHIFTS = new int[Board.SQUARES];
+	
+	//each square's attack sets start at its offset in the shared table
+	private static final int[] ROOK_OFFSETS = new int[Board.SQUARES];
+	private static final int[] BISHOP_OFFSETS = new int[Board.SQUARES];
+	private static final long[] ROOK_TABLE;
+	private static final long[] BISHOP_TABLE;
+	
+	private static final long[][] BETWEEN = new long[Board.SQUARES][Board.SQUARES];
+	
+	static {
+		for (int square = 0; square < Board.SQUARES; square++) {
+			KNIGHT_ATTACKS[square] = computeKnightAttacks(square);
+			KING_ATTACKS[square] = computeKingAttacks(square);
+			WHITE_PAWN_ATTACKS[square] = computePawnAttacks(true, square);
+			BLACK_PAWN_ATTACKS[square] = computePawnAttacks(false, square);
+		}
+		
+		ROOK_TABLE = buildSliderTable(true, ROOK_MASKS, ROOK_MAGICS, ROOK_SHIFTS, ROOK_OFFSETS);
+		BISHOP_TABLE = buildSliderTable(false, BISHOP_MASKS, BISHOP_MAGICS, BISHOP_SHIFTS, BISHOP_OFFSETS);
+		
+		for (int from = 0; from < Board.SQUARES; from++) {
+			for (int to = 0; to < Board.SQUARES; to++) {
+				BETWEEN[from][to] = computeBetween(from, to);
+			}
+		}
+	}
+	
+	private Bitboard() {
+	}
+	
+	/**
+	 * @return the number of bytes the attack tables take up
+	 */
+	public static long tableBytes() {
+		long longs = 6L * Board.SQUARES + ROOK_MAGICS.length + BISHOP_MAGICS.length
+				+ ROOK_TABLE.length + BISHOP_TABLE.length + (long) Board.SQUARES * Board.SQUARES;
+		long ints = 4L * Board.SQUARES;
+		
+		return longs * Long.BYTES + ints * Integer.BYTES;
+	}
+	
+	/**
+	 * @param x
+	 * @param y
+	 * @return the square index of (x, y)
+	 */
+	public static int square(int x, int y) {
+		return y * Board.SIDES + x;
+	}
+	
+	/**
+	 * @param square
+	 * @return the x coordinate (file) of the square
+	 */
+	public static int x(int square) {
+		return square & (Board.SIDES - 1);
+	}
+	
+	/**
+	 * @param square
+	 * @return the y coordinate (rank) of the square
+	 */
+	public static int y(int square) {
+		return square >>> 3;
+	}
+	
+	/**
+	 * @param square
+	 * @return the name of the square, such as e4
+	 */
+	public static String name(int square) {
+		return "" + (char) ('a' + x(square)) + (char) ('1' + y(square));
+	}
+	
+	/**
+	 * @param name a square name such as e4
+	 * @return the square index, or -1 if the name is not a square
+	 */
+	public static int parse(String name) {
+		if (name.length() != 2) {
+			return -1;
+		}
+		
+		int x = name.charAt(0) - 'a';
+		int y = name.charAt(1) - '1';
+		
+		if (x < 0 || x >= Board.SIDES || y < 0 || y >= Board.SIDES) {
+			return -1;
+		}
+		return square(x, y);
+	}
+	
+	/**
+	 * @param square
+	 * @return a bitboard with only that square set
+	 */
+	public static long bit(int square) {
+		return 1L << square;
+	}
+	
+	/**
+	 * @param bits
+	 * @return the lowest set square of a non-empty bitboard
+	 */
+	public static int first(long bits) {
+		return Long.numberOfTrailingZeros(bits);
+	}
+	
+	/**
+	 * Squares a knight on the given square attacks
+	 * @param square
+	 * @return attack set
+	 */
+	public static long knightAttacks(int square) {
+		return KNIGHT_ATTACKS[square];
+	}
+	
+	/**
+	 * Squares a king on the given square attacks
+	 * @param square
+	 * @return attack set
+	 */
+	public static long kingAttacks(int square) {
+		return KING_ATTACKS[square];
+	}
+	
+	/**
+	 * Squares a pawn of the given color on the given square attacks
+	 * @param white color of the pawn
+	 * @param square
+	 * @return attack set
+	 */
+	public static long pawnAttacks(boolean white, int square) {
+		return white ? WHITE_PAWN_ATTACKS[square] : BLACK_PAWN_ATTACKS[square];
+	}
+	
+	/**
+	 * Squares a rook on the given square attacks, stopping at (and including) the first occupied square in each direction
+	 * @param square
+	 * @param occupied every occupied square
+	 * @return attack set
+	 */
+	public static long rookAttacks(int square, long occupied) {
+		return ROOK_TABLE[ROOK_OFFSETS[square] + (int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square])];
+	}
+	
+	/**
+	 * Squares a bishop on the given square attacks, stopping at (and including) the first occupied square in each direction
+	 * @param square
+	 * @param occupied every occupied square
+	 * @return attack set
+	 */
+	public static long bishopAttacks(int square, long occupied) {
+		return BISHOP_TABLE[BISHOP_OFFSETS[square] + (int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square])];
+	}
+	
+	/**
+	 * Squares strictly between two squares on the same rank, file or diagonal
+	 * @param from
+	 * @param to
+	 * @return the squares in between, or 0 if the squares do not share a line
+	 */
+	public static long between(int from, int to) {
+		return BETWEEN[from][to];
+	}
+	
+	/**
+	 * Fills the masks, shifts and offsets of one slider type and builds its attack table
+	 * Every subset of a square's mask is hashed by its magic, and the ray walk for that subset is stored there
+	 * @param rook true for rooks, false for bishops
+	 * @return the shared attack table
+	 */
+	private static long[] buildSliderTable(boolean rook, long[] masks, long[] magics, int[] shifts, int[] offsets) {
+		int size = 0;
+		for (int square = 0; square < Board.SQUARES; square++) {
+			masks[square] = rook ? edgeless(square, 1, 0) | edgeless(square, -1, 0) | edgeless(square, 0, 1) | edgeless(square, 0, -1)
+					: edgeless(square, 1, 1) | edgeless(square, 1, -1) | edgeless(square, -1, 1) | edgeless(square, -1, -1);
+			shifts[square] = Long.SIZE - Long.bitCount(masks[square]);
+			offsets[square] = size;
+			size += 1 << Long.bitCount(masks[square]);
+		}
+		
+		long[] table = new long[size];
+		for (int square = 0; square < Board.SQUARES; square++) {
+			long mask = masks[square];
+			
+			//walk every subset of the mask
+			long blockers = 0;
+			do {
+				int index = offsets[square] + (int) ((blockers * magics[square]) >>> shifts[square]);
+				table[index] = rook ? computeRookAttacks(square, blockers) : computeBishopAttacks(square, blockers);
+				blockers = (blockers - mask) & mask;
+			} while (blockers != 0);
+		}
+		return table;
+	}
+	
+	/**
+	 * @return the squares of one ray from a square that a blocker can stand on, which leaves out the square at the edge
+	 */
+	private static long edgeless(int square, int deltaX, int deltaY) {
+		long ray = ray(square, 0, deltaX, deltaY);
+		if (ray == 0) {
+			return 0;
+		}
+		
+		//the last square of a ray is the lowest bit when the ray runs towards a1, otherwise the highest
+		long edge = deltaY * Board.SIDES + deltaX < 0 ? Long.lowestOneBit(ray) : Long.highestOneBit(ray);
+		return ray & ~edge;
+	}
+	
+	private static long computeKnightAttacks(int square) {
+		long b = bit(square);
+		long notA = ~FILE_A;
+		long notAB = ~(FILE_A | FILE_B);
+		long notH = ~FILE_H;
+		long notGH = ~(FILE_G | FILE_H);
+		
+		return ((b << 17) & notA) | ((b << 15) & notH) | ((b << 10) & notAB) | ((b << 6) & notGH)
+				| ((b >>> 17) & notH) | ((b >>> 15) & notA) | ((b >>> 10) & notGH) | ((b >>> 6) & notAB);
+	}
+	
+	private static long computeKingAttacks(int square) {
+		long b = bit(square);
+		long sides = ((b << 1) & ~FILE_A) | ((b >>> 1) & ~FILE_H);
+		long row = b | sides;
+		
+		return sides | (row << 8) | (row >>> 8);
+	}
+	
+	private static long computePawnAttacks(boolean white, int square) {
+		long b = bit(square);
+		long sides = ((b << 1) & ~FILE_A) | ((b >>> 1) & ~FILE_H);
+		
+		return white ? sides << 8 : sides >>> 8;
+	}
+	
+	private static long computeRookAttacks(int square, long occupied) {
+		return ray(square, occupied, 1, 0) | ray(square, occupied, -1, 0)
+				| ray(square, occupied, 0, 1) | ray(square, occupied, 0, -1);
+	}
+	
+	private static long computeBishopAttacks(int square, long occupied) {
+		return ray(square, occupied, 1, 1) | ray(square, occupied, 1, -1)
+				| ray(square, occupied, -1, 1) | ray(square, occupied, -1, -1);
+	}
+	
+	private static long computeBetween(int from, int to) {
+		long fromBit = bit(from);
+		long toBit = bit(to);
+		
+		if ((computeRookAttacks(from, 0) & toBit) != 0) {
+			return computeRookAttacks(from, toBit) & computeRookAttacks(to, fromBit);
+		}
+		if ((computeBishopAttacks(from, 0) & toBit) != 0) {
+			return computeBishopAttacks(from, toBit) & computeBishopAttacks(to, fromBit);
+		}
+		return 0;
+	}
+	
+	/**
+	 * Walks one direction from a square until leaving the board or hitting an occupied square
+	 * @param square
+	 * @param occupied
+	 * @param deltaX
+	 * @param deltaY
+	 * @return every square passed over, including the blocking square
+	 */
+	private static long ray(int square, long occupied, int deltaX, int deltaY) {
+		long attacks = 0;
+		
+		int x = x(square) + deltaX;
+		int y = y(square) + deltaY;
+		
+		while (x >= 0 && x < Board.SIDES && y >= 0 && y < Board.SIDES) {
+			long b = bit(square(x, y));
+			attacks |= b;
+			
+			if ((occupied & b) != 0) {
+				break;
+			}
+			
+			x += deltaX;
+			y += deltaY;
+		}
+		return attacks;
+	}
+}
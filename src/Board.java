@@ -1,16 +1,105 @@
 import java.awt.Point;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
- * Board class that uses a 2D array to hold the current chess board
+ * Board class that holds the current chess board as bitboards
+ * Keeps one 64-bit word per piece type and color plus occupancy words, so set operations replace grid walks
+ * A parallel array of Pieces is kept so that get still works with piece identity,
+ * and a location index by piece id makes getLocation a single lookup
+ * Moves are made and taken back in place through an undo stack, so searching never copies the board
  * @author Stephen S
  *
  */
 public class Board {
 	
-	public Piece[][] board;
-	private boolean whiteTurn;
 	public static final int SIDES = 8;
+	public static final int SQUARES = SIDES * SIDES;
+	
+	//castling rights, one bit per king and side
+	public static final int WHITE_QUEENSIDE = 1;
+	public static final int WHITE_KINGSIDE = 2;
+	public static final int BLACK_QUEENSIDE = 4;
+	public static final int BLACK_KINGSIDE = 8;
+	public static final int NO_EN_PASSANT = -1;
+	public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+	
+	//bytes writePosition takes: a nibble per square, then the side to move and castling rights,
+	//the en passant square, the halfmove clock and a two byte move number
+	public static final int POSITION_BYTES = SQUARES / 2 + 5;
+	
+	private static final int NO_SQUARE = -1;
+	private static final int UNDO_STACK_SIZE = 256;
+	
+	//squares the rooks start on
+	private static final int[] CORNERS = {0, SIDES - 1, SQUARES - SIDES, SQUARES - 1};
+	
+	//FEN letters of the piece types, uppercase for white
+	private static final String PIECE_LETTERS = "PNBRQK";
+	
+	//pieces placed by setPosition, one per slot and type, so loading a position allocates nothing
+	private static final Piece[] SHARED_PIECES = new Piece[2 * Piece.MAX_ID * Piece.TYPES];
+	
+	static {
+		for (int slot = 0; slot < 2 * Piece.MAX_ID; slot++) {
+			boolean white = slot < Piece.MAX_ID;
+			int id = slot % Piece.MAX_ID;
+			
+			SHARED_PIECES[slot * Piece.TYPES + Piece.PAWN] = new Pawn(white, id);
+			SHARED_PIECES[slot * Piece.TYPES + Piece.KNIGHT] = new Knight(white, id);
+			SHARED_PIECES[slot * Piece.TYPES + Piece.BISHOP] = new Bishop(white, id);
+			SHARED_PIECES[slot * Piece.TYPES + Piece.ROOK] = new Rook(white, id);
+			SHARED_PIECES[slot * Piece.TYPES + Piece.QUEEN] = new Queen(white, id);
+			SHARED_PIECES[slot * Piece.TYPES + Piece.KING] = new King(white, id);
+		}
+	}
+	
+	//the piece standing on each square, indexed by Bitboard.square
+	private Piece[] squares;
+	
+	//the square of each piece, indexed by slot(piece), or NO_SQUARE if it is not on the board
+	private int[] locations;
+	
+	//one bitboard per color and piece type, indexed by index(isWhite, type)
+	private long[] pieces;
+	private long whitePieces;
+	private long blackPieces;
+	
+	private boolean whiteTurn;
+	private int castlingRights;
+	
+	//square a pawn just skipped over with a double move, or NO_EN_PASSANT
+	private int enPassant;
+	
+	//Zobrist key of the position, updated with every change
+	private long key;
+	
+	//material and piece-square sums of the evaluation, white's minus black's, and the game phase, updated along with the key
+	private int middlegame;
+	private int endgame;
+	private int phase;
+	
+	//moves since the last capture or pawn move
+	private int halfmoveClock;
+	
+	//starts at 1 and goes up after each black move
+	private int fullmoveNumber;
+	
+	//undo stack, one slot per move made with makeMove
+	private int undoCount;
+	private int[] undoMove;
+	private Piece[] undoMoved;
+	private Piece[] undoCaptured;
+	private Piece[] undoPromotions;
+	private int[] undoFrom;
+	private int[] undoTo;
+	private int[] undoCapturedSquare;
+	private int[] undoRookFrom;
+	private int[] undoRookTo;
+	private int[] undoCastlingRights;
+	private int[] undoEnPassant;
+	private int[] undoHalfmoveClock;
+	private long[] undoKey;
 	
 	/**
 	 * Constructor
@@ -18,26 +107,28 @@ public class Board {
 	 */
 	public Board() {
 		whiteTurn = true;
+		castlingRights = WHITE_QUEENSIDE | WHITE_KINGSIDE | BLACK_QUEENSIDE | BLACK_KINGSIDE;
+		enPassant = NO_EN_PASSANT;
+		key = Zobrist.castling(castlingRights);
+		halfmoveClock = 0;
+		fullmoveNumber = 1;
+		createUndoStack();
 		
-		board = new Piece[SIDES][];
+		squares = new Piece[SQUARES];
+		pieces = new long[2 * Piece.TYPES];
+		locations = new int[2 * Piece.MAX_ID];
+		Arrays.fill(locations, NO_SQUARE);
 		
-		board[0] = homeRow(true);
+		Piece[] whiteRow = homeRow(true);
+		Piece[] blackRow = homeRow(false);
 		
-		board[1] = new Piece[SIDES];
+		//the home row takes ids 0 to 7 and the pawns 8 to 15
 		for (int i = 0; i < SIDES; i++) {
-			board[1][i] = new Pawn(true);
+			put(whiteRow[i], i, 0);
+			put(new Pawn(true, SIDES + i), i, 1);
+			put(new Pawn(false, SIDES + i), i, SIDES - 2);
+			put(blackRow[i], i, SIDES - 1);
 		}
-		
-		for (int i = 2; i < SIDES - 2; i++) {
-			board[i] = new Piece[SIDES];
-		}
-		
-		board[SIDES - 2] = new Piece[SIDES];
-		for (int i = 0; i < SIDES; i++) {
-			board[SIDES - 2][i] = new Pawn(false);
-		}
-		
-		board[SIDES - 1] = homeRow(false);
 	}
 	
 	/**
@@ -46,14 +137,14 @@ public class Board {
 	 * @return
 	 */
 	private Piece[] homeRow(boolean white) {
-		return new Piece[] {new Rook(white),
-							new Knight(white),
-							new Bishop(white),
-							new Queen(white),
-							new King(white),
-							new Bishop(white),
-							new Knight(white),
-							new Rook(white) };
+		return new Piece[] {new Rook(white, 0),
+							new Knight(white, 1),
+							new Bishop(white, 2),
+							new Queen(white, 3),
+							new King(white, 4),
+							new Bishop(white, 5),
+							new Knight(white, 6),
+							new Rook(white, 7) };
 	}
 	
 	/**
@@ -62,61 +153,799 @@ public class Board {
 	 */
 	public Board(Board other) {
 		this.whiteTurn = other.whiteTurn;
+		this.castlingRights = other.castlingRights;
+		this.enPassant = other.enPassant;
+		this.key = other.key;
+		this.middlegame = other.middlegame;
+		this.endgame = other.endgame;
+		this.phase = other.phase;
+		this.halfmoveClock = other.halfmoveClock;
+		this.fullmoveNumber = other.fullmoveNumber;
+		
+		//the copy starts with no moves to take back
+		createUndoStack();
+		
+		// note that this does not copy pieces, but uses the original pieces
+		// this is necessary because piece equality is memory location
+		// pieces hold no state of their own, so sharing them between boards is safe
+		this.squares = other.squares.clone();
+		this.locations = other.locations.clone();
+		this.pieces = other.pieces.clone();
+		this.whitePieces = other.whitePieces;
+		this.blackPieces = other.blackPieces;
+	}
+	
+	/**
+	 * Copy constructor that can keep the moves made so far, so the copy can take them back
+	 * and a search on it sees the positions played before it
+	 * @param other board instance
+	 * @param history whether to copy the undo stack as well
+	 */
+	public Board(Board other, boolean history) {
+		this(other);
+		if (!history) {
+			return;
+		}
+		
+		undoCount = other.undoCount;
+		undoMove = other.undoMove.clone();
+		undoMoved = other.undoMoved.clone();
+		undoCaptured = other.undoCaptured.clone();
+		undoPromotions = other.undoPromotions.clone();
+		undoFrom = other.undoFrom.clone();
+		undoTo = other.undoTo.clone();
+		undoCapturedSquare = other.undoCapturedSquare.clone();
+		undoRookFrom = other.undoRookFrom.clone();
+		undoRookTo = other.undoRookTo.clone();
+		undoCastlingRights = other.undoCastlingRights.clone();
+		undoEnPassant = other.undoEnPassant.clone();
+		undoHalfmoveClock = other.undoHalfmoveClock.clone();
+		undoKey = other.undoKey.clone();
+	}
+	
+	/**
+	 * Creates the position described by a FEN string
+	 * @param fen
+	 * @throws IllegalArgumentException if the FEN is malformed or the position cannot be played
+	 */
+	public Board(CharSequence fen) {
+		createUndoStack();
+		squares = new Piece[SQUARES];
+		pieces = new long[2 * Piece.TYPES];
+		locations = new int[2 * Piece.MAX_ID];
+		setPosition(fen);
+	}
+	
+	/**
+	 * Replaces the position with the one described by a FEN string, clearing the undo stack
+	 * Reads the string in place and places shared pieces, so loading a position allocates nothing
+	 * The halfmove clock and move number may be left out, as in EPD, and default to 0 and 1
+	 * Castling rights whose king or rook is not on its starting square are dropped
+	 * @param fen
+	 * @throws IllegalArgumentException if the FEN is malformed or the position cannot be played,
+	 * in which case the board is left empty or partly set up
+	 */
+	public void setPosition(CharSequence fen) {
+		clearPosition();
+		
+		int length = fen.length();
+		int i = 0;
+		
+		//piece placement, from the eighth rank down
+		int x = 0;
+		int y = SIDES - 1;
+		int whiteIds = 0;
+		int blackIds = 0;
+		
+		for (; i < length && fen.charAt(i) != ' '; i++) {
+			char c = fen.charAt(i);
+			
+			if (c == '/') {
+				if (x != SIDES || y == 0) {
+					throw badFen("rank " + (y + 1) + " does not have 8 squares", fen);
+				}
+				x = 0;
+				y--;
+			} else if (c >= '1' && c <= '8') {
+				x += c - '0';
+			} else {
+				int type = PIECE_LETTERS.indexOf(Character.toUpperCase(c));
+				if (type < 0) {
+					throw badFen("unknown piece " + c, fen);
+				}
+				boolean white = Character.isUpperCase(c);
+				int id = white ? whiteIds++ : blackIds++;
+				
+				if (id == Piece.MAX_ID || x >= SIDES) {
+					throw badFen(id == Piece.MAX_ID ? "more than 16 pieces of one color" : "rank " + (y + 1) + " has more than 8 squares", fen);
+				}
+				if (type == Piece.PAWN && (y == 0 || y == SIDES - 1)) {
+					throw badFen("pawn on the first or last rank", fen);
+				}
+				put(SHARED_PIECES[slot(white, id) * Piece.TYPES + type], x++, y);
+			}
+		}
+		if (x != SIDES || y != 0) {
+			throw badFen("the board does not have 8 ranks of 8 squares", fen);
+		}
+		if (Long.bitCount(getPieces(true, Piece.KING)) != 1 || Long.bitCount(getPieces(false, Piece.KING)) != 1) {
+			throw badFen("each side needs one king", fen);
+		}
+		
+		//side to move
+		i = skipSpaces(fen, i);
+		char side = i < length ? fen.charAt(i++) : ' ';
+		if (side != 'w' && side != 'b') {
+			throw badFen("side to move must be w or b", fen);
+		}
+		whiteTurn = side == 'w';
+		
+		//castling rights
+		i = skipSpaces(fen, i);
+		int rights = 0;
+		if (i < length && fen.charAt(i) == '-') {
+			i++;
+		} else {
+			for (; i < length && fen.charAt(i) != ' '; i++) {
+				switch (fen.charAt(i)) {
+				case 'K':
+					rights |= WHITE_KINGSIDE;
+					break;
+				case 'Q':
+					rights |= WHITE_QUEENSIDE;
+					break;
+				case 'k':
+					rights |= BLACK_KINGSIDE;
+					break;
+				case 'q':
+					rights |= BLACK_QUEENSIDE;
+					break;
+				default:
+					throw badFen("unknown castling right " + fen.charAt(i), fen);
+				}
+			}
+			if (rights == 0) {
+				throw badFen("missing castling rights", fen);
+			}
+		}
+		castlingRights = rights & possibleCastlingRights();
+		
+		//en passant target square
+		i = skipSpaces(fen, i);
+		enPassant = NO_EN_PASSANT;
+		if (i < length && fen.charAt(i) == '-') {
+			i++;
+		} else {
+			//the square a pawn just skipped, on the sixth rank for white to move and the third for black
+			int file = i < length ? fen.charAt(i) - 'a' : -1;
+			int rank = i + 1 < length ? fen.charAt(i + 1) - '1' : -1;
+			if (file < 0 || file >= SIDES || rank != (whiteTurn ? SIDES - 3 : 2)) {
+				throw badFen("bad en passant square", fen);
+			}
+			//kept only if a pawn can capture there, as after the move itself, so the key matches
+			if (canCaptureEnPassant(whiteTurn, Bitboard.square(file, rank))) {
+				enPassant = Bitboard.square(file, rank);
+			}
+			i += 2;
+		}
+		
+		//halfmove clock and move number
+		i = skipSpaces(fen, i);
+		halfmoveClock = 0;
+		fullmoveNumber = 1;
+		if (i < length) {
+			int start = i;
+			for (; i < length && fen.charAt(i) >= '0' && fen.charAt(i) <= '9'; i++) {
+				halfmoveClock = halfmoveClock * 10 + fen.charAt(i) - '0';
+			}
+			
+			i = skipSpaces(fen, i);
+			int moveStart = i;
+			fullmoveNumber = 0;
+			for (; i < length && fen.charAt(i) >= '0' && fen.charAt(i) <= '9'; i++) {
+				fullmoveNumber = fullmoveNumber * 10 + fen.charAt(i) - '0';
+			}
+			
+			if (i == start || i == moveStart || skipSpaces(fen, i) != length) {
+				throw badFen("bad halfmove clock or move number", fen);
+			}
+			fullmoveNumber = Math.max(1, fullmoveNumber);
+		}
+		
+		key ^= Zobrist.castling(castlingRights) ^ Zobrist.enPassant(enPassant);
+		if (!whiteTurn) {
+			key ^= Zobrist.blackToMove();
+		}
+	}
+	
+	/**
+	 * Replaces the position with one written by writePosition, clearing the undo stack
+	 * Places shared pieces, with ids given in the same order as setPosition, so reading allocates nothing
+	 * @param in buffer positioned at the position, which is read past it
+	 * @throws IllegalArgumentException if the bytes do not hold a position that can be played,
+	 * in which case the board is left empty or partly set up
+	 */
+	public void readPosition(ByteBuffer in) {
+		clearPosition();
+		
+		int start = in.position();
+		int whiteIds = 0;
+		int blackIds = 0;
+		
+		//pieces from the eighth rank down, as in FEN
+		for (int y = SIDES - 1; y >= 0; y--) {
+			for (int x = 0; x < SIDES; x++) {
+				int square = Bitboard.square(x, y);
+				int nibble = (in.get(start + square / 2) >>> (4 * (square & 1))) & 15;
+				if (nibble == 0) {
+					continue;
+				}
+				
+				boolean white = nibble < SIDES;
+				int type = (nibble & 7) - 1;
+				if (type < 0 || type >= Piece.TYPES) {
+					throw badPosition("unknown piece " + nibble);
+				}
+				int id = white ? whiteIds++ : blackIds++;
+				if (id == Piece.MAX_ID) {
+					throw badPosition("more than 16 pieces of one color");
+				}
+				if (type == Piece.PAWN && (y == 0 || y == SIDES - 1)) {
+					throw badPosition("pawn on the first or last rank");
+				}
+				put(SHARED_PIECES[slot(white, id) * Piece.TYPES + type], x, y);
+			}
+		}
+		if (Long.bitCount(getPieces(true, Piece.KING)) != 1 || Long.bitCount(getPieces(false, Piece.KING)) != 1) {
+			throw badPosition("each side needs one king");
+		}
+		in.position(start + SQUARES / 2);
 		
-		this.board = new Piece[other.board.length][];
+		int state = in.get() & 0xFF;
+		whiteTurn = (state & 1) == 0;
+		castlingRights = (state >>> 1) & possibleCastlingRights();
 		
-		for (int i = 0; i < other.board.length; i++) {
-			Piece[] row = other.board[i];
-			this.board[i] = new Piece[row.length];
+		int square = in.get() & 0xFF;
+		enPassant = NO_EN_PASSANT;
+		if (square != 0xFF) {
+			if (square >= SQUARES || Bitboard.y(square) != (whiteTurn ? SIDES - 3 : 2)) {
+				throw badPosition("bad en passant square " + square);
+			}
+			if (canCaptureEnPassant(whiteTurn, square)) {
+				enPassant = square;
+			}
+		}
+		
+		halfmoveClock = in.get() & 0xFF;
+		fullmoveNumber = Math.max(1, in.getShort() & 0xFFFF);
+		
+		key ^= Zobrist.castling(castlingRights) ^ Zobrist.enPassant(enPassant);
+		if (!whiteTurn) {
+			key ^= Zobrist.blackToMove();
+		}
+	}
+	
+	/**
+	 * Writes the position in POSITION_BYTES bytes, for readPosition
+	 * Squares are packed two to a byte in Bitboard.square order, the lower square in the low nibble,
+	 * each as 0 for empty, the piece type plus 1 for white, or the type plus 9 for black
+	 * The next byte holds 1 if black is to move plus the castling rights shifted left by one,
+	 * then come the en passant square or 255, the halfmove clock and the move number
+	 * A halfmove clock past 255 is written as 255, as the game is drawn long before then
+	 * @param out buffer with POSITION_BYTES bytes to spare
+	 */
+	public void writePosition(ByteBuffer out) {
+		for (int square = 0; square < SQUARES; square += 2) {
+			out.put((byte) (nibble(squares[square]) | (nibble(squares[square + 1]) << 4)));
+		}
+		out.put((byte) ((whiteTurn ? 0 : 1) | (castlingRights << 1)));
+		out.put((byte) (enPassant == NO_EN_PASSANT ? 0xFF : enPassant));
+		out.put((byte) Math.min(halfmoveClock, 0xFF));
+		out.putShort((short) Math.min(fullmoveNumber, 0xFFFF));
+	}
+	
+	private static int nibble(Piece piece) {
+		if (piece == null) {
+			return 0;
+		}
+		return (piece.isWhite ? 0 : SIDES) + piece.type + 1;
+	}
+	
+	private static IllegalArgumentException badPosition(String reason) {
+		return new IllegalArgumentException("Bad position, " + reason);
+	}
+	
+	/**
+	 * Empties the board and the undo stack before a position is set up
+	 */
+	private void clearPosition() {
+		Arrays.fill(squares, null);
+		Arrays.fill(pieces, 0);
+		Arrays.fill(locations, NO_SQUARE);
+		whitePieces = 0;
+		blackPieces = 0;
+		key = 0;
+		middlegame = 0;
+		endgame = 0;
+		phase = 0;
+		undoCount = 0;
+	}
+	
+	/**
+	 * @return the castling rights whose king and rook are still on their starting squares
+	 */
+	private int possibleCastlingRights() {
+		int rights = 0;
+		for (int corner : CORNERS) {
+			boolean white = corner < SIDES;
+			Piece rook = squares[corner];
+			Piece king = squares[white ? 4 : SQUARES - SIDES + 4];
 			
-			for (int j = 0; j < row.length; j++) {
-				// note that this does not copy pieces, but uses the original pieces
-				// this is necessary because piece equality is memory location
-				// Board never mutates pieces - only Game mutates pieces
-				// Board copies are only used to check if a possible move will result in check
-				this.board[i][j] = row[j];
+			if (rook != null && rook.type == Piece.ROOK && rook.isWhite == white
+					&& king != null && king.type == Piece.KING && king.isWhite == white) {
+				rights |= cornerRight(corner);
 			}
 		}
+		return rights;
+	}
+	
+	private static int skipSpaces(CharSequence fen, int i) {
+		while (i < fen.length() && fen.charAt(i) == ' ') {
+			i++;
+		}
+		return i;
+	}
+	
+	private static IllegalArgumentException badFen(String reason, CharSequence fen) {
+		return new IllegalArgumentException("Bad FEN, " + reason + ": " + fen);
+	}
+	
+	/**
+	 * @return the position as a FEN string
+	 */
+	public String toFen() {
+		return appendFen(new StringBuilder(90)).toString();
 	}
 	
 	/**
-	 * Executes a given (valid) move
+	 * Writes the position as FEN onto a builder, so writing many positions can reuse one
+	 * @param fen
+	 * @return the builder
+	 */
+	public StringBuilder appendFen(StringBuilder fen) {
+		for (int y = SIDES - 1; y >= 0; y--) {
+			int empty = 0;
+			for (int x = 0; x < SIDES; x++) {
+				Piece piece = squares[Bitboard.square(x, y)];
+				
+				if (piece == null) {
+					empty++;
+					continue;
+				}
+				if (empty > 0) {
+					fen.append((char) ('0' + empty));
+					empty = 0;
+				}
+				char letter = PIECE_LETTERS.charAt(piece.type);
+				fen.append(piece.isWhite ? letter : Character.toLowerCase(letter));
+			}
+			if (empty > 0) {
+				fen.append((char) ('0' + empty));
+			}
+			if (y > 0) {
+				fen.append('/');
+			}
+		}
+		
+		fen.append(whiteTurn ? " w " : " b ");
+		
+		if (castlingRights == 0) {
+			fen.append('-');
+		} else {
+			if (canCastle(WHITE_KINGSIDE)) {
+				fen.append('K');
+			}
+			if (canCastle(WHITE_QUEENSIDE)) {
+				fen.append('Q');
+			}
+			if (canCastle(BLACK_KINGSIDE)) {
+				fen.append('k');
+			}
+			if (canCastle(BLACK_QUEENSIDE)) {
+				fen.append('q');
+			}
+		}
+		
+		fen.append(' ');
+		if (enPassant == NO_EN_PASSANT) {
+			fen.append('-');
+		} else {
+			fen.append((char) ('a' + Bitboard.x(enPassant))).append((char) ('1' + Bitboard.y(enPassant)));
+		}
+		
+		return fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+	}
+	
+	/**
+	 * Executes a given (valid) move and passes the turn
 	 * @param m move
 	 */
-	public void move(Move m) {
+	public void makeMove(Move m) {
+		makeMove(m.getCode());
+	}
+	
+	/**
+	 * Executes a given (valid) packed move and passes the turn
+	 * The move is recorded on the undo stack so unmakeMove can take it back
+	 * @param move packed move from MoveGenerator
+	 */
+	public void makeMove(int move) {
+		if (undoCount == undoMoved.length) {
+			growUndoStack();
+		}
+		int i = undoCount++;
+		
+		int from = MoveCode.from(move);
+		int to = MoveCode.to(move);
+		Piece piece = squares[from];
 		
-		//mostly used for en passant capturing
-		if (m.captures && m.otherPiece() != null) {
-			remove(getLocation(m.otherPiece()));
+		undoMove[i] = MoveCode.strip(move);
+		undoMoved[i] = piece;
+		undoFrom[i] = from;
+		undoTo[i] = to;
+		undoCastlingRights[i] = castlingRights;
+		undoEnPassant[i] = enPassant;
+		undoHalfmoveClock[i] = halfmoveClock;
+		undoKey[i] = key;
+		
+		//en passant captures the pawn beside the moving pawn, otherwise the captured piece is on the target square
+		int capturedSquare = MoveCode.isEnPassant(move) ? Bitboard.square(Bitboard.x(to), Bitboard.y(from)) : to;
+		Piece captured = squares[capturedSquare];
+		
+		undoCaptured[i] = captured;
+		undoCapturedSquare[i] = capturedSquare;
+		undoRookTo[i] = NO_SQUARE;
+		
+		if (captured != null) {
+			clear(capturedSquare);
 		}
 		
 		//remove the piece from its current location
-		Point current = getLocation(m.getPiece());
-		remove(current);
+		clear(from);
 		
 		//perform a castle
-		if (m.castles) {
-			Piece rook = m.otherPiece();
-			Point rookLoc = getLocation(rook);
+		if (MoveCode.isCastle(move)) {
+			int rookFrom = to > from ? from + 3 : from - 4;
 			
-			int diff = current.x - rookLoc.x;
-			int deltaX = diff > 0 ? -1 : 1;
+			//the rook ends up next to the king, on the side the king came from
+			int rookTo = rookFrom < from ? to + 1 : to - 1;
 			
-			//king
-			board[m.y][m.x] = m.getPiece();
+			undoRookFrom[i] = rookFrom;
+			undoRookTo[i] = rookTo;
 			
-			board[m.y][m.x - deltaX] = rook;
-			
-			remove(rookLoc);
+			Piece rook = squares[rookFrom];
+			clear(rookFrom);
+			put(rook, rookTo);
+			put(piece, to);
 			
 		//promote a pawn
-		} else if (m.promotes) {
-			board[m.y][m.x] = new Queen(m.getPiece().isWhite);
+		} else if (MoveCode.isPromotion(move)) {
+			put(promotion(i, piece, MoveCode.promotionType(move)), to);
 			
-		//otherwise, simply move a piece (all other captures taken care of, as it replaces previous piece)
+		//otherwise, simply move a piece
+		} else {
+			put(piece, to);
+		}
+		
+		updateCastlingRights(piece, from, to);
+		
+		//a pawn moving twice can be captured en passant on the square it skipped, if an enemy pawn stands beside it
+		if (piece instanceof Pawn && Math.abs(to - from) == 2 * SIDES && canCaptureEnPassant(!whiteTurn, (from + to) / 2)) {
+			setEnPassant((from + to) / 2);
+		} else {
+			setEnPassant(NO_EN_PASSANT);
+		}
+		
+		//reset 50-move draw counter if pawn move or capture; otherwise, increment
+		if (captured != null || piece instanceof Pawn) {
+			halfmoveClock = 0;
 		} else {
-			board[m.y][m.x] = m.getPiece();
+			halfmoveClock++;
 		}
+		
+		if (!whiteTurn) {
+			fullmoveNumber++;
+		}
+		switchTurns();
+	}
+	
+	/**
+	 * Takes back the last move made with makeMove, restoring the position exactly
+	 */
+	public void unmakeMove() {
+		if (undoCount == 0) {
+			throw new IllegalStateException("No move to take back");
+		}
+		int i = --undoCount;
+		
+		int from = undoFrom[i];
+		int to = undoTo[i];
+		
+		clear(to);
+		
+		if (undoRookTo[i] != NO_SQUARE) {
+			Piece rook = squares[undoRookTo[i]];
+			clear(undoRookTo[i]);
+			put(rook, undoRookFrom[i]);
+		}
+		
+		put(undoMoved[i], from);
+		
+		if (undoCaptured[i] != null) {
+			put(undoCaptured[i], undoCapturedSquare[i]);
+		}
+		
+		whiteTurn = !whiteTurn;
+		if (!whiteTurn) {
+			fullmoveNumber--;
+		}
+		castlingRights = undoCastlingRights[i];
+		enPassant = undoEnPassant[i];
+		halfmoveClock = undoHalfmoveClock[i];
+		key = undoKey[i];
+	}
+	
+	/**
+	 * @return the number of moves that unmakeMove can take back
+	 */
+	public int getUndoCount() {
+		return undoCount;
+	}
+	
+	/**
+	 * @param i from 0, the first move since the position was set up, to getUndoCount() - 1
+	 * @return the packed move
+	 */
+	public int getMove(int i) {
+		return undoMove[i];
+	}
+	
+	/**
+	 * @param i from 0 to getUndoCount() - 1
+	 * @return the Zobrist key of the position move i was made from
+	 */
+	public long getKey(int i) {
+		return undoKey[i];
+	}
+	
+	/**
+	 * Gives the piece a pawn promotes to, which takes over the pawn's id
+	 * Each undo slot keeps its piece, so searches that promote over and over do not allocate
+	 * @param slot undo stack slot of the move
+	 * @param pawn the promoting pawn
+	 * @param type piece type promoted to
+	 * @return a piece that is not on the board
+	 */
+	private Piece promotion(int slot, Piece pawn, int type) {
+		Piece piece = undoPromotions[slot];
+		boolean white = pawn.isWhite;
+		
+		if (piece == null || piece.isWhite != white || piece.type != type || piece.id != pawn.id) {
+			piece = type == Piece.KNIGHT ? new Knight(white, pawn.id)
+					: type == Piece.BISHOP ? new Bishop(white, pawn.id)
+					: type == Piece.ROOK ? new Rook(white, pawn.id)
+					: new Queen(white, pawn.id);
+			undoPromotions[slot] = piece;
+		}
+		return piece;
+	}
+	
+	/**
+	 * Allocates an empty undo stack
+	 */
+	private void createUndoStack() {
+		undoCount = 0;
+		undoMove = new int[UNDO_STACK_SIZE];
+		undoMoved = new Piece[UNDO_STACK_SIZE];
+		undoCaptured = new Piece[UNDO_STACK_SIZE];
+		undoPromotions = new Piece[UNDO_STACK_SIZE];
+		undoFrom = new int[UNDO_STACK_SIZE];
+		undoTo = new int[UNDO_STACK_SIZE];
+		undoCapturedSquare = new int[UNDO_STACK_SIZE];
+		undoRookFrom = new int[UNDO_STACK_SIZE];
+		undoRookTo = new int[UNDO_STACK_SIZE];
+		undoCastlingRights = new int[UNDO_STACK_SIZE];
+		undoEnPassant = new int[UNDO_STACK_SIZE];
+		undoHalfmoveClock = new int[UNDO_STACK_SIZE];
+		undoKey = new long[UNDO_STACK_SIZE];
+	}
+	
+	/**
+	 * Doubles the size of the undo stack
+	 */
+	private void growUndoStack() {
+		int size = undoMoved.length * 2;
+		
+		undoMove = Arrays.copyOf(undoMove, size);
+		undoMoved = Arrays.copyOf(undoMoved, size);
+		undoCaptured = Arrays.copyOf(undoCaptured, size);
+		undoPromotions = Arrays.copyOf(undoPromotions, size);
+		undoFrom = Arrays.copyOf(undoFrom, size);
+		undoTo = Arrays.copyOf(undoTo, size);
+		undoCapturedSquare = Arrays.copyOf(undoCapturedSquare, size);
+		undoRookFrom = Arrays.copyOf(undoRookFrom, size);
+		undoRookTo = Arrays.copyOf(undoRookTo, size);
+		undoCastlingRights = Arrays.copyOf(undoCastlingRights, size);
+		undoEnPassant = Arrays.copyOf(undoEnPassant, size);
+		undoHalfmoveClock = Arrays.copyOf(undoHalfmoveClock, size);
+		undoKey = Arrays.copyOf(undoKey, size);
+	}
+	
+	/**
+	 * Takes away castling rights when a king moves or when a rook leaves or is captured on its starting corner
+	 * @param piece the piece that is moving
+	 * @param from square it moves from
+	 * @param to square it moves to
+	 */
+	private void updateCastlingRights(Piece piece, int from, int to) {
+		if (piece instanceof King) {
+			revokeCastling(piece.isWhite);
+		}
+		setCastlingRights(castlingRights & ~(cornerRight(from) | cornerRight(to)));
+	}
+	
+	/**
+	 * Changes the castling rights and the key along with them
+	 * @param rights
+	 */
+	private void setCastlingRights(int rights) {
+		key ^= Zobrist.castling(castlingRights) ^ Zobrist.castling(rights);
+		castlingRights = rights;
+	}
+	
+	/**
+	 * Changes the en passant square and the key along with it
+	 * @param square
+	 */
+	private void setEnPassant(int square) {
+		key ^= Zobrist.enPassant(enPassant) ^ Zobrist.enPassant(square);
+		enPassant = square;
+	}
+	
+	/**
+	 * Positions that differ only in an en passant square no pawn can use are the same position,
+	 * so the square is only recorded when a capture is possible
+	 * @param white color of the side that would capture
+	 * @param square the square the enemy pawn skipped
+	 * @return whether a pawn of that color attacks the square
+	 */
+	private boolean canCaptureEnPassant(boolean white, int square) {
+		return (Bitboard.pawnAttacks(!white, square) & getPieces(white, Piece.PAWN)) != 0;
+	}
+	
+	/**
+	 * @param square
+	 * @return the castling right that depends on a rook standing on this square, or 0
+	 */
+	private static int cornerRight(int square) {
+		switch (square) {
+		case 0:
+			return WHITE_QUEENSIDE;
+		case SIDES - 1:
+			return WHITE_KINGSIDE;
+		case SQUARES - SIDES:
+			return BLACK_QUEENSIDE;
+		case SQUARES - 1:
+			return BLACK_KINGSIDE;
+		default:
+			return 0;
+		}
+	}
+	
+	/**
+	 * Tells the king of the given color that he can no longer castle on either side
+	 * @param white
+	 */
+	public void revokeCastling(boolean white) {
+		setCastlingRights(castlingRights & (white ? ~(WHITE_QUEENSIDE | WHITE_KINGSIDE) : ~(BLACK_QUEENSIDE | BLACK_KINGSIDE)));
+	}
+	
+	/**
+	 * @return the castling right bits still available
+	 */
+	public int getCastlingRights() {
+		return castlingRights;
+	}
+	
+	/**
+	 * @param right one of the castling right constants
+	 * @return if that castle is still available
+	 */
+	public boolean canCastle(int right) {
+		return (castlingRights & right) != 0;
+	}
+	
+	/**
+	 * @return the square a pawn just skipped over with a double move, or NO_EN_PASSANT
+	 */
+	public int getEnPassant() {
+		return enPassant;
+	}
+	
+	/**
+	 * Places a piece on (x, y), replacing whatever was there
+	 * @param piece
+	 * @param x
+	 * @param y
+	 */
+	private void put(Piece piece, int x, int y) {
+		put(piece, Bitboard.square(x, y));
+	}
+	
+	/**
+	 * Places a piece on a square, replacing whatever was there
+	 * @param piece
+	 * @param square
+	 */
+	private void put(Piece piece, int square) {
+		if (squares[square] != null) {
+			clear(square);
+		}
+		
+		long b = Bitboard.bit(square);
+		squares[square] = piece;
+		locations[slot(piece)] = square;
+		pieces[index(piece.isWhite, piece.type)] |= b;
+		key ^= Zobrist.piece(piece.isWhite, piece.type, square);
+		middlegame += Evaluation.middlegame(piece.isWhite, piece.type, square);
+		endgame += Evaluation.endgame(piece.isWhite, piece.type, square);
+		phase += Evaluation.phase(piece.type);
+		
+		if (piece.isWhite) {
+			whitePieces |= b;
+		} else {
+			blackPieces |= b;
+		}
+	}
+	
+	/**
+	 * Removes the piece on an occupied square from the bitboards and the square array
+	 * @param square
+	 */
+	private void clear(int square) {
+		Piece piece = squares[square];
+		long b = ~Bitboard.bit(square);
+		
+		squares[square] = null;
+		locations[slot(piece)] = NO_SQUARE;
+		pieces[index(piece.isWhite, piece.type)] &= b;
+		key ^= Zobrist.piece(piece.isWhite, piece.type, square);
+		middlegame -= Evaluation.middlegame(piece.isWhite, piece.type, square);
+		endgame -= Evaluation.endgame(piece.isWhite, piece.type, square);
+		phase -= Evaluation.phase(piece.type);
+		whitePieces &= b;
+		blackPieces &= b;
+	}
+	
+	/**
+	 * @param white
+	 * @param type
+	 * @return the position of a color and piece type in the pieces array
+	 */
+	private static int index(boolean white, int type) {
+		return white ? type : Piece.TYPES + type;
+	}
+	
+	/**
+	 * @param piece
+	 * @return the position of a piece in the locations array
+	 */
+	private static int slot(Piece piece) {
+		return slot(piece.isWhite, piece.id);
+	}
+	
+	private static int slot(boolean white, int id) {
+		return white ? id : Piece.MAX_ID + id;
 	}
 	
 	/**
@@ -135,14 +964,41 @@ public class Board {
 	 * @return returns the (x,y) coordinates of the piece
 	 */
 	public Point getLocation(Piece piece) {
-		for (int y = 0; y < board.length; y++) { 
-			for (int x = 0; x < board[y].length; x++) {
-				if (board[y][x] != null && board[y][x].equals(piece)) {
-					return new Point(x, y);
-				}
-			}
+		int square = getSquare(piece);
+		
+		if (square == NO_SQUARE) {
+			return null;
 		}
-		return null;
+		return new Point(Bitboard.x(square), Bitboard.y(square));
+	}
+	
+	/**
+	 * Gives the square of the piece without allocating
+	 * @param piece
+	 * @return its square, or -1 if it is not on this board
+	 */
+	public int getSquare(Piece piece) {
+		int square = locations[slot(piece)];
+		
+		//another board's piece may share the id
+		if (square == NO_SQUARE || squares[square] != piece) {
+			return NO_SQUARE;
+		}
+		return square;
+	}
+	
+	/**
+	 * @return moves since the last capture or pawn move
+	 */
+	public int getHalfmoveClock() {
+		return halfmoveClock;
+	}
+	
+	/**
+	 * @return the move number, which starts at 1 and goes up after each black move
+	 */
+	public int getFullmoveNumber() {
+		return fullmoveNumber;
 	}
 	
 	/**
@@ -153,7 +1009,40 @@ public class Board {
 	 */
 	public Piece get(int x, int y) {
 		
-		return board[y][x];
+		return squares[Bitboard.square(x, y)];
+	}
+	
+	/**
+	 * Returns the piece on a square
+	 * @param square index from Bitboard.square
+	 * @return the piece there, or null
+	 */
+	public Piece get(int square) {
+		return squares[square];
+	}
+	
+	/**
+	 * @param white
+	 * @param type one of the Piece type constants
+	 * @return bitboard of every piece of that color and type
+	 */
+	public long getPieces(boolean white, int type) {
+		return pieces[index(white, type)];
+	}
+	
+	/**
+	 * @param white
+	 * @return bitboard of every piece of that color
+	 */
+	public long getOccupancy(boolean white) {
+		return white ? whitePieces : blackPieces;
+	}
+	
+	/**
+	 * @return bitboard of every occupied square
+	 */
+	public long getOccupied() {
+		return whitePieces | blackPieces;
 	}
 	
 	/**
@@ -161,11 +1050,52 @@ public class Board {
 	 * @param p
 	 */
 	public void remove(Point p) {
-		board[p.y][p.x] = null;
+		int square = Bitboard.square(p.x, p.y);
+		
+		if (squares[square] != null) {
+			clear(square);
+		}
 	}
 	
 	/**
-	 * 
+	 * Determines if a square is attacked by any piece of the given color
+	 * @param square index from Bitboard.square
+	 * @param byWhite color of the attacking side
+	 * @return if any piece of that color attacks the square
+	 */
+	public boolean isSquareAttacked(int square, boolean byWhite) {
+		long queens = getPieces(byWhite, Piece.QUEEN);
+		long occupied = getOccupied();
+		
+		//cheapest lookups first, stopping at the first attacker
+		return (Bitboard.pawnAttacks(!byWhite, square) & getPieces(byWhite, Piece.PAWN)) != 0
+				|| (Bitboard.knightAttacks(square) & getPieces(byWhite, Piece.KNIGHT)) != 0
+				|| (Bitboard.kingAttacks(square) & getPieces(byWhite, Piece.KING)) != 0
+				|| (Bitboard.bishopAttacks(square, occupied) & (getPieces(byWhite, Piece.BISHOP) | queens)) != 0
+				|| (Bitboard.rookAttacks(square, occupied) & (getPieces(byWhite, Piece.ROOK) | queens)) != 0;
+	}
+	
+	/**
+	 * Finds every piece of the given color attacking a square, as if the board had the given occupancy
+	 * Letting the caller pick the occupancy allows testing a move without making it
+	 * @param square index from Bitboard.square
+	 * @param byWhite color of the attacking side
+	 * @param occupied squares that block sliding pieces
+	 * @return bitboard of the attackers
+	 */
+	public long attackersTo(int square, boolean byWhite, long occupied) {
+		long queens = getPieces(byWhite, Piece.QUEEN);
+		
+		//a pawn attacks this square if a pawn of the other color here would attack it back
+		return (Bitboard.pawnAttacks(!byWhite, square) & getPieces(byWhite, Piece.PAWN))
+				| (Bitboard.knightAttacks(square) & getPieces(byWhite, Piece.KNIGHT))
+				| (Bitboard.kingAttacks(square) & getPieces(byWhite, Piece.KING))
+				| (Bitboard.bishopAttacks(square, occupied) & (getPieces(byWhite, Piece.BISHOP) | queens))
+				| (Bitboard.rookAttacks(square, occupied) & (getPieces(byWhite, Piece.ROOK) | queens));
+	}
+	
+	/**
+	 *
 	 * @return if it is white's turn
 	 */
 	public boolean isWhiteTurn() {
@@ -174,10 +1104,40 @@ public class Board {
 	
 	public void switchTurns() {
 		whiteTurn = !whiteTurn;
+		key ^= Zobrist.blackToMove();
+	}
+	
+	/**
+	 * @return the Zobrist key of the position, covering the pieces, side to move, castling rights and en passant file
+	 */
+	public long getKey() {
+		return key;
+	}
+	
+	/**
+	 * @return middlegame material and piece-square score, from white's point of view
+	 */
+	public int getMiddlegame() {
+		return middlegame;
 	}
 	
 	/**
-	 * Checks if two boards are equal
+	 * @return endgame material and piece-square score, from white's point of view
+	 */
+	public int getEndgame() {
+		return endgame;
+	}
+	
+	/**
+	 * @return game phase, Evaluation.MAX_PHASE at the start and 0 with only kings and pawns left
+	 */
+	public int getPhase() {
+		return phase;
+	}
+	
+	/**
+	 * Checks if two boards hold the same position
+	 * Pieces are compared by color and type, so the same position reached by different moves is equal
 	 */
 	@Override
 	public boolean equals(Object o) {
@@ -188,17 +1148,18 @@ public class Board {
 		if (o instanceof Board) {
 			Board b = (Board) o;
 			
-			return this.whiteTurn == b.whiteTurn && Arrays.deepEquals(this.board, b.board);
+			return this.key == b.key && this.whiteTurn == b.whiteTurn && this.castlingRights == b.castlingRights
+					&& this.enPassant == b.enPassant && Arrays.equals(this.pieces, b.pieces);
 		}
 		return false;
 	}
 	
 	/**
-	 * int cannot hold all possible chess boards, but we'll just use the builtin array hash code and call it a day
+	 * Folds the Zobrist key into an int
 	 */
 	@Override
 	public int hashCode() {
-		return Arrays.deepHashCode(board) + (whiteTurn ? 1 : 0);
+		return (int) (key ^ (key >>> 32));
 	}
-
+	
 }
@@ -0,0 +1,190 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.JComponent;
+
+/**
+ * Chess board component that paints the squares itself
+ * @author Spencer G
+ *
+ * Keeps the piece image and highlight of every square between moves, and when told about a new position
+ * repaints only the squares whose piece changed, so a move costs a few squares of painting and no new components.
+ * Squares are addressed the same way as in Board, with the first rank drawn at the top.
+ */
+
+public class BoardView extends JComponent {
+
+	private static final long serialVersionUID = 1L;
+
+	//the piece images are 106 pixels square
+	public static final int SQUARE_SIZE = 110;
+
+	private static final Color DARK = Color.DARK_GRAY;
+	private static final Color LIGHT = Color.WHITE;
+
+	/**
+	 * Told which square was clicked, in Board's coordinates
+	 */
+	public interface SquareListener {
+
+		void squareClicked(int x, int y);
+	}
+
+	//indexed white pieces first, by type, then black pieces
+	private final Image[] images;
+	private final Image[] pieces;
+	private final Color[] highlights;
+	private final SquareListener listener;
+
+	/**
+	 * Constructor
+	 * @param images piece images, the white ones by Piece type followed by the black ones
+	 * @param listener told of clicks while the view is enabled
+	 */
+	public BoardView(Image[] images, SquareListener listener) {
+
+		this.images = images;
+		this.listener = listener;
+		pieces = new Image[Board.SQUARES];
+		highlights = new Color[Board.SQUARES];
+
+		setOpaque(true);
+		setPreferredSize(new Dimension(Board.SIDES * SQUARE_SIZE, Board.SIDES * SQUARE_SIZE));
+
+		addMouseListener(new MouseAdapter() {
+
+			@Override
+			public void mousePressed(MouseEvent e) {
+
+				int size = squareSize();
+				int x = e.getX() / size;
+				int y = e.getY() / size;
+
+				if(isEnabled() && x < Board.SIDES && y < Board.SIDES) {
+
+					BoardView.this.listener.squareClicked(x, y);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Brings the view up to date with a position, repainting only the squares whose piece is different
+	 * @param squares the piece on each square, indexed as in Board
+	 */
+	public void update(Piece[] squares) {
+
+		for(int square = 0; square < Board.SQUARES; square++) {
+
+			Piece piece = squares[square];
+			Image image = piece == null ? null : images[(piece.isWhite ? 0 : Piece.TYPES) + piece.type];
+
+			if(image != pieces[square]) {
+
+				pieces[square] = image;
+				repaintSquare(square);
+			}
+		}
+	}
+
+	/**
+	 * Colors a square over its own color, or gives it back its own color
+	 * @param color highlight, or null for none
+	 */
+	public void setHighlight(int x, int y, Color color) {
+
+		int square = Bitboard.square(x, y);
+
+		if(highlights[square] != color) {
+
+			highlights[square] = color;
+			repaintSquare(square);
+		}
+	}
+
+	/**
+	 * Removes every highlight
+	 */
+	public void clearHighlights() {
+
+		for(int square = 0; square < Board.SQUARES; square++) {
+
+			if(highlights[square] != null) {
+
+				highlights[square] = null;
+				repaintSquare(square);
+			}
+		}
+	}
+
+	/**
+	 * Paints the squares inside the area being repainted
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+
+		int size = squareSize();
+		Rectangle clip = g.getClipBounds();
+
+		if(clip == null) {
+
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		}
+
+		//past the last whole square, which is left over when the view is not square
+		g.setColor(getBackground() == null ? LIGHT : getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+		int firstX = Math.max(clip.x / size, 0);
+		int firstY = Math.max(clip.y / size, 0);
+		int lastX = Math.min((clip.x + clip.width - 1) / size, Board.SIDES - 1);
+		int lastY = Math.min((clip.y + clip.height - 1) / size, Board.SIDES - 1);
+
+		for(int y = firstY; y <= lastY; y++) {
+			for(int x = firstX; x <= lastX; x++) {
+
+				int square = Bitboard.square(x, y);
+
+				//a1 is dark, and colors alternate along ranks and files
+				Color color = highlights[square];
+				if(color == null) {
+
+					color = (x + y) % 2 == 0 ? DARK : LIGHT;
+				}
+
+				g.setColor(color);
+				g.fillRect(x * size, y * size, size, size);
+
+				Image image = pieces[square];
+				if(image != null) {
+
+					int width = Math.min(image.getWidth(null), size);
+					int height = Math.min(image.getHeight(null), size);
+					g.drawImage(image, x * size + (size - width) / 2, y * size + (size - height) / 2, width, height, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks one square to be painted again
+	 */
+	private void repaintSquare(int square) {
+
+		int size = squareSize();
+		repaint(Bitboard.x(square) * size, Bitboard.y(square) * size, size, size);
+	}
+
+	/**
+	 * @return side of a square, so that the board fits the view
+	 */
+	private int squareSize() {
+
+		return Math.max(Math.min(getWidth(), getHeight()) / Board.SIDES, 1);
+	}
+}
@@ -1,9 +0,0 @@
-/**
- * Implemented by rooks and kings - whether they have lost their castling abilities
- * @author Stephen S
- *
- */
-public interface Castleable {
-	public void cannotCastle();
-	public boolean canCastle();
-}
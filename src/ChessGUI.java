@@ -1,16 +1,18 @@
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.GridLayout;
-import java.awt.Point;
+import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.HashMap;
 
-import javax.swing.JPanel;
-import javax.swing.JButton;
+import javax.swing.ButtonGroup;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JRadioButtonMenuItem;
 import javax.swing.ImageIcon;
 
 /**
@@ -18,34 +20,58 @@ import javax.swing.ImageIcon;
  * @author Spencer G
  *
  * This class incorporates the Game and Board class found within the package.
- * A JFrame is constructed and a chess board is made using Boards list of Pieces
+ * A JFrame is constructed holding a BoardView, which is kept up to date with Boards list of Pieces
  */
 
 public class ChessGUI extends JFrame {
 
 	private static final long serialVersionUID = 1L;
-	private final int LENGTH;
-	private final int WIDTH;
-	private Board myBoard;
-	private Game myGame;
-	private JPanel panel;
-	private JButton[][] buttons;
+	private GameController controller;
+	private GameController.Position position;
+	private BoardView view;
 	private HashMap<String, ImageIcon> imageMap;
 	private ArrayList<Move> moves;
+	private Piece selected;
+	private boolean computerWhite;
+	private boolean computerBlack;
+	private boolean gameFinished;
+
+	//set from asking the controller to change the position until the new position arrives, while clicks are ignored
+	private boolean waiting;
+
+	//time the computer player gets for each move
+	private static final long COMPUTER_MILLIS = 300;
+	private static final int TABLE_MEGABYTES = 16;
 
 	/**
 	 * Constructs local variables and calls startUp to display the chess board before playing
 	 */
 	public ChessGUI() {
 
-		myBoard = new Board();
-		myGame = new Game(myBoard);
-		LENGTH = myBoard.board.length;
-		WIDTH = myBoard.board[0].length;
-		buttons = new JButton[LENGTH][WIDTH];
 		setupImageMap();
 		moves = null;
+		selected = null;
+		computerWhite = false;
+		computerBlack = false;
+		gameFinished = false;
+		waiting = true;
+
+		Search engine = new Search(new TranspositionTable(TABLE_MEGABYTES));
+		controller = new GameController(new Board(), engine, new Search.Limits(0, 0, COMPUTER_MILLIS), new GameController.Listener() {
+
+			public void positionChanged(GameController.Position p) {
+
+				showPosition(p);
+			}
+
+			public void movesFound(Piece piece, ArrayList<Move> found) {
+
+				showMoves(piece, found);
+			}
+		});
+
 		this.startUp();
+		controller.start();
 	}
 
 	/**
@@ -71,42 +97,55 @@ public class ChessGUI extends JFrame {
 	}
 
 	/**
-	 * Called every time a JButton is clicked
-	 * If a button at location p is clicked and contains a Piece, then moves will contain all the available Move class instances (both legal and illegal) for that Piece at location p
-	 *    all buttons which share a location with a Move in moves for that Piece at location p are then highlighted (blue for legal, red for illegal)
-	 * If a Piece is selected and a blue highlighted button at location p is clicked, then that Piece will be moved to location p
-	 * If a Piece is selected at location p and then another Piece at location k is selected, then onClick is called again for Point k
+	 * @return the images of the pieces in the order BoardView takes them, white then black, each by Piece type
+	 */
+	private Image[] pieceImages() {
+
+		String[] names = {"Pawn", "Knight", "Bishop", "Rook", "Queen", "King"};
+		Image[] images = new Image[2 * Piece.TYPES];
+
+		for(int type = 0; type < Piece.TYPES; type++) {
+
+			images[type] = imageMap.get("w" + names[type]).getImage();
+			images[Piece.TYPES + type] = imageMap.get("b" + names[type]).getImage();
+		}
+
+		return images;
+	}
+
+	/**
+	 * Called every time a square of the board is clicked
+	 * If a square at location (x, y) is clicked and contains a Piece, then the controller is asked for all the available Move class instances (both legal and illegal) for that Piece,
+	 *    which showMoves puts in moves and highlights
+	 * Clicks are ignored while the computer is choosing a move or a new position is on its way, so this never waits for the game
+	 * If a Piece is selected and a blue highlighted square is clicked, then that Piece will be moved there
+	 * If a Piece is selected and then another Piece of the same color is clicked, then onClick is called again for that Piece
 	 * Turns are visually displayed to the player through window text via this method
 	 * Every time a Piece is moved, then moves gets reset to null
 	 * 
-	 * @param p is the location of a space on the chess board that was clicked
+	 * @param x file of the square that was clicked, in Board's coordinates
+	 * @param y rank of the square that was clicked
 	 */
-	private void onClick(Point p) {
+	private void onClick(int x, int y) {
+
+		//the computer is choosing this move, or the position shown is about to change
+		if(waiting || isComputerTurn()) {
+
+			return;
+		}
+
+		boolean isWhiteTurn = position.isWhiteTurn();
+		Piece dummyPiece = position.get(x, y);
 
-		boolean isWhiteTurn = myBoard.isWhiteTurn();
-		Piece dummyPiece = myBoard.get(p.y, p.x);
-		
 		//if no moves generated for a previous piece
 		if(moves == null) {
 
 			//if we clicked on a piece whose turn it is
 			if(dummyPiece != null && (isWhiteTurn == dummyPiece.isWhite)) {
 
-				//get moves for that piece
-				moves = myGame.getMoves(dummyPiece);
-
-				//show the moves on the UI
-				for(Move m : moves) {
-
-					if(m.legal) {
-
-						buttons[m.x][m.y].setBackground(Color.BLUE);
-					} else {
-
-						buttons[m.x][m.y].setBackground(Color.RED);
-					}
-				}
-
+				//ask for moves for that piece, which replaces any piece selected before
+				selected = dummyPiece;
+				controller.select(dummyPiece);
 			} 
 
 		//if there are moves generated for a previous piece
@@ -118,21 +157,11 @@ public class ChessGUI extends JFrame {
 			for(Move m : moves) {
 
 				//if the user clicked on a legal move
-				if(m.legal && m.x == p.y && m.y == p.x) {
+				if(m.legal && m.x == x && m.y == y) {
 
 					//perform the move
-					myGame.move(m);
 					moved = true;
-					createGrid();
-					moves = null;
-
-					if(isWhiteTurn) {
-
-						this.setTitle("Black Turn");
-					} else {
-
-						this.setTitle("White Turn");
-					}
+					makeMove(m);
 
 					break;
 				}
@@ -145,128 +174,223 @@ public class ChessGUI extends JFrame {
 				if(dummyPiece != null && (isWhiteTurn == dummyPiece.isWhite)) {
 
 					//reset and recursively call this method to trigger the initial highlighting
-					createGrid();
+					view.clearHighlights();
 					moves = null;
-					onClick(p);
+					onClick(x, y);
 				}
 			}
 		}
 	}
 
 	/**
-	 * Disables all JButtons within JButton[][] buttons
+	 * Shows the moves of the selected piece (blue for legal, red for illegal), unless another piece has been selected since
+	 *
+	 * @param piece the piece the moves are for
+	 * @param found all its moves, legal and illegal
 	 */
-	private void disableButtons() {
+	private void showMoves(Piece piece, ArrayList<Move> found) {
+
+		if(piece != selected) {
+
+			return;
+		}
+
+		moves = found;
+
+		//show the moves on the UI
+		for(Move m : moves) {
 
-		for(int y = 0; y < buttons.length; y++) {
-			for(int x = 0; x < buttons[y].length; x++) {
+			if(m.legal) {
 
-				buttons[y][x].setEnabled(false);
+				view.setHighlight(m.x, m.y, Color.BLUE);
+			} else {
+
+				view.setHighlight(m.x, m.y, Color.RED);
 			}
 		}
 	}
 
 	/**
-	 * Visually sets up the board before any play happens
+	 * Asks the controller to play a move, and waits for the new position before taking more clicks
+	 * If the computer plays the side whose turn it then is, the controller asks it for its move
+	 *
+	 * @param m is the legal Move to play
 	 */
-	private void startUp() {
+	private void makeMove(Move m) {
 
-		panel = new JPanel(new GridLayout(LENGTH,WIDTH));
-		createGrid();
+		clearSelection();
+		waiting = true;
 
-		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		this.setTitle("White Turn");
-		this.add(panel);
-		this.pack();
-		this.setVisible(true);
+		controller.play(m);
+	}
+
+	/**
+	 * Asks the controller to take back the last move, and the computer's reply before it so that it is a person's turn again
+	 * Does nothing while the computer plays both sides
+	 */
+	private void takeBack() {
+
+		if(computerWhite && computerBlack) {
 
+			return;
+		}
+
+		clearSelection();
+		waiting = true;
+
+		controller.takeBack();
 	}
 
 	/**
-	 * JButton[][] buttons is reset and then filled with ImageIcons corresponding with Pieces in myBoard.board;
-	 * The buttons are then given an ActionListener that calls onClick(Point p) with its location, p, as a new Point(x,y)
-	 * Then each buttons is added to panel in proper order, then the panel is added to the JFrame, then the frame is displayed
-	 * Lastly, if there is any game over conditions, then they are handled accordingly and that game over condition is displayed in a new frame
+	 * Repaints the squares a new position changed, updates the turn in the window title,
+	 * and shows the result if the game is over or lets play go on after a take back
+	 *
+	 * @param p the new position
 	 */
-	private void createGrid() {
+	private void showPosition(GameController.Position p) {
 
-		buttons = new JButton[LENGTH][WIDTH];
+		position = p;
+		waiting = false;
 
-		//alternates for each row
-		boolean blackspace = true;
-		
-		for(int y = 0; y < buttons.length; y++) {
-			for(int x = 0; x < buttons[y].length; x++) {
+		clearSelection();
+		view.update(position.getSquares());
+		updateTitle();
 
-				String mapID;
-				Piece myPiece = myBoard.get(y, x);
+		if(position.getState() == Game.NOT_OVER) {
 
-				//set the button's image
-				if(myPiece == null) {
+			gameFinished = false;
+			view.setEnabled(true);
+		} else if(!gameFinished) {
 
-					buttons[y][x] = new JButton(imageMap.get("blankPiece"));
-				} else {
+			showGameOver(position.getState());
+		}
+	}
 
-					if(myPiece.isWhite) {
+	/**
+	 * Forgets the selected piece and its moves, and removes their highlights
+	 */
+	private void clearSelection() {
 
-						mapID = "w" + myPiece.getClass().getSimpleName();
-					} else {
+		selected = null;
+		moves = null;
+		view.clearHighlights();
+	}
 
-						mapID = "b" + myPiece.getClass().getSimpleName();
-					}
+	/**
+	 * Shows whose turn it is in the window title
+	 */
+	private void updateTitle() {
 
-					buttons[y][x] = new JButton(imageMap.get(mapID));
-				}
+		if(position.isWhiteTurn()) {
 
-				//set the button's background color
-				if(blackspace == (x%2 == 0)) {
-					
-					buttons[y][x].setBackground(Color.DARK_GRAY);
-				} else {
+			this.setTitle("White Turn");
+		} else {
 
-					buttons[y][x].setBackground(Color.WHITE);
-				}
+			this.setTitle("Black Turn");
+		}
+	}
 
-				buttons[y][x].setOpaque(true);
+	/**
+	 * @return true if the computer plays the side whose turn it is
+	 */
+	private boolean isComputerTurn() {
 
-				Point p = new Point(x, y);
+		return position.isWhiteTurn() ? computerWhite : computerBlack;
+	}
 
-				//set the button's event handler
-				buttons[y][x].addActionListener(new ActionListener() {
+	/**
+	 * Builds the menu used to choose which sides the computer plays, and the menu to take back moves
+	 */
+	private void createMenu() {
 
-					public void actionPerformed(ActionEvent e) {
+		JMenuBar menuBar = new JMenuBar();
+		JMenu menu = new JMenu("Players");
+		ButtonGroup group = new ButtonGroup();
 
-						onClick(p);
-					}
-				});
-			}
-			blackspace = !blackspace;
+		String[] names = {"Two Players", "Computer Plays Black", "Computer Plays White", "Computer Plays Both"};
+
+		for(int i = 0; i < names.length; i++) {
+
+			final boolean white = (i & 2) != 0;
+			final boolean black = (i & 1) != 0;
+
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(names[i], i == 0);
+			item.addActionListener(new ActionListener() {
+
+				public void actionPerformed(ActionEvent e) {
+
+					computerWhite = white;
+					computerBlack = black;
+
+					//the controller drops a selection still on its way, so drop the one shown too
+					clearSelection();
+
+					controller.setComputer(white, black);
+				}
+			});
+
+			group.add(item);
+			menu.add(item);
 		}
 
-		//build the panel
-		panel.removeAll();
+		JMenu moveMenu = new JMenu("Move");
+		JMenuItem takeBackItem = new JMenuItem("Take Back");
+		takeBackItem.addActionListener(new ActionListener() {
 
-		for(int y = 0; y < buttons.length; y++) {
-			for(int x = 0; x < buttons[y].length; x++) {
+			public void actionPerformed(ActionEvent e) {
 
-				panel.add(buttons[x][y]);
+				takeBack();
 			}
-		}
+		});
+		moveMenu.add(takeBackItem);
+
+		menuBar.add(menu);
+		menuBar.add(moveMenu);
+		this.setJMenuBar(menuBar);
+	}
+
+	/**
+	 * Visually sets up the board before any play happens
+	 */
+	private void startUp() {
 
+		view = new BoardView(pieceImages(), new BoardView.SquareListener() {
+
+			public void squareClicked(int x, int y) {
+
+				onClick(x, y);
+			}
+		});
+
+		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		this.setTitle("White Turn");
+		createMenu();
+		this.add(view);
 		this.pack();
+		this.setVisible(true);
+
+	}
 
-		int gameOver = myGame.isGameOver();
+	/**
+	 * If there is any game over condition, then it is handled accordingly and that game over condition is displayed in a new frame
+	 * The controller finds out whether the game is over along with each new position, off the Event Dispatch Thread
+	 *
+	 * @param gameOver constant of board state
+	 */
+	private void showGameOver(int gameOver) {
 
 		//build game over frame
 		if(gameOver > Game.NOT_OVER) {
 
+			gameFinished = true;
+
 			JFrame endGameFrame = new JFrame();
 			endGameFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 			endGameFrame.setSize(450, 300);
 			endGameFrame.setTitle("GAMEOVER");
 			JLabel label = new JLabel("THIS TEXT SHOULD NEVER APPEAR, BUT IF IT DOES, HBOX IS CLEARLY THE WORST MELEE PLAYER TO WATCH");
 
-			this.disableButtons();
+			view.setEnabled(false);
 
 			if(gameOver == Game.DRAW) {
 
@@ -297,12 +421,8 @@ public class ChessGUI extends JFrame {
 		int total = 17;
 
 		total += (serialVersionUID * 37);
-		total += (LENGTH * 37);
-		total += (WIDTH * 37);
-		total += myBoard.hashCode();
-		total += myGame.hashCode();
-		total += panel.hashCode();
-		total += buttons.hashCode();
+		total += controller.hashCode();
+		total += view.hashCode();
 		total += imageMap.hashCode();
 
 		if(moves != null) {
@@ -323,8 +443,8 @@ public class ChessGUI extends JFrame {
 			
 			ChessGUI o = (ChessGUI)obj;
 			
-			return (this.myBoard.equals(o.myBoard) && this.myGame.equals(o.myGame)
-					&& this.panel.equals(o.panel) && this.buttons.equals(o.buttons)
+			return (this.controller.equals(o.controller)
+					&& this.view.equals(o.view)
 					&& this.imageMap.equals(o.imageMap));
 		}
 		
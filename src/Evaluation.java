@@ -0,0 +1,266 @@
+/**
+ * Static evaluation: material and piece-square tables tapered between the middlegame and the endgame,
+ * plus mobility and king safety
+ * Board keeps the material and piece-square sums and the game phase up to date as pieces are put down and picked up,
+ * so evaluating a position only adds the mobility and king terms, which are found from the attack tables
+ * Nothing here allocates, so the search can call it at every leaf
+ * @author Stephen S
+ *
+ */
+public final class Evaluation {
+	
+	//phase of the full set of pieces; each knight and bishop counts 1, each rook 2 and each queen 4
+	public static final int MAX_PHASE = 24;
+	private static final int[] PHASE = {0, 1, 1, 2, 4, 0};
+	
+	private static final int[] MIDDLEGAME_VALUES = {82, 337, 365, 477, 1025, 0};
+	private static final int[] ENDGAME_VALUES = {94, 281, 297, 512, 936, 0};
+	
+	//per square a piece attacks, and per hit on the squares around the enemy king
+	private static final int[] MOBILITY_MIDDLEGAME = {0, 4, 5, 2, 1, 0};
+	private static final int[] MOBILITY_ENDGAME = {0, 4, 5, 4, 2, 0};
+	private static final int[] KING_ATTACK = {0, 2, 2, 3, 5, 0};
+	private static final int PAWN_SHIELD = 10;
+	
+	//score that gives a side a three in four share of the score bar
+	private static final double SCORE_SCALE = 400;
+	
+	//tables are written as white sees the board, from the eighth rank down
+	private static final int[] PAWN_MIDDLEGAME = {
+		 0,  0,   0,   0,   0,   0,  0,  0,
+		50, 50,  50,  50,  50,  50, 50, 50,
+		10, 10,  20,  30,  30,  20, 10, 10,
+		 5,  5,  10,  25,  25,  10,  5,  5,
+		 0,  0,   0,  20,  20,   0,  0,  0,
+		 5, -5, -10,   0,   0, -10, -5,  5,
+		 5, 10,  10, -20, -20,  10, 10,  5,
+		 0,  0,   0,   0,   0,   0,  0,  0};
+		
+	private static final int[] PAWN_ENDGAME = {
+		 0,  0,  0,  0,  0,  0,  0,  0,
+		80, 80, 80, 80, 80, 80, 80, 80,
+		50, 50, 50, 50, 50, 50, 50, 50,
+		30, 30, 30, 30, 30, 30, 30, 30,
+		20, 20, 20, 20, 20, 20, 20, 20,
+		10, 10, 10, 10, 10, 10, 10, 10,
+		10, 10, 10, 10, 10, 10, 10, 10,
+		 0,  0,  0,  0,  0,  0,  0,  0};
+		
+	private static final int[] KNIGHT = {
+		-50, -40, -30, -30, -30, -30, -40, -50,
+		-40, -20,   0,   0,   0,   0, -20, -40,
+		-30,   0,  10,  15,  15,  10,   0, -30,
+		-30,   5,  15,  20,  20,  15,   5, -30,
+		-30,   0,  15,  20,  20,  15,   0, -30,
+		-30,   5,  10,  15,  15,  10,   5, -30,
+		-40, -20,   0,   5,   5,   0, -20, -40,
+		-50, -40, -30, -30, -30, -30, -40, -50};
+		
+	private static final int[] BISHOP = {
+		-20, -10, -10, -10, -10, -10, -10, -20,
+		-10,   0,   0,   0,   0,   0,   0, -10,
+		-10,   0,   5,  10,  10,   5,   0, -10,
+		-10,   5,   5,  10,  10,   5,   5, -10,
+		-10,   0,  10,  10,  10,  10,   0, -10,
+		-10,  10,  10,  10,  10,  10,  10, -10,
+		-10,   5,   0,   0,   0,   0,   5, -10,
+		-20, -10, -10, -10, -10, -10, -10, -20};
+		
+	private static final int[] ROOK = {
+		 0,  0,  0,  0,  0,  0,  0,  0,
+		 5, 10, 10, 10, 10, 10, 10,  5,
+		-5,  0,  0,  0,  0,  0,  0, -5,
+		-5,  0,  0,  0,  0,  0,  0, -5,
+		-5,  0,  0,  0,  0,  0,  0, -5,
+		-5,  0,  0,  0,  0,  0,  0, -5,
+		-5,  0,  0,  0,  0,  0,  0, -5,
+		 0,  0,  0,  5,  5,  0,  0,  0};
+		
+	private static final int[] QUEEN = {
+		-20, -10, -10, -5, -5, -10, -10, -20,
+		-10,   0,   0,  0,  0,   0,   0, -10,
+		-10,   0,   5,  5,  5,   5,   0, -10,
+		 -5,   0,   5,  5,  5,   5,   0,  -5,
+		  0,   0,   5,  5,  5,   5,   0,  -5,
+		-10,   5,   5,  5,  5,   5,   0, -10,
+		-10,   0,   5,  0,  0,   0,   0, -10,
+		-20, -10, -10, -5, -5, -10, -10, -20};
+		
+	private static final int[] KING_MIDDLEGAME = {
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-20, -30, -30, -40, -40, -30, -30, -20,
+		-10, -20, -20, -20, -20, -20, -20, -10,
+		 20,  20,   0,   0,   0,   0,  20,  20,
+		 20,  30,  10,   0,   0,  10,  30,  20};
+		
+	private static final int[] KING_ENDGAME = {
+		-50, -40, -30, -20, -20, -30, -40, -50,
+		-30, -20, -10,   0,   0, -10, -20, -30,
+		-30, -10,  20,  30,  30,  20, -10, -30,
+		-30, -10,  30,  40,  40,  30, -10, -30,
+		-30, -10,  30,  40,  40,  30, -10, -30,
+		-30, -10,  20,  30,  30,  20, -10, -30,
+		-30, -30,   0,   0,   0,   0, -30, -30,
+		-50, -30, -30, -30, -30, -30, -30, -50};
+		
+	//value plus table entry, indexed by color and piece type the same way as Board's bitboards, then by square;
+	//black's entries are negative, so the sums are white's score
+	private static final int[][] MIDDLEGAME = new int[2 * Piece.TYPES][Board.SQUARES];
+	private static final int[][] ENDGAME = new int[2 * Piece.TYPES][Board.SQUARES];
+	
+	static {
+		int[][] middlegame = {PAWN_MIDDLEGAME, KNIGHT, BISHOP, ROOK, QUEEN, KING_MIDDLEGAME};
+		int[][] endgame = {PAWN_ENDGAME, KNIGHT, BISHOP, ROOK, QUEEN, KING_ENDGAME};
+		
+		for (int type = 0; type < Piece.TYPES; type++) {
+			for (int square = 0; square < Board.SQUARES; square++) {
+				//a white piece on rank y reads row 7 - y of its table, and a black piece reads it mirrored
+				int row = Board.SIDES - 1 - Bitboard.y(square);
+				int whiteEntry = row * Board.SIDES + Bitboard.x(square);
+				int blackEntry = whiteEntry ^ (Board.SQUARES - Board.SIDES);
+				
+				MIDDLEGAME[type][square] = MIDDLEGAME_VALUES[type] + middlegame[type][whiteEntry];
+				ENDGAME[type][square] = ENDGAME_VALUES[type] + endgame[type][whiteEntry];
+				MIDDLEGAME[Piece.TYPES + type][square] = -(MIDDLEGAME_VALUES[type] + middlegame[type][blackEntry]);
+				ENDGAME[Piece.TYPES + type][square] = -(ENDGAME_VALUES[type] + endgame[type][blackEntry]);
+			}
+		}
+	}
+	
+	private Evaluation() {
+	}
+	
+	/**
+	 * @return middlegame material and piece-square score of a piece on a square, negative for black
+	 */
+	public static int middlegame(boolean white, int type, int square) {
+		return MIDDLEGAME[white ? type : Piece.TYPES + type][square];
+	}
+	
+	/**
+	 * @return endgame material and piece-square score of a piece on a square, negative for black
+	 */
+	public static int endgame(boolean white, int type, int square) {
+		return ENDGAME[white ? type : Piece.TYPES + type][square];
+	}
+	
+	/**
+	 * @return how much a piece type adds to the game phase
+	 */
+	public static int phase(int type) {
+		return PHASE[type];
+	}
+	
+	/**
+	 * Evaluates a position for the search
+	 * @param board
+	 * @return score in centipawns from the side to move's point of view
+	 */
+	public static int evaluate(Board board) {
+		int score = score(board);
+		return board.isWhiteTurn() ? score : -score;
+	}
+	
+	/**
+	 * Evaluates a position for display
+	 * @param board
+	 * @return score in centipawns from white's point of view
+	 */
+	public static int score(Board board) {
+		int middlegame = board.getMiddlegame();
+		int endgame = board.getEndgame();
+		
+		for (int side = 0; side < 2; side++) {
+			boolean white = side == 0;
+			int sign = white ? 1 : -1;
+			long occupied = board.getOccupied();
+			long own = board.getOccupancy(white);
+			
+			int enemyKing = Bitboard.first(board.getPieces(!white, Piece.KING));
+			long kingZone = Bitboard.kingAttacks(enemyKing) | Bitboard.bit(enemyKing);
+			int attackers = 0;
+			int attackWeight = 0;
+			
+			for (int type = Piece.KNIGHT; type <= Piece.QUEEN; type++) {
+				for (long bits = board.getPieces(white, type); bits != 0; bits &= bits - 1) {
+					long attacks = attacks(type, Bitboard.first(bits), occupied);
+					int mobility = Long.bitCount(attacks & ~own);
+					middlegame += sign * MOBILITY_MIDDLEGAME[type] * mobility;
+					endgame += sign * MOBILITY_ENDGAME[type] * mobility;
+					
+					long hits = attacks & kingZone;
+					if (hits != 0) {
+						attackers++;
+						attackWeight += KING_ATTACK[type] * Long.bitCount(hits);
+					}
+				}
+			}
+			
+			//a lone attacker is rarely a threat, while each one more makes the attack worse
+			if (attackers > 1) {
+				middlegame += sign * attackWeight * (attackers - 1);
+			}
+			
+			//pawns on the two ranks in front of the king, or beside it, shelter it until the endgame
+			int king = Bitboard.first(board.getPieces(white, Piece.KING));
+			long zone = Bitboard.kingAttacks(king) | Bitboard.bit(king);
+			long shelter = white ? zone << Board.SIDES : zone >>> Board.SIDES;
+			middlegame += sign * PAWN_SHIELD * Long.bitCount(shelter & board.getPieces(white, Piece.PAWN));
+		}
+		
+		return taper(middlegame, endgame, board.getPhase());
+	}
+	
+	/**
+	 * Blends the middlegame and endgame scores by the game phase
+	 * @param phase MAX_PHASE with every piece on the board, less as they come off
+	 */
+	public static int taper(int middlegame, int endgame, int phase) {
+		phase = Math.min(phase, MAX_PHASE);
+		return (middlegame * phase + endgame * (MAX_PHASE - phase)) / MAX_PHASE;
+	}
+	
+	/**
+	 * White's share of a score bar
+	 * @param score centipawns from white's point of view
+	 * @return 0 for a lost position, 0.5 for an even one and 1 for a won one
+	 */
+	public static double whiteShare(int score) {
+		return 1 / (1 + Math.pow(3, -score / SCORE_SCALE));
+	}
+	
+	/**
+	 * Adds up the material and piece-square scores and the phase from scratch
+	 * Board keeps them up to date as it changes, so this is only needed to check that
+	 * @param board
+	 * @return {middlegame, endgame, phase}
+	 */
+	public static int[] sums(Board board) {
+		int[] sums = new int[3];
+		for (int square = 0; square < Board.SQUARES; square++) {
+			Piece piece = board.get(square);
+			if (piece != null) {
+				sums[0] += middlegame(piece.isWhite, piece.type, square);
+				sums[1] += endgame(piece.isWhite, piece.type, square);
+				sums[2] += phase(piece.type);
+			}
+		}
+		return sums;
+	}
+	
+	private static long attacks(int type, int square, long occupied) {
+		switch (type) {
+		case Piece.KNIGHT:
+			return Bitboard.knightAttacks(square);
+		case Piece.BISHOP:
+			return Bitboard.bishopAttacks(square, occupied);
+		case Piece.ROOK:
+			return Bitboard.rookAttacks(square, occupied);
+		default:
+			return Bitboard.rookAttacks(square, occupied) | Bitboard.bishopAttacks(square, occupied);
+		}
+	}
+}
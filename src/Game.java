@@ -1,4 +1,4 @@
- import java.awt.Point;
+ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -7,6 +7,7 @@ import java.util.HashMap;
  * Has one board, on which it moves
  * Determines whether moves are legal
  * Does not have custom hashcode or equals because it does not keep track of whether two games that look the same are different
+ * A Game and its Board are not thread safe; concurrent searches and games each use their own, sharing only the immutable pieces
  * @author Stephen S
  *
  */
@@ -17,14 +18,25 @@ public class Game {
 	public static final int WHITE_WIN = 2;
 	public static final int BLACK_WIN = 3;
 	
+	//a hundred plies with no capture or pawn move, or a third visit to a position, draws the game
+	private static final int PLIES_UNTIL_DRAW = 100;
+	private static final int REPETITIONS_UNTIL_DRAW = 3;
+	
+	//squares of a1's color
+	private static final long DARK_SQUARES = 0xAA55AA55AA55AA55L;
+	
 	private Board board;
-	private int turnsUntilDraw = 0;
-	private final int TURNS_UNTIL_DRAW = 50;
-	public HashMap<Piece, ArrayList<Move>> precalculatedMoves;
+	private HashMap<Piece, ArrayList<Move>> precalculatedMoves;
+	
+	private MoveGenerator generator;
+	private boolean generatorUpdated;
+	private MoveList legalMoves;
+	
+	private Tablebase tablebase;
+	
+	//visits to each position since the game started or was set up, for spotting repetitions
+	private RepetitionTable repetitions;
 	
-	//stored to check en passant
-	private Pawn justDoubleMoved;
-
 	/**
 	 * Constructor
 	 * @param board
@@ -32,52 +44,34 @@ public class Game {
 	public Game(Board board) {
 		this.board = board;
 		precalculatedMoves = new HashMap<>();
-		justDoubleMoved = null;
+		generator = new MoveGenerator(board);
+		generatorUpdated = false;
+		legalMoves = new MoveList();
+		repetitions = new RepetitionTable();
+		countRepetitions();
 	}
 	
 	/**
-	 * Checks if the game is over and stores the Moves lists it generates to save time later
+	 * Checks if the game is over
+	 * Stops at the first piece with a legal move, and counts repetitions from a table kept as moves are made,
+	 * so it takes about a microsecond and can be called after every move
 	 * @return constant of board state
 	 */
 	public int isGameOver() {
-		//50-move draw
-		if (turnsUntilDraw >= TURNS_UNTIL_DRAW) {
-			return DRAW;
-		}
+		updateGenerator();
 		
-		boolean inCheck = inCheck(board, board.isWhiteTurn());
-		
-		if (inCheck) {
-			//tell king he cannot castle
-			for (int j = 0; j < board.board.length; j++) {
-				Piece[] row = board.board[j];
-				for (int i = 0; i < row.length; i++) {
-					Piece p = row[i];
-					if (p instanceof King && p.isWhite == board.isWhiteTurn()) {
-						((King) p).cannotCastle();
-					}
-				}
-			}
-		}
-		
-		//see if any piece has a legal move
-		for (Piece[] row : board.board) {
-			for (Piece p : row) {
-				if (p != null && p.isWhite == board.isWhiteTurn()) {
-					ArrayList<Move> moves = getMoves(p);
-					precalculatedMoves.put(p, moves);
-					
-					for (Move m : moves) {
-						if (m.legal) {
-							return NOT_OVER;
-						}
-					}
-				}
+		//see if any piece has a legal move; mate ends the game even on the move that would draw it
+		if (generator.hasLegalMove(legalMoves)) {
+			//50-move draw, threefold repetition and dead positions, or else whether the endgame tables already know the result
+			if (board.getHalfmoveClock() >= PLIES_UNTIL_DRAW || repetitions.count(board.getKey()) >= REPETITIONS_UNTIL_DRAW
+					|| isInsufficientMaterial()) {
+				return DRAW;
 			}
+			return adjudicate();
 		}
 		
 		//if no legal moves and in check, checkmate
-		if (inCheck) {
+		if (generator.inCheck()) {
 			if (board.isWhiteTurn()) {
 				return BLACK_WIN;
 			} else {
@@ -89,6 +83,51 @@ public class Game {
 		}
 	}
 	
+	/**
+	 * A position is dead when neither side has enough to mate: bare kings, one minor piece,
+	 * or only bishops, all on squares of the same color
+	 * @return if neither side can ever win
+	 */
+	private boolean isInsufficientMaterial() {
+		for (int side = 0; side < 2; side++) {
+			boolean white = side == 0;
+			if ((board.getPieces(white, Piece.PAWN) | board.getPieces(white, Piece.ROOK) | board.getPieces(white, Piece.QUEEN)) != 0) {
+				return false;
+			}
+		}
+		
+		long knights = board.getPieces(true, Piece.KNIGHT) | board.getPieces(false, Piece.KNIGHT);
+		long bishops = board.getPieces(true, Piece.BISHOP) | board.getPieces(false, Piece.BISHOP);
+		
+		if (Long.bitCount(knights | bishops) <= 1) {
+			return true;
+		}
+		return knights == 0 && ((bishops & DARK_SQUARES) == 0 || (bishops & ~DARK_SQUARES) == 0);
+	}
+	
+	/**
+	 * Decides a position with legal moves from the endgame tables, if there are any
+	 * A won table position ends the game for the winner at once rather than at mate
+	 * @return constant of board state
+	 */
+	private int adjudicate() {
+		int value = tablebase == null ? Tablebase.UNKNOWN : tablebase.probe(board);
+		if (value == Tablebase.UNKNOWN) {
+			return NOT_OVER;
+		}
+		if (value == Tablebase.DRAW) {
+			return DRAW;
+		}
+		return Tablebase.isWin(value) == board.isWhiteTurn() ? WHITE_WIN : BLACK_WIN;
+	}
+	
+	/**
+	 * @param tablebase endgame tables to end games by, or null to play them out
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+	
 	/**
 	 * Finds moves for a given piece (valid and invalid)
 	 * @param piece
@@ -99,233 +138,62 @@ public class Game {
 			return precalculatedMoves.get(piece);
 		}
 		
-		ArrayList<Move> moves = new ArrayList<>();
+		updateGenerator();
 		
-		Point current = board.getLocation(piece);
+		ArrayList<Move> moves = generator.getMoves(piece);
 		
-		if (piece instanceof Pawn) {
-			Pawn pawn = (Pawn) piece;
-			
-			int sign = pawn.isWhite ? 1 : -1;
-			
-			int nextY = current.y + sign;
-			//should not need to check if in board since it should promotes before then
-			boolean promotes = nextY == 0 || nextY == Board.SIDES - 1;
-			
-			//pawn moving in front of self
-			int counter = 0;
-			int tempNextY = nextY;
-			do {
-				tempNextY += counter * sign;
-				
-				if (board.get(current.x, tempNextY) != null) {
-					break;
-				}
-				
-				moves.add(new Move(pawn, current.x, tempNextY, !inCheck(board, new Move(pawn, current.x, tempNextY)), false, promotes, false, null));
-				
-				counter++;
-				
-				//for moving twice from the start
-			} while (!pawn.hasMoved() && counter < 2);
-			
-			//pawn capturing diagonally
-			for (int i = -1; i <= 1; i += 2) {
-				int nextX = current.x + i;
-				
-				//position must be inside the board
-				if (!board.isInBounds(nextX)) {
-					continue;
-				}
-				
-				Piece toKill = board.get(nextX, nextY);
-				
-				//must be a piece of the other team's color at that position
-				Piece enPassant = null;
-				if (toKill == null || toKill.isWhite == pawn.isWhite) {
-					//pawn capturing with en passant
-					enPassant = board.get(nextX, current.y);
-					
-					if (!(enPassant != null && enPassant.equals(justDoubleMoved))) {
-						continue;
-					}
-				}
-				
-				//we only get here if we have a valid capture in this iteration, either regular or en passant
-				
-				moves.add(new Move(pawn, nextX, nextY, !inCheck(board, new Move(pawn, nextX, nextY)), true, promotes, false, enPassant));
-				
-			}
-		} else if (piece instanceof Knight) {
-			
-			//generate all points an L away, then make sure they are in bounds, then make sure they are good
-			
-			int[] possibles = {-2, -1, 1, 2};
-			
-			final int CAP = 3;
-			
-			//loop through x values
-			for (int deltaX : possibles) {
-				//get two y values for each x value
-				for (int deltaY = -1; deltaY <= 1; deltaY += 2) {
-					
-					//get which value it is from x, get the sign of y from i
-					int y = current.y + deltaY * (CAP - Math.abs(deltaX));
-					int x = current.x + deltaX;
-					
-					//if both are valid positions
-					if (board.isInBounds(x) && board.isInBounds(y)) {
-						Piece other = board.get(x, y);
-						
-						//if the place is empty or the other is of the opposing color
-						if (other == null || other.isWhite != piece.isWhite) {
-							
-							moves.add(new Move(piece, x, y, !inCheck(board, new Move(piece, x, y)), other != null, false, false, null));
-						}
-					}
-				}
-			}
-		} else {
-			
-			//diagonal moving
-			if (piece instanceof Bishop || piece instanceof Queen) {
-				
-				//do the same thing for each of the four diagonal directions
-				for (int x = -1; x <= 1; x += 2) {
-					for (int y = -1; y <= 1; y += 2) {
-						
-						//start moving in the diagonal once
-						int curX = current.x + x;
-						int curY = current.y + y;
-						
-						//keep moving diagonally until we go out of bounds or a break;
-						while (board.isInBounds(curX) && board.isInBounds(curY)) {
-							Piece target = board.get(curX, curY);
-							
-							//if same color as target piece, break out before adding as a move
-							if (target != null && target.isWhite == piece.isWhite) {
-								break;
-							}
-							
-							moves.add(new Move(piece, curX, curY, !inCheck(board, new Move(piece, curX, curY)), target != null, false, false, null));
-							
-							//if different color as target piece, break out before add as move
-							if (target != null && target.isWhite != piece.isWhite) {
-								break;
-							}
-							
-							curX += x;
-							curY += y;
-						}
-					}
-				}
-			}
-			
-			//horizontal/vertical moving
-			if (piece instanceof Rook || piece instanceof Queen) {
-				
-				//all four cardinal directions
-				int possibles[][] = { {1, 0}, {-1, 0}, {0, 1}, {0, -1} };
-				
-				for (int[] points : possibles) {
-					int x = points[0];
-					int y = points[1];
-					
-					//start moving once
-					int curX = current.x + x;
-					int curY = current.y + y;
-					
-					//keep moving until we go out of bounds or a break;
-					while (board.isInBounds(curX) && board.isInBounds(curY)) {
-						Piece target = board.get(curX, curY);
-						
-						//if same color as target piece, break out before adding as a move
-						if (target != null && target.isWhite == piece.isWhite) {
-							break;
-						}
-						
-						moves.add(new Move(piece, curX, curY, !inCheck(board, new Move(piece, curX, curY)), target != null, false, false, null));
-						
-						//if different color as target piece, break out before add as move
-						if (target != null && target.isWhite != piece.isWhite) {
-							break;
-						}
-						
-						curX += x;
-						curY += y;
-					}
-				}
-			}
-		}
+		precalculatedMoves.put(piece, moves);
+		return moves;
+	}
+	
+	/**
+	 * Finds the legal move written in from-to coordinates, such as e2e4, e7e8q or e7e8n
+	 * @param coordinates
+	 * @return the legal move, or null if there is none
+	 */
+	public Move findMove(String coordinates) {
+		MoveList moves = generateLegalMoves();
 		
-		if (piece instanceof King) {
-			
-			//possible moves for a king from center
-			int possibles[][] = { {1, 1},
-								  {1, 0},
-								  {1, -1},
-								  {0, 1},
-								  {0, -1},
-								  {-1, 1},
-								  {-1, 0},
-								  {-1, -1} };
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			String name = MoveCode.name(move);
 			
-			for (int[] diff : possibles) {
-				int x = current.x + diff[0];
-				int y = current.y + diff[1];
-			
-				//if position is in bounds
-				if (board.isInBounds(x) && board.isInBounds(y)) {
-					Piece other = board.get(x, y);
-					
-					//if king can move to the other location
-					if (other == null || other.isWhite != piece.isWhite) {
-
-						moves.add(new Move(piece, x, y, !inCheck(board, new Move(piece, x, y)), other != null, false, false, null));
-						
-					}
-				}
+			//a promotion may leave out the piece it promotes to
+			if (name.equals(coordinates) || (coordinates.length() == 4 && name.startsWith(coordinates))) {
+				return new Move(board, move);
 			}
 			
-			King king = (King) piece;
-			
-			if (king.canCastle()) {
-				
-				//get rooks to castle with
-				for (Piece[] row : board.board) {
-					for (Piece toTest : row) {
-						if (toTest instanceof Rook && toTest.isWhite == piece.isWhite) {
-							Rook r = (Rook) toTest;
-							
-							if (r.canCastle()) {
-								
-								Point kingLoc = board.getLocation(king);
-								
-								int diff = kingLoc.x - board.getLocation(r).x;
-								
-								// decide which direction to move to check empty locations
-								int deltaX = diff > 0 ? -1 : 1;
-								
-								boolean blocked = false;
-								for (int i = 1; i <= 2; i++) {
-									int curX = kingLoc.x + deltaX * i;
-									if (board.get(curX, kingLoc.y) != null || inCheck(board, king.isWhite, curX, kingLoc.y)) {
-										blocked = true;
-										break;
-									}
-								}
-								
-								moves.add(new Move(king, kingLoc.x + deltaX * 2, kingLoc.y, !blocked, false, false, true, r));
-								
-							}
-						}
-					}
+			//pawns are only generated promoting to a queen, so an underpromotion takes the queen promotion's squares
+			if (MoveCode.isPromotion(move) && coordinates.length() == 5 && name.startsWith(coordinates.substring(0, 4))) {
+				int type = "nbrq".indexOf(coordinates.charAt(4));
+				if (type >= 0) {
+					return new Move(board, MoveCode.promotion(MoveCode.from(move), MoveCode.to(move), Piece.KNIGHT + type, MoveCode.isCapture(move)));
 				}
 			}
 		}
+		return null;
+	}
+	
+	/**
+	 * Fills the reused list with the legal moves of the side to move
+	 * @return the list, which is only valid until the next call
+	 */
+	public MoveList generateLegalMoves() {
+		updateGenerator();
 		
-		precalculatedMoves.put(piece, moves);
-		return moves;
+		legalMoves.clear();
+		generator.generate(legalMoves);
+		return legalMoves;
+	}
+	
+	/**
+	 * Finds the checkers and pins of the position, once per position
+	 */
+	private void updateGenerator() {
+		if (!generatorUpdated) {
+			generator.update();
+			generatorUpdated = true;
+		}
 	}
 	
 	/**
@@ -333,189 +201,82 @@ public class Game {
 	 * @param m move
 	 */
 	public void move(Move m) {
+		move(m.getCode());
+	}
+	
+	/**
+	 * Executes a given packed move on the game board
+	 * @param move packed move from MoveGenerator
+	 */
+	public void move(int move) {
 		precalculatedMoves.clear();
+		generatorUpdated = false;
 		
-		//used to check if previous move was a pawn double move
-		int previousY = board.getLocation(m.getPiece()).y;
-		
-		board.move(m);
-		
-		//reset 50-move draw counter if pawn move or capture; otherwise, increment
-		if (m.captures || m.getPiece() instanceof Pawn) {
-			turnsUntilDraw = 0;
-		} else {
-			turnsUntilDraw += 1;
-		}
-		
-		//reset en passant
-		justDoubleMoved = null;
-		
-		//tell pawns they have moved
-		if (m.getPiece() instanceof Pawn && !((Pawn) m.getPiece()).hasMoved()) {
-			
-			Pawn p = (Pawn) m.getPiece();
-			
-			p.didMove();
-			
-			int diff = board.getLocation(p).y - previousY;
-			
-			if (diff == 2 || diff == -2) {
-				justDoubleMoved = p;
-			}
-		
-		//tells castleables they cannot castle
-		} else if (m.getPiece() instanceof Castleable) {
-			
-			((Castleable) m.getPiece()).cannotCastle();
-		}
+		//the board keeps track of castling, en passant and the 50-move draw counter, and passes the turn
+		board.makeMove(move);
+		repetitions.add(board.getKey());
+	}
+	
+	/**
+	 * Sets up the position described by a FEN string, forgetting the moves made so far
+	 * @param fen
+	 * @throws IllegalArgumentException if the FEN is malformed
+	 */
+	public void setPosition(String fen) {
+		precalculatedMoves.clear();
+		generatorUpdated = false;
 		
-		board.switchTurns();
+		board.setPosition(fen);
+		countRepetitions();
 	}
 	
 	/**
-	 * For a given board, after moving, determines if the king of the team who moved is now in check
-	 * @param original the board before the move ( needs to be copied )
-	 * @param m the move to test
-	 * @return
+	 * Writes the game to a buffer as a GameSnapshot
+	 * @param out buffer with GameSnapshot.size bytes to spare
 	 */
-	private static boolean inCheck(Board original, Move m) {
-		//make a copy of the board, run the test move on the board, and see if the king is in check
-		Board b = new Board(original);
-		boolean isWhiteTurn = b.isWhiteTurn();
-		b.move(m);
-		return inCheck(b, isWhiteTurn);
+	public void save(ByteBuffer out) {
+		GameSnapshot.write(board, out);
 	}
 	
 	/**
-	 * For a given board, determines if the given team's king is in check
-	 * @param b the board
-	 * @param isWhiteKing whose king it is
-	 * @return if the given team's king is in check
+	 * Replaces the game with one written by save, with its moves ready to be taken back
+	 * @param in buffer positioned at the snapshot
+	 * @throws IllegalArgumentException if the buffer does not hold a snapshot
 	 */
-	private static boolean inCheck(Board b, boolean isWhiteKing) {
-		//find the king and call inCheck at the king's position
-		for (int j = 0; j < b.board.length; j++) {
-			Piece[] row = b.board[j];
-			for (int i = 0; i < row.length; i++) {
-				Piece p = row[i];
-				if (p instanceof King && p.isWhite == isWhiteKing) {
-					return inCheck(b, isWhiteKing, i, j);
-				}
-			}
+	public void restore(ByteBuffer in) {
+		precalculatedMoves.clear();
+		generatorUpdated = false;
+		
+		GameSnapshot.read(board, in);
+		countRepetitions();
+	}
+	
+	/**
+	 * Counts the positions the board has been through since it was set up, and the one it is in
+	 */
+	private void countRepetitions() {
+		repetitions.clear();
+		for (int i = 0; i < board.getUndoCount(); i++) {
+			repetitions.add(board.getKey(i));
 		}
-		throw new IllegalArgumentException("No king found... ???");
+		repetitions.add(board.getKey());
 	}
 	
 	/**
-	 * For a given board, determines if (x, y) is in check from the player whose turn it is
-	 * @param b the board
-	 * @param isWhiteOfDefendingPlayer if the defending player is white
-	 * @param x position of place to check
-	 * @param y position of place to check
-	 * @return if the given position is in check
+	 * Takes back the last move
+	 * @return false if there was no move to take back
 	 */
-	private static boolean inCheck(Board b, boolean isWhiteOfDefendingPlayer, int x, int y) {
-		//loop through board and see if opposing pieces can attack (x,y)
-		for (int j = 0; j < b.board.length; j++) {
-			Piece[] row = b.board[j];
-			
-			for (int i = 0; i < row.length; i++) {
-				Piece p = row[i];
-				
-				if (p != null && p.isWhite != isWhiteOfDefendingPlayer) {
-					
-					int diffX = Math.abs(x - i);
-					int diffY = Math.abs(y - j);
-					
-					if (p instanceof Pawn) {
-						
-						//if directly diagonally from each other
-						if (diffX == 1 && diffY == 1) {
-							//if pawn can attack location
-							int sign = p.isWhite ? 1 : -1;
-							
-							if (j + sign == y) {
-								return true;
-							}
-						}
-					} else if (p instanceof Knight) {
-						
-						//if knight can attack (x, y)
-						if ( (diffX == 2 && diffY == 1) || (diffY == 2 && diffX == 1) ) {
-							return true;
-						}
-					} else if (p instanceof King) {
-						
-						//if king can attack (x, y)
-						if (diffX <= 1 && diffY <= 1) {
-							return true;
-						}
-					} else {
-						if (p instanceof Bishop || p instanceof Queen) {
-							//if in same diagonal
-							if (diffX == diffY) {
-								
-								int deltaX = x > i ? -1 : 1;
-								int deltaY = y > j ? -1 : 1;
-								
-								//if nothing is blocking the diagonal, we are in check
-								boolean blocked = false;
-								
-								for (int counterX = x + deltaX, counterY = y + deltaY; !( Math.abs(counterX - i) < 1 && Math.abs(counterY - j) < 1 ); counterX += deltaX, counterY += deltaY) {
-									if (b.get(counterX, counterY) != null) {
-										blocked = true;
-										break;
-									}
-								}
-								
-								if (!blocked) {
-									return true;
-								}
-							}
-						}
-						if (p instanceof Rook || p instanceof Queen) {
-							//if in same horizontal
-							if (diffY == 0) {
-								int minX = Math.min(x, i);
-								int maxX = Math.max(x, i);
-								
-								//if nothing is blocking the horizontal, we are in check
-								boolean blocked = false;
-								for (int counter = minX + 1; counter < maxX; counter++) {
-									if (b.get(counter, y) != null) {
-										blocked = true;
-										break;
-									}
-								}
-								
-								if (!blocked) {
-									return true;
-								}
-								
-							//if in same vertical
-							} else if (diffX == 0) {
-								int minY = Math.min(y, j);
-								int maxY = Math.max(y, j);
-								
-								//if nothing is blocking the vertical, we are in check
-								boolean blocked = false;
-								for (int counter = minY + 1; counter < maxY; counter++) {
-									if (b.get(x, counter) != null) {
-										blocked = true;
-										break;
-									}
-								}
-								
-								if (!blocked) {
-									return true;
-								}
-							}
-						}
-					}
-				}
-			}
+	public boolean undo() {
+		if (board.getUndoCount() == 0) {
+			return false;
 		}
-		return false;
+		
+		precalculatedMoves.clear();
+		generatorUpdated = false;
+		
+		repetitions.remove(board.getKey());
+		board.unmakeMove();
+		return true;
 	}
 	
 }
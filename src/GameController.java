@@ -0,0 +1,277 @@
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs a Game for the GUI on a background thread, so the Event Dispatch Thread only ever handles input and painting
+ * @author Spencer G
+ *
+ * The Game, its Board and the computer player's Search belong to one worker thread, which does all the rules work
+ * and the thinking in the order it was asked for. The GUI is handed results on the Event Dispatch Thread:
+ * a copy of each new position, and the moves of a piece it selected.
+ * Every request that makes earlier ones pointless (a new selection, a move, taking back, changing players)
+ * takes a new generation number; requests of an older generation are dropped before they run or before their
+ * result is shown, and a search of an older generation is stopped.
+ * Methods are called on the Event Dispatch Thread.
+ */
+
+public class GameController {
+
+	/**
+	 * Told of results on the Event Dispatch Thread
+	 */
+	public interface Listener {
+
+		/**
+		 * The position after a move or a take back, or the first position
+		 */
+		void positionChanged(Position position);
+
+		/**
+		 * The moves (both legal and illegal) of the piece last selected, if nothing has happened since
+		 */
+		void movesFound(Piece piece, ArrayList<Move> moves);
+	}
+
+	/**
+	 * Copy of a position for the GUI to draw and check clicks against, which never changes
+	 */
+	public static class Position {
+
+		private final Piece[] squares;
+		private final boolean whiteTurn;
+		private final int state;
+
+		private Position(Board board, int state) {
+
+			squares = new Piece[Board.SQUARES];
+
+			for(int square = 0; square < Board.SQUARES; square++) {
+
+				squares[square] = board.get(square);
+			}
+
+			whiteTurn = board.isWhiteTurn();
+			this.state = state;
+		}
+
+		/**
+		 * @return the piece on a square, or null
+		 */
+		public Piece get(int x, int y) {
+
+			return squares[Bitboard.square(x, y)];
+		}
+
+		/**
+		 * @return the pieces indexed by square as in Board, which must not be changed
+		 */
+		public Piece[] getSquares() {
+
+			return squares;
+		}
+
+		public boolean isWhiteTurn() {
+
+			return whiteTurn;
+		}
+
+		/**
+		 * @return constant of board state from Game
+		 */
+		public int getState() {
+
+			return state;
+		}
+	}
+
+	private final Game game;
+	private final Board board;
+	private final Search engine;
+	private final Search.Limits limits;
+	private final Listener listener;
+	private final ExecutorService worker;
+
+	//only changed on the Event Dispatch Thread, and read by the worker to see whether its task is still wanted
+	private volatile int generation;
+
+	//only used by the worker
+	private boolean computerWhite;
+	private boolean computerBlack;
+
+	/**
+	 * Constructor
+	 * @param board position to play from, which from now on is only used by the worker
+	 * @param engine the computer player
+	 * @param limits how long the computer thinks about each move
+	 * @param listener
+	 */
+	public GameController(Board board, Search engine, Search.Limits limits, Listener listener) {
+
+		this.board = board;
+		this.game = new Game(board);
+		this.engine = engine;
+		this.limits = limits;
+		this.listener = listener;
+
+		worker = Executors.newSingleThreadExecutor(runnable -> {
+
+			Thread thread = new Thread(runnable, "game controller");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Sends the first position
+	 */
+	public void start() {
+
+		worker.execute(this::changed);
+	}
+
+	/**
+	 * Finds the moves of a piece of the side to move, which are sent to movesFound unless something else is asked for first
+	 * @param piece
+	 */
+	public void select(Piece piece) {
+
+		int selected = cancel();
+
+		worker.execute(() -> {
+
+			if(selected != generation) {
+
+				return;
+			}
+
+			ArrayList<Move> moves = game.getMoves(piece);
+
+			SwingUtilities.invokeLater(() -> {
+
+				if(selected == generation) {
+
+					listener.movesFound(piece, moves);
+				}
+			});
+		});
+	}
+
+	/**
+	 * Plays a legal move found by select, then sends the new position
+	 * @param m
+	 */
+	public void play(Move m) {
+
+		cancel();
+
+		worker.execute(() -> {
+
+			game.move(m);
+			changed();
+		});
+	}
+
+	/**
+	 * Takes back the last move, and the computer's reply before it so that it is a person's turn again, then sends the position
+	 * The GUI does not take back moves while the computer plays both sides
+	 */
+	public void takeBack() {
+
+		cancel();
+
+		worker.execute(() -> {
+
+			if(game.undo() && isComputerTurn()) {
+
+				game.undo();
+			}
+
+			changed();
+		});
+	}
+
+	/**
+	 * Chooses which sides the computer plays, and starts it thinking if it is now its turn
+	 */
+	public void setComputer(boolean white, boolean black) {
+
+		cancel();
+
+		worker.execute(() -> {
+
+			computerWhite = white;
+			computerBlack = black;
+			think();
+		});
+	}
+
+	/**
+	 * Drops every request made so far that has not finished, and stops the computer thinking
+	 * @return the new generation
+	 */
+	private int cancel() {
+
+		generation++;
+		engine.stop();
+
+		return generation;
+	}
+
+	/**
+	 * Sends the position on the worker's board to the GUI, and asks the computer for a move if it is its turn
+	 * Finding out whether the game is over is part of this, so it happens on the worker too
+	 */
+	private void changed() {
+
+		Position position = new Position(board, game.isGameOver());
+
+		SwingUtilities.invokeLater(() -> listener.positionChanged(position));
+
+		if(position.state == Game.NOT_OVER) {
+
+			think();
+		}
+	}
+
+	/**
+	 * Queues a search for the computer's move if it is the computer's turn
+	 * It runs as its own task, so that requests made while it thinks can stop it
+	 */
+	private void think() {
+
+		if(!isComputerTurn()) {
+
+			return;
+		}
+
+		int thinking = generation;
+
+		//clear the last stop here rather than when the search starts, so a request made while this waits still stops it
+		engine.ready();
+
+		worker.execute(() -> {
+
+			if(thinking != generation) {
+
+				return;
+			}
+
+			Search.Result result = engine.search(board, limits);
+
+			//a search stopped by a newer request has nothing to play
+			if(thinking == generation && result.move != null) {
+
+				game.move(result.move);
+				changed();
+			}
+		});
+	}
+
+	private boolean isComputerTurn() {
+
+		return board.isWhiteTurn() ? computerWhite : computerBlack;
+	}
+}
@@ -0,0 +1,846 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many games at once for remote players, over a line-based text protocol on non-blocking sockets
+ * One event loop per core owns a selector and the connections handed to it, and handles their commands itself,
+ * since a command takes microseconds; so no request waits on another thread, and the loops never block
+ * A game is locked while a command uses it, as its players may sit on different loops
+ * Commands, one per line, each answered by one line in order:
+ *   new [fen]       ok id
+ *   join id         ok id fen
+ *   moves id        moves id e2e4 d2d4 ...
+ *   move id e2e4    ok id e2e4 result
+ *   fen id          fen id fen
+ *   close id        ok id
+ *   quit
+ * A move is also sent to the game's other players as: moved id e2e4 result
+ * The result is * while the game goes on, or 1-0, 0-1 or 1/2-1/2 when the move ended it
+ * Errors are answered with: error message
+ * With a journal, every game is recorded in a MoveJournal and brought back when the server starts again;
+ * a connection is sent nothing until the moves its lines report are on disk, so a move answered is never lost
+ * Games brought back have no players until someone joins them, and are dropped if nobody has joined them in ten minutes
+ * Usage: java GameServer [-port p] [-threads n] [-journal directory]
+ * @author Stephen S
+ *
+ */
+public class GameServer {
+	
+	public static final int DEFAULT_PORT = 7070;
+	
+	private static final int MAX_LINE = 256;
+	private static final int BUFFER_SIZE = 4096;
+	
+	//a client that reads nothing while this much waits for it is dropped
+	private static final int MAX_PENDING_OUTPUT = 1 << 20;
+	
+	//how often the journal is checked for whether it needs compacting
+	private static final long COMPACTION_CHECK_MILLIS = 1000;
+	
+	//how long a game brought back from the journal is kept for someone to join it
+	private static final long RESTORED_GAME_MILLIS = 10 * 60 * 1000;
+	
+	private final Map<Integer, Hosted> games;
+	private final AtomicInteger nextId;
+	private final EventLoop[] loops;
+	private int nextLoop;
+	private final MoveJournal journal;
+	
+	private ServerSocketChannel server;
+	private Thread compaction;
+	private volatile boolean running;
+	
+	/**
+	 * A game with the connections playing it
+	 */
+	private static class Hosted {
+		
+		private final Board board;
+		private final Game game;
+		private final List<Connection> players = new ArrayList<>(2);
+		private int state;
+		
+		//journal sequence of the game's last record, which replies about the game wait on
+		private long sequence;
+		
+		//brought back from the journal and not joined since
+		private boolean unjoined;
+		
+		private Hosted(Board board) {
+			this.board = board;
+			game = new Game(board);
+			state = game.isGameOver();
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * @param threads number of event loops
+	 */
+	public GameServer(int threads) throws IOException {
+		this(threads, null);
+	}
+	
+	/**
+	 * Constructor
+	 * @param threads number of event loops
+	 * @param journalDirectory where games are journaled, whose games are hosted again; or null for no journal
+	 */
+	public GameServer(int threads, Path journalDirectory) throws IOException {
+		games = new ConcurrentHashMap<>();
+		nextId = new AtomicInteger(1);
+		loops = new EventLoop[threads];
+		for (int i = 0; i < threads; i++) {
+			loops[i] = new EventLoop(i);
+		}
+		
+		if (journalDirectory == null) {
+			journal = null;
+			return;
+		}
+		Map<Integer, Board> restored = new HashMap<>();
+		journal = MoveJournal.open(journalDirectory, restored);
+		for (Map.Entry<Integer, Board> entry : restored.entrySet()) {
+			Hosted hosted = new Hosted(entry.getValue());
+			hosted.unjoined = true;
+			games.put(entry.getKey(), hosted);
+		}
+		
+		//ids of games that ended before the restart are not handed out again
+		nextId.set(journal.getHighestGame() + 1);
+	}
+	
+	/**
+	 * Starts listening and starts the event loops
+	 * @param port port to listen on, or 0 for any free port
+	 * @return the port listened on
+	 */
+	public int start(int port) throws IOException {
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port), 1024);
+		server.configureBlocking(false);
+		running = true;
+		
+		//the first loop accepts as well, and hands connections round the loops
+		loops[0].execute(() -> loops[0].register(server, SelectionKey.OP_ACCEPT, null));
+		for (EventLoop loop : loops) {
+			loop.thread.start();
+		}
+		
+		if (journal != null) {
+			compaction = new Thread(this::compact, "journal compaction");
+			compaction.setDaemon(true);
+			compaction.start();
+		}
+		return ((InetSocketAddress) server.getLocalAddress()).getPort();
+	}
+	
+	/**
+	 * Stops the event loops and closes every connection
+	 */
+	public void stop() throws IOException {
+		running = false;
+		for (EventLoop loop : loops) {
+			loop.selector.wakeup();
+		}
+		for (EventLoop loop : loops) {
+			try {
+				loop.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		server.close();
+		
+		if (journal != null) {
+			compaction.interrupt();
+			journal.close();
+		}
+	}
+	
+	/**
+	 * @return the number of games being hosted
+	 */
+	public int getGameCount() {
+		return games.size();
+	}
+	
+	/**
+	 * Compacts the journal whenever enough has been written to it, until the server stops
+	 * Restored games nobody has joined in time are dropped here too, so they are not snapshotted forever
+	 */
+	private void compact() {
+		long expiry = System.nanoTime() + RESTORED_GAME_MILLIS * 1000000;
+		boolean expired = false;
+		
+		while (running) {
+			try {
+				Thread.sleep(COMPACTION_CHECK_MILLIS);
+				if (!expired && System.nanoTime() - expiry >= 0) {
+					dropUnjoined();
+					expired = true;
+				}
+				if (journal.needsCompaction()) {
+					journal.compact(this::snapshotGames);
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (IOException e) {
+				System.err.println("Journal compaction failed: " + e);
+			} catch (IllegalStateException e) {
+				//the writer has failed, and every record from now on would fail the same way
+				System.err.println("Journal failed: " + e.getCause());
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Drops the games brought back from the journal that nobody has joined, and ends them in the journal
+	 */
+	private void dropUnjoined() {
+		for (Map.Entry<Integer, Hosted> entry : games.entrySet()) {
+			Hosted hosted = entry.getValue();
+			synchronized (hosted) {
+				if (hosted.unjoined && games.remove(entry.getKey(), hosted)) {
+					hosted.sequence = journal.end(entry.getKey());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes every hosted game to the journal, each under its lock so no move is made while it is written
+	 */
+	private void snapshotGames() {
+		for (Map.Entry<Integer, Hosted> entry : games.entrySet()) {
+			Hosted hosted = entry.getValue();
+			synchronized (hosted) {
+				//a game dropped since has already been ended in the journal
+				if (games.get(entry.getKey()) == hosted) {
+					hosted.sequence = journal.snapshot(entry.getKey(), hosted.board);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * One thread with its own selector, serving the connections registered with it
+	 */
+	private class EventLoop implements Runnable {
+		
+		private final Selector selector;
+		private final Thread thread;
+		
+		//work handed over by other threads, run between selects
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		
+		private EventLoop(int number) throws IOException {
+			selector = Selector.open();
+			thread = new Thread(this, "game server " + number);
+			thread.setDaemon(true);
+		}
+		
+		//tasks queued by the loop itself run before it next selects, so only other threads need to wake it
+		private void execute(Runnable task) {
+			tasks.add(task);
+			if (Thread.currentThread() != thread) {
+				selector.wakeup();
+			}
+		}
+		
+		private SelectionKey register(java.nio.channels.SelectableChannel channel, int ops, Connection connection) {
+			try {
+				return channel.register(selector, ops, connection);
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot register with the selector", e);
+			}
+		}
+		
+		@Override
+		public void run() {
+			while (running) {
+				for (Runnable task; (task = tasks.poll()) != null;) {
+					task.run();
+				}
+				
+				try {
+					selector.select();
+				} catch (IOException e) {
+					throw new IllegalStateException("Selector failed", e);
+				}
+				
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					
+					Connection connection = (Connection) key.attachment();
+					try {
+						if (key.isReadable()) {
+							connection.read();
+						}
+						if (key.isValid() && key.isWritable()) {
+							connection.flush();
+						}
+					} catch (IOException e) {
+						connection.close();
+					}
+				}
+			}
+			
+			//the games stay, so that a journal brings them back when the server starts again
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() != null) {
+					((Connection) key.attachment()).close(false);
+				}
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				//closing anyway
+			}
+		}
+		
+		private void accept() {
+			try {
+				SocketChannel channel;
+				while ((channel = server.accept()) != null) {
+					channel.configureBlocking(false);
+					channel.socket().setTcpNoDelay(true);
+					
+					EventLoop loop = loops[nextLoop];
+					nextLoop = (nextLoop + 1) % loops.length;
+					final SocketChannel accepted = channel;
+					loop.execute(() -> {
+						Connection connection = new Connection(accepted, loop);
+						connection.key = loop.register(accepted, SelectionKey.OP_READ, connection);
+					});
+				}
+			} catch (IOException e) {
+				//a failed accept only loses that connection
+			}
+		}
+	}
+	
+	/**
+	 * One client: its buffers, the line being read, and the games it plays
+	 */
+	private class Connection {
+		
+		private final SocketChannel channel;
+		private final EventLoop loop;
+		private SelectionKey key;
+		
+		private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		private final StringBuilder line = new StringBuilder();
+		
+		//written by any thread holding the connection's lock, and sent by its own loop
+		private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+		private boolean flushScheduled;
+		
+		//set while the loop handles this connection's commands, as it sends their replies together afterwards
+		private boolean reading;
+		
+		//journal sequence the output waits on, and whether the journal is to say when it is reached
+		private long awaiting;
+		private boolean awaitingJournal;
+		private boolean quitting;
+		
+		private final Set<Integer> playing = new HashSet<>();
+		private boolean closed;
+		
+		private Connection(SocketChannel channel, EventLoop loop) {
+			this.channel = channel;
+			this.loop = loop;
+		}
+		
+		/**
+		 * Reads what has arrived and handles each complete line, then sends the replies together
+		 */
+		private void read() throws IOException {
+			int count = channel.read(in);
+			if (count < 0) {
+				close();
+				return;
+			}
+			
+			in.flip();
+			reading = true;
+			while (in.hasRemaining() && !closed && !quitting) {
+				char c = (char) (in.get() & 0xFF);
+				if (c == '\n') {
+					String command = line.toString().trim();
+					line.setLength(0);
+					if (!command.isEmpty()) {
+						handle(this, command);
+					}
+				} else if (c != '\r') {
+					if (line.length() == MAX_LINE) {
+						reading = false;
+						send("error line too long");
+						flush();
+						close();
+						return;
+					}
+					line.append(c);
+				}
+			}
+			in.clear();
+			reading = false;
+			
+			if (!closed && !quitting) {
+				flush();
+			}
+		}
+		
+		/**
+		 * Queues a line for the client, from any thread
+		 * Lines other than replies to the commands being read are flushed by a task on this connection's loop
+		 */
+		private void send(String message) {
+			send(message, 0);
+		}
+		
+		/**
+		 * Queues a line for the client that is not to be sent before a journal sequence is durable
+		 * @param message
+		 * @param sequence journal sequence of the record the line reports, or 0
+		 */
+		private void send(String message, long sequence) {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				awaiting = Math.max(awaiting, sequence);
+				byte[] bytes = (message + "\n").getBytes(StandardCharsets.US_ASCII);
+				if (out.remaining() < bytes.length) {
+					if (out.position() + bytes.length > MAX_PENDING_OUTPUT) {
+						loop.execute(this::close);
+						return;
+					}
+					ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes.length));
+					out.flip();
+					larger.put(out);
+					out = larger;
+				}
+				out.put(bytes);
+				
+				if ((reading && Thread.currentThread() == loop.thread) || flushScheduled) {
+					return;
+				}
+				flushScheduled = true;
+			}
+			scheduleFlush();
+		}
+		
+		private void scheduleFlush() {
+			loop.execute(() -> {
+				try {
+					flush();
+				} catch (IOException e) {
+					close();
+				}
+			});
+		}
+		
+		/**
+		 * Writes as much of the output as the socket takes, and waits to be writable for the rest
+		 * Nothing is written while the output waits on the journal, which keeps the lines in order
+		 */
+		private void flush() throws IOException {
+			synchronized (this) {
+				flushScheduled = false;
+				if (closed) {
+					return;
+				}
+				if (journal != null && awaiting > journal.getDurable()) {
+					if (!awaitingJournal) {
+						awaitingJournal = true;
+						journal.whenDurable(awaiting, () -> {
+							synchronized (this) {
+								awaitingJournal = false;
+								flushScheduled = true;
+							}
+							scheduleFlush();
+						}, e -> loop.execute(() -> journalFailed(e)));
+					}
+					return;
+				}
+				out.flip();
+				channel.write(out);
+				out.compact();
+				key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+			}
+		}
+		
+		/**
+		 * Sends what is left once the journal has it, then closes
+		 */
+		private void quit() {
+			quitting = true;
+			long target;
+			synchronized (this) {
+				target = awaiting;
+			}
+			
+			Runnable last = () -> {
+				try {
+					flush();
+				} catch (IOException e) {
+					//closing anyway
+				}
+				close();
+			};
+			if (journal == null) {
+				last.run();
+			} else {
+				journal.whenDurable(target, () -> loop.execute(last), e -> loop.execute(() -> journalFailed(e)));
+			}
+		}
+		
+		/**
+		 * The journal failed before the lines waiting on it were durable, so they are dropped unsent,
+		 * as they may report moves that are lost; the client is told why and disconnected
+		 */
+		private void journalFailed(IOException e) {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				out.clear();
+				awaiting = 0;
+				awaitingJournal = false;
+			}
+			send("error journal failed: " + e.getMessage());
+			try {
+				flush();
+			} catch (IOException ignored) {
+				//closing anyway
+			}
+			close();
+		}
+		
+		/**
+		 * Closes the socket and leaves every game; a game with no players left is dropped
+		 */
+		private void close() {
+			close(true);
+		}
+		
+		/**
+		 * Closes the socket
+		 * @param leave whether to leave the games played
+		 */
+		private void close(boolean leave) {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+			}
+			if (leave) {
+				for (int id : playing) {
+					leave(this, id);
+				}
+			}
+			playing.clear();
+			
+			if (key != null) {
+				key.cancel();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				//closed anyway
+			}
+		}
+	}
+	
+	/**
+	 * Handles one command line
+	 */
+	private void handle(Connection connection, String command) {
+		String[] tokens = command.split("\\s+");
+		
+		try {
+			switch (tokens[0]) {
+			case "new":
+				create(connection, command.length() > 3 ? command.substring(4).trim() : null);
+				break;
+			case "join":
+				join(connection, id(tokens));
+				break;
+			case "moves":
+				moves(connection, id(tokens));
+				break;
+			case "move":
+				if (tokens.length != 3) {
+					throw new IllegalArgumentException("move needs a game and a move");
+				}
+				move(connection, id(tokens), tokens[2]);
+				break;
+			case "fen":
+				fen(connection, id(tokens));
+				break;
+			case "close":
+				int id = id(tokens);
+				long sequence = leave(connection, id);
+				connection.playing.remove(id);
+				connection.send("ok " + id, sequence);
+				break;
+			case "quit":
+				connection.quit();
+				break;
+			default:
+				throw new IllegalArgumentException("unknown command " + tokens[0]);
+			}
+		} catch (IllegalArgumentException e) {
+			connection.send("error " + e.getMessage());
+		} catch (IllegalStateException e) {
+			//the journal has failed; the command was not carried out
+			connection.send("error " + e.getMessage());
+		}
+	}
+	
+	private void create(Connection connection, String fen) {
+		Board board = fen == null || fen.isEmpty() ? new Board() : new Board(fen);
+		Hosted hosted = new Hosted(board);
+		hosted.players.add(connection);
+		
+		int id = nextId.getAndIncrement();
+		long sequence;
+		synchronized (hosted) {
+			//hosted before it is journaled, so that a compaction that misses it finds it has already been written
+			games.put(id, hosted);
+			if (journal != null) {
+				try {
+					hosted.sequence = journal.snapshot(id, board);
+				} catch (IllegalStateException e) {
+					games.remove(id);
+					throw e;
+				}
+			}
+			sequence = hosted.sequence;
+		}
+		connection.playing.add(id);
+		connection.send("ok " + id, sequence);
+	}
+	
+	private void join(Connection connection, int id) {
+		Hosted hosted = game(id);
+		String fen;
+		long sequence;
+		synchronized (hosted) {
+			//dropped while this waited for the lock
+			if (games.get(id) != hosted) {
+				throw new IllegalArgumentException("no game " + id);
+			}
+			if (!hosted.players.contains(connection)) {
+				hosted.players.add(connection);
+			}
+			hosted.unjoined = false;
+			fen = hosted.board.toFen();
+			sequence = hosted.sequence;
+		}
+		connection.playing.add(id);
+		connection.send("ok " + id + " " + fen, sequence);
+	}
+	
+	private void moves(Connection connection, int id) {
+		Hosted hosted = game(id);
+		StringBuilder reply = new StringBuilder("moves ").append(id);
+		long sequence;
+		synchronized (hosted) {
+			sequence = hosted.sequence;
+			if (hosted.state == Game.NOT_OVER) {
+				MoveList moves = hosted.game.generateLegalMoves();
+				for (int i = 0; i < moves.size(); i++) {
+					reply.append(' ').append(MoveCode.name(moves.get(i)));
+				}
+			}
+		}
+		connection.send(reply.toString(), sequence);
+	}
+	
+	/**
+	 * Plays a move checked against the moves Game gives its piece, then tells every player
+	 */
+	private void move(Connection connection, int id, String name) {
+		Hosted hosted = game(id);
+		synchronized (hosted) {
+			if (hosted.state != Game.NOT_OVER) {
+				throw new IllegalArgumentException("game " + id + " is over");
+			}
+			Move move = legalMove(hosted, name);
+			if (move == null) {
+				throw new IllegalArgumentException("illegal move " + name);
+			}
+			
+			//journaled first, so a journal that has failed leaves the game as it is on disk
+			if (journal != null) {
+				hosted.sequence = journal.move(id, move.getCode());
+			}
+			hosted.game.move(move);
+			hosted.state = hosted.game.isGameOver();
+			
+			String result = PgnGame.result(hosted.state);
+			connection.send("ok " + id + " " + name + " " + result, hosted.sequence);
+			for (Connection player : hosted.players) {
+				if (player != connection) {
+					player.send("moved " + id + " " + name + " " + result, hosted.sequence);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds the move among the ones Game generates for the piece on its from square, if it is marked legal
+	 * @param name move in from-to coordinates, with an optional promotion piece
+	 * @return the move, or null if the piece cannot legally make it
+	 */
+	private static Move legalMove(Hosted hosted, String name) {
+		int from = name.length() >= 4 ? Bitboard.parse(name.substring(0, 2)) : -1;
+		int to = name.length() >= 4 ? Bitboard.parse(name.substring(2, 4)) : -1;
+		if (from < 0 || to < 0 || name.length() > 5) {
+			return null;
+		}
+		
+		Piece piece = hosted.board.get(from);
+		if (piece == null || piece.isWhite != hosted.board.isWhiteTurn()) {
+			return null;
+		}
+		
+		for (Move move : hosted.game.getMoves(piece)) {
+			if (!move.legal || Bitboard.square(move.x, move.y) != to || move.promotes != (name.length() == 5)) {
+				continue;
+			}
+			if (!move.promotes) {
+				return move;
+			}
+			
+			//Game only generates queen promotions, so another piece is packed from the queen's move
+			int type = "nbrq".indexOf(name.charAt(4));
+			return type < 0 ? null : new Move(hosted.board, MoveCode.promotion(from, to, Piece.KNIGHT + type, move.captures));
+		}
+		return null;
+	}
+	
+	private void fen(Connection connection, int id) {
+		Hosted hosted = game(id);
+		String fen;
+		long sequence;
+		synchronized (hosted) {
+			fen = hosted.board.toFen();
+			sequence = hosted.sequence;
+		}
+		connection.send("fen " + id + " " + fen, sequence);
+	}
+	
+	/**
+	 * Takes a connection out of a game, and drops the game if nobody is left playing it
+	 * @return journal sequence of the game's last record
+	 */
+	private long leave(Connection connection, int id) {
+		Hosted hosted = games.get(id);
+		if (hosted == null) {
+			return 0;
+		}
+		synchronized (hosted) {
+			hosted.players.remove(connection);
+			if (hosted.players.isEmpty() && games.remove(id, hosted) && journal != null) {
+				try {
+					hosted.sequence = journal.end(id);
+				} catch (IllegalStateException e) {
+					//the journal has failed, and the game comes back on restart, where it can be closed again
+				}
+			}
+			return hosted.sequence;
+		}
+	}
+	
+	private Hosted game(int id) {
+		Hosted hosted = games.get(id);
+		if (hosted == null) {
+			throw new IllegalArgumentException("no game " + id);
+		}
+		return hosted;
+	}
+	
+	private static int id(String[] tokens) {
+		if (tokens.length < 2) {
+			throw new IllegalArgumentException(tokens[0] + " needs a game");
+		}
+		try {
+			return Integer.parseInt(tokens[1]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("bad game " + tokens[1]);
+		}
+	}
+	
+	/**
+	 * Runs the server until it is killed
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = DEFAULT_PORT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path journal = null;
+		
+		for (int i = 0; i < args.length; i++) {
+			String value = i + 1 < args.length ? args[i + 1] : null;
+			
+			switch (args[i++]) {
+			case "-port":
+				port = Integer.parseInt(value);
+				break;
+			case "-threads":
+				threads = Integer.parseInt(value);
+				break;
+			case "-journal":
+				journal = Paths.get(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+			}
+		}
+		
+		GameServer server = new GameServer(threads, journal);
+		if (journal != null) {
+			System.out.println(server.getGameCount() + " games restored from " + journal);
+		}
+		System.out.println("Listening on port " + server.start(port) + " with " + threads + " event loops");
+		while (true) {
+			Thread.sleep(10000);
+			System.out.println(server.getGameCount() + " games");
+		}
+	}
+}
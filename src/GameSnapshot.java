@@ -0,0 +1,104 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of a game, for parking games that are not being played and bringing them back
+ * A snapshot is a four byte header (a magic byte, the format version and the number of moves),
+ * the position the game started from as Board.writePosition writes it, and then each move as its 16-bit MoveCode
+ * That is FIXED_BYTES plus two bytes a move, read and written in place in the caller's buffer
+ * Restoring replays the moves with Board.makeMove, which takes tens of nanoseconds each, so that the moves can be
+ * taken back and repetitions counted just as in the game that was saved
+ * @author Stephen S
+ *
+ */
+public final class GameSnapshot {
+	
+	public static final int MAGIC = 0xC5;
+	public static final int VERSION = 1;
+	
+	public static final int HEADER_BYTES = 4;
+	public static final int FIXED_BYTES = HEADER_BYTES + Board.POSITION_BYTES;
+	public static final int MAX_MOVES = 0xFFFF;
+	
+	private GameSnapshot() {
+	}
+	
+	/**
+	 * @param board
+	 * @return the number of bytes a snapshot of the board's game takes
+	 */
+	public static int size(Board board) {
+		return FIXED_BYTES + 2 * board.getUndoCount();
+	}
+	
+	/**
+	 * Writes the game played on a board since its position was set up
+	 * To reach the starting position the moves are taken back and then made again, which leaves the board as it was,
+	 * so the board must not be in use elsewhere meanwhile
+	 * @param board
+	 * @param out buffer with size(board) bytes to spare, which is written past the snapshot
+	 * @throws IllegalArgumentException if the game has more than MAX_MOVES moves
+	 */
+	public static void write(Board board, ByteBuffer out) {
+		int count = board.getUndoCount();
+		if (count > MAX_MOVES) {
+			throw new IllegalArgumentException("Too many moves for a snapshot: " + count);
+		}
+		
+		out.put((byte) MAGIC);
+		out.put((byte) VERSION);
+		out.putShort((short) count);
+		
+		//the moves go after the starting position, which is only reached once they are taken back
+		int positionStart = out.position();
+		out.position(positionStart + Board.POSITION_BYTES);
+		for (int i = 0; i < count; i++) {
+			out.putShort((short) board.getMove(i));
+		}
+		int end = out.position();
+		
+		for (int i = 0; i < count; i++) {
+			board.unmakeMove();
+		}
+		out.position(positionStart);
+		board.writePosition(out);
+		
+		for (int i = 0; i < count; i++) {
+			board.makeMove(out.getShort(positionStart + Board.POSITION_BYTES + 2 * i) & 0xFFFF);
+		}
+		out.position(end);
+	}
+	
+	/**
+	 * Replaces a board's position and moves with those of a snapshot
+	 * Each move is only checked to move a piece of the side to move onto a square not its own;
+	 * snapshots are meant to be read back from where this class wrote them
+	 * @param board
+	 * @param in buffer positioned at the snapshot, which is read past it
+	 * @throws IllegalArgumentException if the bytes are not a snapshot this version can read,
+	 * in which case the board is left partly set up
+	 */
+	public static void read(Board board, ByteBuffer in) {
+		int magic = in.get() & 0xFF;
+		int version = in.get() & 0xFF;
+		if (magic != MAGIC) {
+			throw new IllegalArgumentException("Not a game snapshot");
+		}
+		if (version != VERSION) {
+			throw new IllegalArgumentException("Unknown snapshot version " + version);
+		}
+		int count = in.getShort() & 0xFFFF;
+		
+		board.readPosition(in);
+		
+		for (int i = 0; i < count; i++) {
+			int move = in.getShort() & 0xFFFF;
+			Piece piece = board.get(MoveCode.from(move));
+			Piece target = board.get(MoveCode.to(move));
+			
+			if (piece == null || piece.isWhite != board.isWhiteTurn() || (target != null && target.isWhite == piece.isWhite)) {
+				throw new IllegalArgumentException("Bad move " + MoveCode.name(move) + " in snapshot");
+			}
+			board.makeMove(move);
+		}
+	}
+}
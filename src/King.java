@@ -1,35 +1,18 @@
 /**
  * King piece
  * Can move one tile in any direction
+ * Castling rights are kept by the Board, since they belong to the position rather than the piece
  * @author Stephen S
  *
  */
-public class King extends Piece implements Castleable {
+public class King extends Piece {
 	
-	private boolean canCastle;
-
 	/**
 	 * Calls superclass constructor
 	 * @param isWhite color of the piece
+	 * @param id slot in the board's location index
 	 */
-	public King(boolean isWhite) {
-		super(isWhite);
-		canCastle = true;
-	}
-
-	/**
-	 * Tells the king that he cannot castle
-	 */
-	@Override
-	public void cannotCastle() {
-		canCastle = false;
-	}
-
-	/**
-	 * Asks if the king can castle
-	 */
-	@Override
-	public boolean canCastle() {
-		return canCastle;
+	public King(boolean isWhite, int id) {
+		super(isWhite, KING, id);
 	}
 }
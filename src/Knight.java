@@ -5,12 +5,13 @@
  *
  */
 public class Knight extends Piece {
-
+	
 	/**
 	 * Calls superclass constructor
 	 * @param isWhite color of the piece
+	 * @param id slot in the board's location index
 	 */
-	public Knight(boolean isWhite) {
-		super(isWhite);
+	public Knight(boolean isWhite, int id) {
+		super(isWhite, KNIGHT, id);
 	}
 }
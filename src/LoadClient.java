@@ -0,0 +1,199 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a GameServer with many games played at random, and reports how fast and how steadily it answers moves
+ * Each connection runs on its own thread and keeps its games going in turn: it asks a game for its moves, plays one,
+ * and times the move's round trip; a finished game is closed and a new one started in its place
+ * Usage: java LoadClient [-host h] [-port p] [-connections c] [-games g] [-moves m] [-seed s]
+ * where g games are kept open on each of c connections, until each connection has played m moves
+ * @author Stephen S
+ *
+ */
+public class LoadClient implements Runnable {
+	
+	private final String host;
+	private final int port;
+	private final int games;
+	private final int moves;
+	private final Random random;
+	
+	//round trip of every move played, in nanoseconds
+	private final long[] latencies;
+	private final AtomicInteger finished;
+	private volatile IOException failure;
+	
+	/**
+	 * Constructor
+	 * @param games games to keep open on the connection
+	 * @param moves moves to play on the connection in all
+	 * @param finished counts games played to the end, shared by the connections
+	 */
+	public LoadClient(String host, int port, int games, int moves, long seed, AtomicInteger finished) {
+		this.host = host;
+		this.port = port;
+		this.games = games;
+		this.moves = moves;
+		this.random = new Random(seed);
+		this.latencies = new long[moves];
+		this.finished = finished;
+	}
+	
+	@Override
+	public void run() {
+		try (Socket socket = new Socket(host, port)) {
+			socket.setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+			
+			int[] ids = new int[games];
+			for (int i = 0; i < games; i++) {
+				ids[i] = create(in, out);
+			}
+			
+			for (int played = 0; played < moves;) {
+				for (int i = 0; i < games && played < moves; i++) {
+					String[] legal = request(in, out, "moves " + ids[i]);
+					if (legal.length <= 2) {
+						//no moves means the game was already over when it was created
+						ids[i] = replace(in, out, ids[i]);
+						continue;
+					}
+					
+					String move = legal[2 + random.nextInt(legal.length - 2)];
+					long start = System.nanoTime();
+					String[] reply = request(in, out, "move " + ids[i] + " " + move);
+					latencies[played++] = System.nanoTime() - start;
+					
+					if (!reply[0].equals("ok")) {
+						throw new IOException("Move refused: " + String.join(" ", reply));
+					}
+					if (!reply[3].equals(PgnGame.UNFINISHED)) {
+						finished.incrementAndGet();
+						ids[i] = replace(in, out, ids[i]);
+					}
+				}
+			}
+			
+			request(in, out, "quit");
+		} catch (IOException e) {
+			failure = e;
+		}
+	}
+	
+	private int create(BufferedReader in, Writer out) throws IOException {
+		String[] reply = request(in, out, "new");
+		if (!reply[0].equals("ok")) {
+			throw new IOException("Game refused: " + String.join(" ", reply));
+		}
+		return Integer.parseInt(reply[1]);
+	}
+	
+	private int replace(BufferedReader in, Writer out, int id) throws IOException {
+		request(in, out, "close " + id);
+		return create(in, out);
+	}
+	
+	/**
+	 * Sends a command and waits for its reply
+	 * @return the reply split into words, or an empty line if the server hung up after a quit
+	 */
+	private static String[] request(BufferedReader in, Writer out, String command) throws IOException {
+		out.write(command);
+		out.write('\n');
+		out.flush();
+		
+		String reply = in.readLine();
+		if (reply == null) {
+			if (command.equals("quit")) {
+				return new String[0];
+			}
+			throw new IOException("Server hung up");
+		}
+		return reply.split(" ");
+	}
+	
+	/**
+	 * Runs the connections together and prints the throughput and latency percentiles
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		String host = "localhost";
+		int port = GameServer.DEFAULT_PORT;
+		int connections = 50;
+		int games = 200;
+		int moves = 2000;
+		long seed = 1;
+		
+		for (int i = 0; i < args.length; i++) {
+			String value = i + 1 < args.length ? args[i + 1] : null;
+			
+			switch (args[i++]) {
+			case "-host":
+				host = value;
+				break;
+			case "-port":
+				port = Integer.parseInt(value);
+				break;
+			case "-connections":
+				connections = Integer.parseInt(value);
+				break;
+			case "-games":
+				games = Integer.parseInt(value);
+				break;
+			case "-moves":
+				moves = Integer.parseInt(value);
+				break;
+			case "-seed":
+				seed = Long.parseLong(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+			}
+		}
+		
+		AtomicInteger finished = new AtomicInteger();
+		LoadClient[] clients = new LoadClient[connections];
+		Thread[] threads = new Thread[connections];
+		for (int i = 0; i < connections; i++) {
+			clients[i] = new LoadClient(host, port, games, moves, seed + i, finished);
+			threads[i] = new Thread(clients[i], "load " + i);
+		}
+		
+		long start = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		
+		long[] all = new long[connections * moves];
+		for (int i = 0; i < connections; i++) {
+			if (clients[i].failure != null) {
+				throw clients[i].failure;
+			}
+			System.arraycopy(clients[i].latencies, 0, all, i * moves, moves);
+		}
+		Arrays.sort(all);
+		
+		System.out.printf("%d games on %d connections, %d moves in %.1f s, %.0f moves/s, %d games finished%n",
+				connections * games, connections, all.length, seconds, all.length / seconds, finished.get());
+		System.out.printf("move latency: p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n",
+				millis(all, 0.5), millis(all, 0.9), millis(all, 0.99), millis(all, 0.999), millis(all, 1));
+	}
+	
+	private static String millis(long[] sorted, double fraction) {
+		int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+		return String.format("%.2f ms", sorted[Math.max(index, 0)] / 1e6);
+	}
+}
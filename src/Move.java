@@ -7,8 +7,9 @@
  */
 
 public class Move {
-
+	
 	private Piece piece;
+	private final int code;
 	public final int x;
 	public final int y;
 	public final boolean legal;
@@ -19,45 +20,33 @@ public class Move {
 	private Piece otherPiece;
 	
 	/**
-	 * 
-	 * @param piece that is moving
-	 * @param x coordinate of the piece
-	 * @param y coordinate of the piece
-	 * @param legal if the move is legal
-	 * @param captures if the move captures a piece
-	 * @param promotes if the piece is a move and it promotes
-	 * @param castles if the piece is a king/rook and it will castle
-	 * @param otherPiece the piece that is captured (mostly for en passant)
+	 * Builds the GUI's view of a packed move
+	 * @param board the position the move is played from
+	 * @param code packed move from MoveGenerator, which may be marked MoveCode.ILLEGAL
 	 */
-	public Move(Piece piece, int x, int y, boolean legal, boolean captures, boolean promotes, boolean castles, Piece otherPiece) {
-		this.piece = piece;
-		this.x = x;
-		this.y = y;
-		this.legal = legal;
-		this.promotes = promotes;
-		this.castles = castles;
+	public Move(Board board, int code) {
+		this.code = MoveCode.strip(code);
 		
-		this.captures = captures;
-		this.otherPiece = otherPiece;
-	}
-	
-	/**
-	 * Constructor used for fake moves to check for in check
-	 * @param piece
-	 * @param x
-	 * @param y
-	 */
-	public Move(Piece piece, int x, int y) {
-		this.piece = piece;
-		this.x = x;
-		this.y = y;
+		int from = MoveCode.from(code);
+		int to = MoveCode.to(code);
 		
-		this.legal = false;
-		this.promotes = false;
-		this.castles = false;
+		this.piece = board.get(from);
+		this.x = Bitboard.x(to);
+		this.y = Bitboard.y(to);
+		this.legal = MoveCode.isLegal(code);
+		this.promotes = MoveCode.isPromotion(code);
+		this.castles = MoveCode.isCastle(code);
 		
-		this.captures = false;
-		this.otherPiece = null;
+		this.captures = MoveCode.isCapture(code);
+		
+		if (MoveCode.isEnPassant(code)) {
+			//the captured pawn stands beside the moving pawn, on the square it moved from
+			this.otherPiece = board.get(Bitboard.square(x, Bitboard.y(from)));
+		} else if (castles) {
+			this.otherPiece = board.get(to > from ? from + 3 : from - 4);
+		} else {
+			this.otherPiece = null;
+		}
 	}
 	
 	/**
@@ -75,9 +64,18 @@ public class Move {
 	public Piece otherPiece() {
 		return otherPiece;
 	}
-
+	
+	/**
+	 * 
+	 * @return the packed move, without the ILLEGAL mark
+	 */
+	public int getCode() {
+		return code;
+	}
+	
 	/**
 	 * Equals method for Moves
+	 * The packed code already holds the squares and flags, and otherPiece follows from them
 	 */
 	@Override
 	public boolean equals(Object o) {
@@ -90,9 +88,7 @@ public class Move {
 		
 		Move m = (Move) o;
 		
-		return m.piece.equals(this.piece) && m.x == this.x && m.y == this.y && m.legal == this.legal &&
-				m.captures == this.captures && m.promotes == this.promotes && m.castles == this.castles &&
-				m.otherPiece.equals(this.otherPiece);
+		return m.piece == this.piece && m.code == this.code && m.legal == this.legal;
 	}
 	
 	/**
@@ -102,16 +98,8 @@ public class Move {
 	public int hashCode() {
 		int res = 17;
 		res = (res * 37) + piece.hashCode();
-		res = (res * 37) + x;
-		res = (res * 37) + y;
+		res = (res * 37) + code;
 		res = (res * 37) + (legal ? 2 : 1);
-		res = (res * 37) + (captures ? 2 : 1);
-		res = (res * 37) + (promotes ? 2 : 1);
-		res = (res * 37) + (castles ? 2 : 1);
-		
-		if (otherPiece != null) {
-			res = (res * 37) + otherPiece.hashCode();
-		}
 		
 		return res;
 	}
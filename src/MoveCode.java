@@ -0,0 +1,146 @@
+/**
+ * Static helpers for moves packed into an int, so move lists and searches need no Move objects
+ * The low 16 bits hold the from square (bits 0-5), the to square (bits 6-11) and four flag bits (12-15),
+ * which is also the form the transposition table stores
+ * Move lists may set ILLEGAL above those bits for moves that would leave the king in check, which only the GUI wants to see
+ * @author Stephen S
+ *
+ */
+public final class MoveCode {
+	
+	//flag values, stored in bits 12-15
+	public static final int QUIET = 0;
+	public static final int DOUBLE_PUSH = 1;
+	public static final int KING_CASTLE = 2;
+	public static final int QUEEN_CASTLE = 3;
+	public static final int CAPTURE = 4;
+	public static final int EN_PASSANT = 5;
+	
+	//with the promotion bit set, the low two flag bits pick knight, bishop, rook or queen
+	public static final int PROMOTION = 8;
+	
+	//no move, as a1 to a1 is never played
+	public static final int NONE = 0;
+	
+	public static final int ILLEGAL = 1 << 16;
+	
+	private static final int FLAG_SHIFT = 12;
+	private static final int MOVE_MASK = 0xFFFF;
+	
+	private MoveCode() {
+	}
+	
+	/**
+	 * @param from square moved from
+	 * @param to square moved to
+	 * @param flags one of the flag values
+	 * @return the packed move
+	 */
+	public static int of(int from, int to, int flags) {
+		return from | (to << 6) | (flags << FLAG_SHIFT);
+	}
+	
+	/**
+	 * @param from square moved from
+	 * @param to square moved to
+	 * @param type piece type promoted to, from KNIGHT to QUEEN
+	 * @param captures whether the promotion also captures
+	 * @return the packed promotion
+	 */
+	public static int promotion(int from, int to, int type, boolean captures) {
+		return of(from, to, PROMOTION | (captures ? CAPTURE : 0) | (type - Piece.KNIGHT));
+	}
+	
+	/**
+	 * @param move
+	 * @return the square moved from
+	 */
+	public static int from(int move) {
+		return move & 63;
+	}
+	
+	/**
+	 * @param move
+	 * @return the square moved to
+	 */
+	public static int to(int move) {
+		return (move >>> 6) & 63;
+	}
+	
+	/**
+	 * @param move
+	 * @return the flag value of the move
+	 */
+	public static int flags(int move) {
+		return (move >>> FLAG_SHIFT) & 15;
+	}
+	
+	/**
+	 * @param move
+	 * @return the move without ILLEGAL or any other bits above the packed 16
+	 */
+	public static int strip(int move) {
+		return move & MOVE_MASK;
+	}
+	
+	/**
+	 * @param move
+	 * @return if the move captures, including en passant
+	 */
+	public static boolean isCapture(int move) {
+		return (flags(move) & CAPTURE) != 0;
+	}
+	
+	/**
+	 * @param move
+	 * @return if the move promotes a pawn
+	 */
+	public static boolean isPromotion(int move) {
+		return (flags(move) & PROMOTION) != 0;
+	}
+	
+	/**
+	 * @param move a promotion
+	 * @return the piece type promoted to
+	 */
+	public static int promotionType(int move) {
+		return Piece.KNIGHT + (flags(move) & 3);
+	}
+	
+	/**
+	 * @param move
+	 * @return if the move castles
+	 */
+	public static boolean isCastle(int move) {
+		int flags = flags(move);
+		return flags == KING_CASTLE || flags == QUEEN_CASTLE;
+	}
+	
+	/**
+	 * @param move
+	 * @return if the move captures en passant
+	 */
+	public static boolean isEnPassant(int move) {
+		return flags(move) == EN_PASSANT;
+	}
+	
+	/**
+	 * @param move
+	 * @return false if the move was marked ILLEGAL
+	 */
+	public static boolean isLegal(int move) {
+		return (move & ILLEGAL) == 0;
+	}
+	
+	/**
+	 * @param move
+	 * @return the move in from-to coordinates, such as e2e4, with a letter for the piece promoted to, such as e7e8q
+	 */
+	public static String name(int move) {
+		String name = Bitboard.name(from(move)) + Bitboard.name(to(move));
+		if (isPromotion(move)) {
+			name += "nbrq".charAt(promotionType(move) - Piece.KNIGHT);
+		}
+		return name;
+	}
+}
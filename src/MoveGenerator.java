@@ -0,0 +1,350 @@
+import java.util.ArrayList;
+
+/**
+ * Generates the moves of a piece and decides which are legal without copying the board
+ * The pieces giving check and the pieces pinned to their king are found once per position,
+ * after which a move is legal if it stays on its pin line and captures or blocks the checker
+ * King moves and castling are tested directly against the attacked squares instead, and a king in check never castles
+ * Moves are packed as MoveCode ints into a MoveList; getMoves wraps them in Move objects for the GUI
+ * En passant is tested directly against the king as well, since it takes two pieces off the king's rank at once
+ * @author Stephen S
+ *
+ */
+public class MoveGenerator {
+	
+	private Board board;
+	
+	//state of the side to move, computed by update
+	private int kingSquare;
+	private long checkers;
+	private long checkMask;
+	private long pinned;
+	
+	//for each pinned square, the line it may move along (including the pinning piece)
+	private long[] pinLines;
+	
+	//where the current generate call puts its moves, and which moves it wants
+	private MoveList list;
+	private boolean keepIllegal;
+	private boolean capturesOnly;
+	
+	/**
+	 * Constructor
+	 * @param board the board to generate moves on
+	 */
+	public MoveGenerator(Board board) {
+		this.board = board;
+		pinLines = new long[Board.SQUARES];
+	}
+	
+	/**
+	 * Finds the checkers and pinned pieces of the side to move
+	 * Must be called after every change to the board and before generating moves
+	 */
+	public void update() {
+		boolean white = board.isWhiteTurn();
+		
+		long kings = board.getPieces(white, Piece.KING);
+		if (kings == 0) {
+			throw new IllegalArgumentException("No king found... ???");
+		}
+		kingSquare = Bitboard.first(kings);
+		
+		long occupied = board.getOccupied();
+		long own = board.getOccupancy(white);
+		
+		checkers = board.attackersTo(kingSquare, !white, occupied);
+		
+		if (checkers == 0) {
+			checkMask = -1L;
+		} else if (Long.bitCount(checkers) == 1) {
+			//capture the checker or step in between it and the king
+			checkMask = checkers | Bitboard.between(kingSquare, Bitboard.first(checkers));
+		} else {
+			//only the king can answer a double check
+			checkMask = 0;
+		}
+		
+		//enemy sliders that would see the king if our own pieces were not there
+		long queens = board.getPieces(!white, Piece.QUEEN);
+		long enemy = board.getOccupancy(!white);
+		long snipers = (Bitboard.rookAttacks(kingSquare, enemy) & (board.getPieces(!white, Piece.ROOK) | queens))
+				| (Bitboard.bishopAttacks(kingSquare, enemy) & (board.getPieces(!white, Piece.BISHOP) | queens));
+				
+		pinned = 0;
+		for (; snipers != 0; snipers &= snipers - 1) {
+			int sniper = Bitboard.first(snipers);
+			long between = Bitboard.between(kingSquare, sniper) & occupied;
+			
+			//exactly one piece in the way, and it is ours
+			if (Long.bitCount(between) == 1 && (between & own) != 0) {
+				int square = Bitboard.first(between);
+				pinned |= between;
+				pinLines[square] = Bitboard.between(kingSquare, sniper) | Bitboard.bit(sniper);
+			}
+		}
+	}
+	
+	/**
+	 * @return if the side to move is in check
+	 */
+	public boolean inCheck() {
+		return checkers != 0;
+	}
+	
+	/**
+	 * Looks for a legal move of the side to move, stopping at the first piece that has one
+	 * The king is tried first, as it can move in most positions and is the only piece that can answer a double check
+	 * @param scratch list to work in, which is cleared first and left holding some of the moves
+	 * @return false for checkmate or stalemate
+	 */
+	public boolean hasLegalMove(MoveList scratch) {
+		list = scratch;
+		keepIllegal = false;
+		capturesOnly = false;
+		
+		scratch.clear();
+		addMoves(kingSquare);
+		if (!scratch.isEmpty()) {
+			return true;
+		}
+		if (checkMask == 0) {
+			return false;
+		}
+		
+		for (long own = board.getOccupancy(board.isWhiteTurn()) & ~Bitboard.bit(kingSquare); own != 0; own &= own - 1) {
+			addMoves(Bitboard.first(own));
+			if (!scratch.isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Adds every legal move of the side to move to the list
+	 * @param list list to add to, which is not cleared first
+	 */
+	public void generate(MoveList list) {
+		generate(list, false);
+	}
+	
+	/**
+	 * Adds the legal captures and promotions of the side to move to the list
+	 * @param list list to add to, which is not cleared first
+	 */
+	public void generateCaptures(MoveList list) {
+		generate(list, true);
+	}
+	
+	/**
+	 * Adds the moves of the piece on a square to the list, marking those that leave the king in check with MoveCode.ILLEGAL
+	 * @param list list to add to, which is not cleared first
+	 * @param from square of the piece
+	 */
+	public void generate(MoveList list, int from) {
+		this.list = list;
+		keepIllegal = true;
+		capturesOnly = false;
+		addMoves(from);
+	}
+	
+	/**
+	 * Finds moves for a given piece (valid and invalid)
+	 * @param piece
+	 * @return list of moves
+	 */
+	public ArrayList<Move> getMoves(Piece piece) {
+		int from = board.getSquare(piece);
+		
+		MoveList codes = new MoveList();
+		generate(codes, from);
+		
+		ArrayList<Move> moves = new ArrayList<>(codes.size());
+		for (int i = 0; i < codes.size(); i++) {
+			moves.add(new Move(board, codes.get(i)));
+		}
+		return moves;
+	}
+	
+	private void generate(MoveList list, boolean capturesOnly) {
+		this.list = list;
+		keepIllegal = false;
+		this.capturesOnly = capturesOnly;
+		
+		for (long own = board.getOccupancy(board.isWhiteTurn()); own != 0; own &= own - 1) {
+			addMoves(Bitboard.first(own));
+		}
+	}
+	
+	/**
+	 * Adds the moves of the piece on a square
+	 * @param from
+	 */
+	private void addMoves(int from) {
+		Piece piece = board.get(from);
+		
+		long occupied = board.getOccupied();
+		long own = board.getOccupancy(piece.isWhite);
+		long enemy = board.getOccupancy(!piece.isWhite);
+		
+		//quiet moves are left out of a captures-only list before they are built
+		long targets = capturesOnly ? enemy : ~own;
+		
+		switch (piece.type) {
+		case Piece.PAWN:
+			addPawnMoves(piece, from, occupied, enemy);
+			break;
+		case Piece.KNIGHT:
+			addMoves(from, Bitboard.knightAttacks(from) & targets, enemy);
+			break;
+		case Piece.BISHOP:
+			addMoves(from, Bitboard.bishopAttacks(from, occupied) & targets, enemy);
+			break;
+		case Piece.ROOK:
+			addMoves(from, Bitboard.rookAttacks(from, occupied) & targets, enemy);
+			break;
+		case Piece.QUEEN:
+			addMoves(from, (Bitboard.rookAttacks(from, occupied) | Bitboard.bishopAttacks(from, occupied)) & targets, enemy);
+			break;
+		case Piece.KING:
+			addKingMoves(piece, from, occupied, targets, enemy);
+			break;
+		}
+	}
+	
+	/**
+	 * Adds a move to every target square
+	 * @param from square of the moving piece
+	 * @param targets squares it can reach
+	 * @param enemy squares holding enemy pieces
+	 */
+	private void addMoves(int from, long targets, long enemy) {
+		for (; targets != 0; targets &= targets - 1) {
+			int to = Bitboard.first(targets);
+			int flags = (enemy & Bitboard.bit(to)) != 0 ? MoveCode.CAPTURE : MoveCode.QUIET;
+			add(MoveCode.of(from, to, flags), isLegal(from, to));
+		}
+	}
+	
+	/**
+	 * Adds the pushes, captures and en passant captures of a pawn
+	 * Pawns always promote to a queen
+	 */
+	private void addPawnMoves(Piece pawn, int from, long occupied, long enemy) {
+		int forward = pawn.isWhite ? Board.SIDES : -Board.SIDES;
+		int startY = pawn.isWhite ? 1 : Board.SIDES - 2;
+		
+		int nextY = Bitboard.y(from) + (pawn.isWhite ? 1 : -1);
+		boolean promotes = nextY == 0 || nextY == Board.SIDES - 1;
+		
+		//pawn moving in front of self, twice from the start
+		int to = from + forward;
+		if ((occupied & Bitboard.bit(to)) == 0 && (promotes || !capturesOnly)) {
+			add(promotes ? MoveCode.promotion(from, to, Piece.QUEEN, false) : MoveCode.of(from, to, MoveCode.QUIET), isLegal(from, to));
+			
+			to += forward;
+			if (Bitboard.y(from) == startY && (occupied & Bitboard.bit(to)) == 0 && !capturesOnly) {
+				add(MoveCode.of(from, to, MoveCode.DOUBLE_PUSH), isLegal(from, to));
+			}
+		}
+		
+		//pawn capturing diagonally
+		long attacks = Bitboard.pawnAttacks(pawn.isWhite, from);
+		for (long targets = attacks & enemy; targets != 0; targets &= targets - 1) {
+			to = Bitboard.first(targets);
+			add(promotes ? MoveCode.promotion(from, to, Piece.QUEEN, true) : MoveCode.of(from, to, MoveCode.CAPTURE), isLegal(from, to));
+		}
+		
+		//pawn capturing with en passant
+		int enPassant = board.getEnPassant();
+		if (enPassant != Board.NO_EN_PASSANT && (attacks & Bitboard.bit(enPassant)) != 0) {
+			add(MoveCode.of(from, enPassant, MoveCode.EN_PASSANT), isEnPassantLegal(pawn, from, enPassant, occupied));
+		}
+	}
+	
+	/**
+	 * Tests an en passant capture by taking both pawns off the board and looking for attacks on the king
+	 * This catches the captured pawn giving check as well as a rook pinning both pawns along the rank
+	 */
+	private boolean isEnPassantLegal(Piece pawn, int from, int to, long occupied) {
+		long captured = Bitboard.bit(Bitboard.square(Bitboard.x(to), Bitboard.y(from)));
+		long after = (occupied & ~Bitboard.bit(from) & ~captured) | Bitboard.bit(to);
+		
+		return (board.attackersTo(kingSquare, !pawn.isWhite, after) & ~captured) == 0;
+	}
+	
+	/**
+	 * Adds the steps and castles of a king
+	 */
+	private void addKingMoves(Piece king, int from, long occupied, long targets, long enemy) {
+		long withoutKing = occupied & ~Bitboard.bit(from);
+		
+		for (targets &= Bitboard.kingAttacks(from); targets != 0; targets &= targets - 1) {
+			int to = Bitboard.first(targets);
+			
+			//the king must not stand behind himself on a slider's line, and a captured piece no longer attacks
+			boolean legal = (board.attackersTo(to, !king.isWhite, withoutKing) & ~Bitboard.bit(to)) == 0;
+			add(MoveCode.of(from, to, (enemy & Bitboard.bit(to)) != 0 ? MoveCode.CAPTURE : MoveCode.QUIET), legal);
+		}
+		
+		//a king in check may not castle out of it
+		if (capturesOnly || checkers != 0) {
+			return;
+		}
+		
+		int queenside = king.isWhite ? Board.WHITE_QUEENSIDE : Board.BLACK_QUEENSIDE;
+		int kingside = king.isWhite ? Board.WHITE_KINGSIDE : Board.BLACK_KINGSIDE;
+		
+		if (board.canCastle(queenside)) {
+			addCastle(king, from, -1, occupied);
+		}
+		if (board.canCastle(kingside)) {
+			addCastle(king, from, 1, occupied);
+		}
+	}
+	
+	/**
+	 * Adds a castle in the given direction
+	 * The castle is legal if the squares between king and rook are empty and the two squares the king walks over are not attacked
+	 * @param deltaX direction the king walks in
+	 */
+	private void addCastle(Piece king, int from, int deltaX, long occupied) {
+		int rookFrom = deltaX > 0 ? from + 3 : from - 4;
+		boolean blocked = (Bitboard.between(from, rookFrom) & occupied) != 0;
+		for (int i = 1; i <= 2 && !blocked; i++) {
+			blocked = board.attackersTo(from + deltaX * i, !king.isWhite, occupied) != 0;
+		}
+		
+		int to = from + deltaX * 2;
+		add(MoveCode.of(from, to, deltaX > 0 ? MoveCode.KING_CASTLE : MoveCode.QUEEN_CASTLE), !blocked);
+	}
+	
+	/**
+	 * Adds a move to the current list, or marks it if it is illegal and illegal moves are wanted
+	 * @param move packed move
+	 * @param legal
+	 */
+	private void add(int move, boolean legal) {
+		if (legal) {
+			list.add(move);
+		} else if (keepIllegal) {
+			list.add(move | MoveCode.ILLEGAL);
+		}
+	}
+	
+	/**
+	 * Tests a move of a piece other than the king against the check and pin masks
+	 * @param from
+	 * @param to
+	 * @return if the move leaves the king safe
+	 */
+	private boolean isLegal(int from, int to) {
+		long target = Bitboard.bit(to);
+		
+		if ((checkMask & target) == 0) {
+			return false;
+		}
+		return (pinned & Bitboard.bit(from)) == 0 || (pinLines[from] & target) != 0;
+	}
+}
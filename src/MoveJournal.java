@@ -0,0 +1,578 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of many games at once, so games survive the process or the machine going down
+ * Each game is journaled as a snapshot of where it started, then each move made, then an end record when it is closed
+ * Records are added to a buffer in memory, and one thread writes the buffer to the current segment file
+ * and forces it to disk; records added while it waits on the disk go out together with the next force,
+ * so thousands of moves a second cost a few hundred forces rather than one each
+ * A record is a two byte length, a type byte, the game id, the payload and a CRC32 of everything before it,
+ * so a record torn by a crash is found and dropped on replay; a move record takes 13 bytes
+ * Compaction starts a new segment, writes the highest game id so far and a snapshot of every live game into it,
+ * and deletes the older segments, so ids of games that ended before it are not handed out again
+ * Records must be added for each game in the order its moves are made, for example while holding the game's lock
+ * @author Stephen S
+ *
+ */
+public class MoveJournal implements AutoCloseable {
+	
+	//record types
+	public static final int SNAPSHOT = 1;
+	public static final int MOVE = 2;
+	public static final int END = 3;
+	public static final int HIGHEST_GAME = 4;
+	
+	//length, type and id before the payload, and the CRC after it
+	private static final int RECORD_HEADER = 7;
+	private static final int RECORD_TRAILER = 4;
+	
+	//a segment is closed and a new one started once it grows past this
+	private static final long SEGMENT_BYTES = 16L << 20;
+	
+	//compaction is due once this much has been written since the last one
+	private static final long COMPACTION_BYTES = 64L << 20;
+	
+	private static final int BUFFER_BYTES = 1 << 20;
+	
+	private final Path directory;
+	private final Object lock = new Object();
+	
+	//records added and not yet taken by the writer, and the buffer it hands back
+	private ByteBuffer pending;
+	private ByteBuffer spare;
+	
+	//where in pending a compaction asked for a new segment, or -1
+	private int rotateAt;
+	private int compactedSegment;
+	
+	//bytes ever added, and bytes known to be on disk; a record is durable once durable passes its end
+	private long sequence;
+	private long durable;
+	private long sinceCompaction;
+	
+	//highest game id replayed or recorded
+	private int highestGame;
+	
+	private final List<Long> waitingSequences = new ArrayList<>();
+	private final List<Runnable> waitingActions = new ArrayList<>();
+	private final List<Consumer<IOException>> waitingFailures = new ArrayList<>();
+	
+	//only used by the writer, apart from segment, which compaction reads under the lock
+	private FileChannel channel;
+	private int segment;
+	private final CRC32 crc = new CRC32();
+	
+	private final Thread writer;
+	private volatile boolean closing;
+	private volatile IOException failure;
+	
+	/**
+	 * What replaying the segments has found so far
+	 */
+	private static class Replay {
+		
+		private int highestGame;
+		
+		//set once a record torn by a crash or damaged on disk is found; nothing after it can be applied
+		private boolean torn;
+	}
+	
+	/**
+	 * Replays the journal in a directory into a map of games, and starts a new segment after the ones replayed
+	 * Replay stops at the first torn record, as the moves after it would be applied to games missing earlier ones;
+	 * any later segments are renamed to end in .torn, so they are kept but never replayed
+	 * @param directory created if it does not exist
+	 * @param games filled with the board of every game that was not ended, by id
+	 * @return the journal, ready for records
+	 */
+	public static MoveJournal open(Path directory, Map<Integer, Board> games) throws IOException {
+		Files.createDirectories(directory);
+		
+		List<Path> segments = segments(directory);
+		int last = 0;
+		Replay replay = new Replay();
+		for (Path path : segments) {
+			if (replay.torn) {
+				Files.move(path, path.resolveSibling(path.getFileName() + ".torn"), StandardCopyOption.REPLACE_EXISTING);
+			} else {
+				replay(path, games, replay);
+			}
+			last = segmentNumber(path);
+		}
+		
+		//starting the new segment forces the directory, renames included
+		return new MoveJournal(directory, last + 1, replay.highestGame);
+	}
+	
+	private MoveJournal(Path directory, int firstSegment, int highestGame) throws IOException {
+		this.directory = directory;
+		this.highestGame = highestGame;
+		pending = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		spare = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		rotateAt = -1;
+		
+		segment = firstSegment;
+		channel = openSegment(segment);
+		
+		writer = new Thread(this::write, "journal");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/**
+	 * Records the whole state of a game, as when it starts or at compaction
+	 * @param game id
+	 * @param board the game's board, which is taken back and replayed to write it, as in GameSnapshot.write
+	 * @return sequence to wait on for the record to be durable
+	 */
+	public long snapshot(int game, Board board) {
+		synchronized (lock) {
+			int start = begin(SNAPSHOT, game, GameSnapshot.size(board));
+			GameSnapshot.write(board, pending);
+			return finish(start);
+		}
+	}
+	
+	/**
+	 * Records a move made in a game
+	 * @param game id
+	 * @param move packed move
+	 * @return sequence to wait on for the record to be durable
+	 */
+	public long move(int game, int move) {
+		synchronized (lock) {
+			int start = begin(MOVE, game, 2);
+			pending.putShort((short) move);
+			return finish(start);
+		}
+	}
+	
+	/**
+	 * Records that a game is over and need not be replayed
+	 * @param game id
+	 * @return sequence to wait on for the record to be durable
+	 */
+	public long end(int game) {
+		synchronized (lock) {
+			return finish(begin(END, game, 0));
+		}
+	}
+	
+	/**
+	 * @return the highest game id in the journal, including games that have ended, or 0 if there are none
+	 */
+	public int getHighestGame() {
+		synchronized (lock) {
+			return highestGame;
+		}
+	}
+	
+	/**
+	 * Starts a record in the pending buffer, which must be done holding the lock
+	 * @return where the record starts
+	 */
+	private int begin(int type, int game, int payload) {
+		if (failure != null) {
+			throw new IllegalStateException("Journal failed", failure);
+		}
+		int needed = RECORD_HEADER + payload + RECORD_TRAILER;
+		if (needed - RECORD_TRAILER > 0xFFFF) {
+			throw new IllegalArgumentException("Journal record too long: " + payload);
+		}
+		if (pending.remaining() < needed) {
+			//the writer is behind; grow rather than hold up the caller
+			ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(pending.capacity() * 2, pending.position() + needed));
+			pending.flip();
+			larger.put(pending);
+			pending = larger;
+		}
+		
+		int start = pending.position();
+		pending.putShort((short) (needed - RECORD_TRAILER));
+		pending.put((byte) type);
+		pending.putInt(game);
+		highestGame = Math.max(highestGame, game);
+		return start;
+	}
+	
+	/**
+	 * Finishes the record with its CRC and wakes the writer, which must be done holding the lock
+	 * @return sequence at the end of the record
+	 */
+	private long finish(int start) {
+		int length = pending.position() - start;
+		crc.reset();
+		for (int i = start; i < start + length; i++) {
+			crc.update(pending.get(i));
+		}
+		pending.putInt((int) crc.getValue());
+		
+		sequence += length + RECORD_TRAILER;
+		sinceCompaction += length + RECORD_TRAILER;
+		lock.notifyAll();
+		return sequence;
+	}
+	
+	/**
+	 * @return sequence up to which every record is on disk
+	 */
+	public long getDurable() {
+		synchronized (lock) {
+			return durable;
+		}
+	}
+	
+	/**
+	 * Runs an action once a sequence is durable, on the writer thread, or at once if it already is
+	 * If the journal fails first, the failure callback runs instead, so nothing waits forever
+	 * Both must be quick and must not add records
+	 * @param target sequence returned when a record was added
+	 * @param action
+	 * @param failed told why the journal failed
+	 */
+	public void whenDurable(long target, Runnable action, Consumer<IOException> failed) {
+		boolean written;
+		synchronized (lock) {
+			written = durable >= target;
+			if (!written && failure == null) {
+				waitingSequences.add(target);
+				waitingActions.add(action);
+				waitingFailures.add(failed);
+				return;
+			}
+		}
+		if (written) {
+			action.run();
+		} else {
+			failed.accept(failure);
+		}
+	}
+	
+	/**
+	 * @return why the journal stopped writing, or null while it works
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+	
+	/**
+	 * Waits until a sequence is durable
+	 * @param target sequence returned when a record was added
+	 * @throws IOException if the journal could not be written
+	 */
+	public void awaitDurable(long target) throws IOException {
+		synchronized (lock) {
+			while (durable < target && failure == null) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted waiting for the journal", e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	/**
+	 * @return if enough has been written since the last compaction to make another worth it
+	 */
+	public boolean needsCompaction() {
+		synchronized (lock) {
+			return sinceCompaction > COMPACTION_BYTES;
+		}
+	}
+	
+	/**
+	 * Starts a new segment, has every live game written to it, and deletes the segments before it
+	 * Records added during compaction go to the new segment; replay ignores moves of a game
+	 * until its snapshot, so a game may move while it waits for its turn to be written
+	 * @param snapshotAll calls snapshot for every game that has not ended, under the same lock as its moves
+	 */
+	public synchronized void compact(Runnable snapshotAll) throws IOException {
+		int first;
+		synchronized (lock) {
+			rotateAt = pending.position();
+			sinceCompaction = 0;
+			
+			//first in the new segment, so the ids of games whose records are deleted are still known
+			finish(begin(HIGHEST_GAME, highestGame, 0));
+			
+			while (rotateAt >= 0 && failure == null) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted waiting for the journal", e);
+				}
+			}
+			first = compactedSegment;
+		}
+		
+		snapshotAll.run();
+		
+		long target;
+		synchronized (lock) {
+			target = sequence;
+		}
+		awaitDurable(target);
+		
+		for (Path path : segments(directory)) {
+			if (segmentNumber(path) < first) {
+				Files.delete(path);
+			}
+		}
+		syncDirectory();
+	}
+	
+	/**
+	 * Writes out everything added so far and stops the writer
+	 */
+	@Override
+	public void close() throws IOException {
+		closing = true;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	/**
+	 * The writer thread: takes whatever has been added, writes it, forces it, and tells whoever waits on it
+	 */
+	private void write() {
+		List<Runnable> ready = new ArrayList<>();
+		
+		try {
+			while (true) {
+				ByteBuffer batch;
+				int rotate;
+				long batchEnd;
+				
+				synchronized (lock) {
+					while (pending.position() == 0 && rotateAt < 0 && !closing) {
+						lock.wait();
+					}
+					if (pending.position() == 0 && rotateAt < 0) {
+						return;
+					}
+					
+					batch = pending;
+					pending = spare;
+					spare = null;
+					rotate = rotateAt;
+					rotateAt = -1;
+					batchEnd = sequence;
+				}
+				
+				batch.flip();
+				if (rotate >= 0) {
+					//the records before the compaction stay in the old segment
+					int limit = batch.limit();
+					batch.limit(rotate);
+					writeFully(batch);
+					batch.limit(limit);
+					rotate();
+					
+					synchronized (lock) {
+						compactedSegment = segment;
+						lock.notifyAll();
+					}
+				}
+				writeFully(batch);
+				channel.force(false);
+				
+				if (channel.position() > SEGMENT_BYTES) {
+					rotate();
+				}
+				
+				synchronized (lock) {
+					batch.clear();
+					spare = batch;
+					durable = batchEnd;
+					
+					for (int i = waitingSequences.size() - 1; i >= 0; i--) {
+						if (waitingSequences.get(i) <= durable) {
+							waitingSequences.remove(i);
+							waitingFailures.remove(i);
+							ready.add(waitingActions.remove(i));
+						}
+					}
+					lock.notifyAll();
+				}
+				
+				for (Runnable action : ready) {
+					action.run();
+				}
+				ready.clear();
+			}
+		} catch (IOException e) {
+			failure = e;
+		} catch (InterruptedException e) {
+			failure = new IOException("Journal writer interrupted", e);
+		}
+		
+		//nothing more will become durable, so whoever waits is told now
+		List<Consumer<IOException>> failed;
+		synchronized (lock) {
+			failed = new ArrayList<>(waitingFailures);
+			waitingSequences.clear();
+			waitingActions.clear();
+			waitingFailures.clear();
+			lock.notifyAll();
+		}
+		for (Consumer<IOException> callback : failed) {
+			callback.accept(failure);
+		}
+	}
+	
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	/**
+	 * Forces and closes the current segment and starts the next
+	 */
+	private void rotate() throws IOException {
+		channel.force(false);
+		channel.close();
+		
+		int next;
+		synchronized (lock) {
+			next = ++segment;
+		}
+		channel = openSegment(next);
+	}
+	
+	private FileChannel openSegment(int number) throws IOException {
+		FileChannel opened = FileChannel.open(directory.resolve(String.format("journal-%08d.log", number)),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		syncDirectory();
+		return opened;
+	}
+	
+	/**
+	 * Forces the directory, so that segments created or deleted stay that way; not every platform allows it
+	 */
+	private void syncDirectory() {
+		try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+			dir.force(true);
+		} catch (IOException e) {
+			//the files themselves are still forced
+		}
+	}
+	
+	/**
+	 * Applies the records of one segment to the games, and cuts off a record torn by a crash and anything after it
+	 * @param replay told the highest game id seen and whether the segment was torn
+	 */
+	private static void replay(Path path, Map<Integer, Board> games, Replay replay) throws IOException {
+		CRC32 check = new CRC32();
+		
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer in = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+			int good = 0;
+			
+			while (in.remaining() >= RECORD_HEADER + RECORD_TRAILER) {
+				int start = in.position();
+				int length = in.getShort(start) & 0xFFFF;
+				if (length < RECORD_HEADER || in.remaining() < length + RECORD_TRAILER) {
+					break;
+				}
+				
+				check.reset();
+				for (int i = start; i < start + length; i++) {
+					check.update(in.get(i));
+				}
+				if ((int) check.getValue() != in.getInt(start + length)) {
+					break;
+				}
+				
+				int type = in.get(start + 2);
+				int game = in.getInt(start + 3);
+				in.position(start + RECORD_HEADER);
+				apply(type, game, in, games);
+				replay.highestGame = Math.max(replay.highestGame, game);
+				
+				in.position(start + length + RECORD_TRAILER);
+				good = in.position();
+			}
+			
+			if (good < file.size()) {
+				replay.torn = true;
+				file.truncate(good);
+				file.force(false);
+			}
+		}
+	}
+	
+	private static void apply(int type, int game, ByteBuffer in, Map<Integer, Board> games) {
+		switch (type) {
+		case SNAPSHOT:
+			Board board = games.get(game);
+			if (board == null) {
+				board = new Board();
+				games.put(game, board);
+			}
+			GameSnapshot.read(board, in);
+			break;
+		case MOVE:
+			//moves before a game's first snapshot belong to a segment that compaction removed
+			Board moved = games.get(game);
+			if (moved != null) {
+				moved.makeMove(in.getShort() & 0xFFFF);
+			}
+			break;
+		case END:
+			games.remove(game);
+			break;
+		case HIGHEST_GAME:
+			//only read for its id
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown journal record type " + type);
+		}
+	}
+	
+	private static List<Path> segments(Path directory) throws IOException {
+		List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+			for (Path path : files) {
+				segments.add(path);
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+	
+	private static int segmentNumber(Path path) {
+		String name = path.getFileName().toString();
+		return Integer.parseInt(name.substring("journal-".length(), name.length() - ".log".length()));
+	}
+}
@@ -0,0 +1,75 @@
+import java.util.Arrays;
+
+/**
+ * A growable list of packed moves, backed by an int array
+ * Searches keep one list per ply and clear it for every node, so generating moves does not allocate
+ * @author Stephen S
+ *
+ */
+public class MoveList {
+	
+	//more than the most legal moves any position has
+	private static final int DEFAULT_CAPACITY = 256;
+	
+	private int[] moves;
+	private int size;
+	
+	/**
+	 * Constructor
+	 */
+	public MoveList() {
+		moves = new int[DEFAULT_CAPACITY];
+		size = 0;
+	}
+	
+	/**
+	 * Adds a packed move to the end of the list
+	 * @param move
+	 */
+	public void add(int move) {
+		if (size == moves.length) {
+			moves = Arrays.copyOf(moves, size * 2);
+		}
+		moves[size++] = move;
+	}
+	
+	/**
+	 * @param i index
+	 * @return the packed move at the index
+	 */
+	public int get(int i) {
+		return moves[i];
+	}
+	
+	/**
+	 * Exchanges the moves at two indices
+	 * @param i
+	 * @param j
+	 */
+	public void swap(int i, int j) {
+		int move = moves[i];
+		moves[i] = moves[j];
+		moves[j] = move;
+	}
+	
+	/**
+	 * @return number of moves in the list
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return if the list has no moves
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Empties the list, keeping its array
+	 */
+	public void clear() {
+		size = 0;
+	}
+}
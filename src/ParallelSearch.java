@@ -0,0 +1,210 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Lazy SMP: runs one main search and any number of helper searches on the same position at once
+ * The threads share nothing but the transposition table, through which the helpers' work speeds up the main search
+ * Helpers start at staggered depths so they do not all search the same tree; the main search's result is returned
+ * With one thread it runs the main search alone on the calling thread, which is deterministic
+ * Usage: java ParallelSearch threads milliseconds [moves...]
+ * @author Stephen S
+ *
+ */
+public class ParallelSearch {
+	
+	private Search[] searches;
+	private ExecutorService pool;
+	
+	//nodes searched by each thread and the time taken by the last search
+	private long[] threadNodes;
+	private long millis;
+	
+	/**
+	 * Constructor
+	 * @param table transposition table shared by all threads
+	 * @param threads number of threads, including the calling thread
+	 */
+	public ParallelSearch(TranspositionTable table, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed: " + threads);
+		}
+		
+		searches = new Search[threads];
+		for (int i = 0; i < threads; i++) {
+			searches[i] = new Search(table, i);
+		}
+		threadNodes = new long[threads];
+		
+		if (threads > 1) {
+			pool = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "search helper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Searches with every thread until the main search reaches its limits
+	 * @param board position to search, which is not changed
+	 * @param limits limits of the main search; helpers run until it finishes
+	 * @return the main search's result, with the nodes of every thread added up
+	 */
+	public Search.Result search(final Board board, Search.Limits limits) {
+		long start = System.nanoTime();
+		
+		List<Future<Search.Result>> helpers = new ArrayList<>();
+		for (int i = 1; i < searches.length; i++) {
+			final Search helper = searches[i];
+			final Search.Limits unlimited = new Search.Limits(limits.depth, 0, 0);
+			helper.resetNodes();
+			helper.ready();
+			
+			//each search copies the board before making moves on it
+			helpers.add(pool.submit(() -> helper.search(board, unlimited)));
+		}
+		
+		Search.Result result = searches[0].search(board, limits);
+		
+		for (int i = 0; i < helpers.size(); i++) {
+			waitFor(searches[i + 1], helpers.get(i));
+		}
+		
+		millis = (System.nanoTime() - start) / 1000000;
+		
+		long nodes = 0;
+		for (int i = 0; i < searches.length; i++) {
+			threadNodes[i] = searches[i].getNodes();
+			nodes += threadNodes[i];
+		}
+		
+		return new Search.Result(result.move, result.score, result.depth, nodes, millis, result.pv);
+	}
+	
+	/**
+	 * Stops a helper and waits for it; a helper that has not started searching yet returns as soon as it starts
+	 */
+	private static void waitFor(Search helper, Future<Search.Result> future) {
+		helper.stop();
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search helper failed", e.getCause());
+		}
+	}
+	
+	/**
+	 * @param tablebase endgame tables for every thread, or null
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		for (Search search : searches) {
+			search.setTablebase(tablebase);
+		}
+	}
+	
+	/**
+	 * Reports the main search's iterations with the nodes of every thread added up
+	 * The helpers' counts are read while they run, so they are only approximate
+	 * @param listener told about each completed iteration, or null
+	 */
+	public void setListener(final Search.Listener listener) {
+		if (listener == null) {
+			searches[0].setListener(null);
+			return;
+		}
+		
+		searches[0].setListener(result -> {
+			long nodes = 0;
+			for (Search search : searches) {
+				nodes += search.getNodes();
+			}
+			listener.iteration(new Search.Result(result.move, result.score, result.depth, nodes, result.millis, result.pv));
+		});
+	}
+	
+	/**
+	 * Stops the current search; it returns the result of its last completed iteration
+	 * A stop made before the search starts is kept, so the search returns at once
+	 */
+	public void stop() {
+		searches[0].stop();
+	}
+	
+	/**
+	 * Clears the last stop, so the next search runs until its limits
+	 * Called before handing the search to another thread, so a stop made in between is not lost
+	 */
+	public void ready() {
+		searches[0].ready();
+	}
+	
+	/**
+	 * @return nodes searched by each thread in the last search, main search first
+	 */
+	public long[] getThreadNodes() {
+		return threadNodes.clone();
+	}
+	
+	/**
+	 * @return time taken by the last search
+	 */
+	public long getMillis() {
+		return millis;
+	}
+	
+	/**
+	 * Stops the helper threads
+	 */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Searches the starting position, after any moves given in from-to coordinates, and prints nodes per second for each thread
+	 * @param args thread count, milliseconds, then moves
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: java ParallelSearch threads milliseconds [moves...]");
+			return;
+		}
+		
+		int threads = Integer.parseInt(args[0]);
+		long millis = Long.parseLong(args[1]);
+		
+		Board board = new Board();
+		Game game = new Game(board);
+		for (int i = 2; i < args.length; i++) {
+			Move m = game.findMove(args[i]);
+			if (m == null) {
+				throw new IllegalArgumentException("Illegal move: " + args[i]);
+			}
+			game.move(m);
+		}
+		
+		ParallelSearch search = new ParallelSearch(new TranspositionTable(64), threads);
+		Search.Result result = search.search(board, new Search.Limits(0, 0, millis));
+		search.shutdown();
+		
+		long[] nodes = search.getThreadNodes();
+		long elapsed = Math.max(1, search.getMillis());
+		
+		for (int i = 0; i < nodes.length; i++) {
+			System.out.println("thread " + i + ": " + nodes[i] + " nodes, " + nodes[i] * 1000 / elapsed + " nodes/s");
+		}
+		System.out.println("depth " + result.depth + " score " + result.score + " nodes " + result.nodes
+				+ " nodes/s " + result.nodes * 1000 / elapsed + " pv " + String.join(" ", result.pv));
+	}
+}
@@ -9,31 +9,14 @@
  *
  */
 public class Pawn extends Piece {
-
-	private boolean moved;
-
+	
 	/**
 	 * Calls superclass constructor
 	 * @param isWhite color of the piece
+	 * @param id slot in the board's location index
 	 */
-	public Pawn(boolean isWhite) {
-		super(isWhite);
-		moved = false;
-	}
-	
-	/**
-	 * 
-	 * @return whether the pawn has moved
-	 */
-	public boolean hasMoved() {
-		return moved;
-	}
-	
-	/**
-	 * Tells this class that the pawn has moved
-	 */
-	public void didMove() {
-		moved = true;
+	public Pawn(boolean isWhite, int id) {
+		super(isWhite, PAWN, id);
 	}
 	
 }
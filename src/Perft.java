@@ -0,0 +1,293 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a given depth
+ * Perft checks the move generator against known node counts and measures its raw speed
+ * Subtrees are split across a fork-join pool and their counts are cached by position,
+ * so transposed subtrees are only counted once
+ * Usage: java Perft depth [-divide] [-threads n] [-nocache] [moves...]
+ * @author Stephen S
+ *
+ */
+public class Perft {
+	
+	//subtrees at least this deep are forked, shallower ones are counted on the current thread
+	private static final int SPLIT_DEPTH = 3;
+	
+	//counts below this depth are cheaper to recount than to look up
+	private static final int CACHE_DEPTH = 2;
+	
+	private ForkJoinPool pool;
+	private boolean useCache;
+	
+	//one map per remaining depth, from position key to leaf count
+	private List<ConcurrentHashMap<Long, Long>> cache;
+	
+	/**
+	 * Constructor
+	 * @param threads number of worker threads
+	 * @param useCache whether subtree counts are cached by position
+	 */
+	public Perft(int threads, boolean useCache) {
+		this.pool = new ForkJoinPool(threads);
+		this.useCache = useCache;
+		this.cache = new ArrayList<>();
+	}
+	
+	/**
+	 * Counts the leaf nodes below each legal move of the board
+	 * @param board position to count from, which is not changed
+	 * @param depth number of plies to count
+	 * @return the legal moves and the number of leaf nodes below each, in the same order
+	 */
+	public Divide divide(Board board, int depth) {
+		while (cache.size() <= depth) {
+			cache.add(new ConcurrentHashMap<Long, Long>());
+		}
+		
+		MoveGenerator generator = new MoveGenerator(board);
+		generator.update();
+		MoveList moves = new MoveList();
+		generator.generate(moves);
+		
+		List<PerftTask> tasks = new ArrayList<>();
+		for (int i = 0; i < moves.size(); i++) {
+			tasks.add(new PerftTask(play(board, moves.get(i)), depth - 1));
+		}
+		
+		for (PerftTask task : tasks) {
+			pool.execute(task);
+		}
+		
+		long[] counts = new long[moves.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = tasks.get(i).join();
+		}
+		return new Divide(moves, counts);
+	}
+	
+	/**
+	 * @param board position to count from, which is not changed
+	 * @param depth number of plies to count
+	 * @return number of leaf nodes
+	 */
+	public long count(Board board, int depth) {
+		if (depth == 0) {
+			return 1;
+		}
+		return divide(board, depth).total();
+	}
+	
+	/**
+	 * Stops the worker threads
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+	
+	/**
+	 * @return a copy of the board with the move played, for a subtree counted on another thread
+	 */
+	private static Board play(Board board, int move) {
+		Board next = new Board(board);
+		next.makeMove(move);
+		return next;
+	}
+	
+	/**
+	 * Counts a subtree on the current thread, making and taking back moves on the board in place
+	 * @param board a board no one else uses
+	 * @param depth
+	 * @param generator move generator of the board
+	 * @param lists one move list per remaining depth, reused from node to node
+	 * @return number of leaf nodes
+	 */
+	private long countSequential(Board board, int depth, MoveGenerator generator, MoveList[] lists) {
+		if (depth == 0) {
+			return 1;
+		}
+		
+		generator.update();
+		MoveList moves = lists[depth];
+		moves.clear();
+		generator.generate(moves);
+		
+		//the last ply only needs the number of moves
+		if (depth == 1) {
+			return moves.size();
+		}
+		
+		Long cached = lookup(board, depth);
+		if (cached != null) {
+			return cached;
+		}
+		
+		long nodes = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			board.makeMove(moves.get(i));
+			nodes += countSequential(board, depth - 1, generator, lists);
+			board.unmakeMove();
+		}
+		
+		store(board, depth, nodes);
+		return nodes;
+	}
+	
+	private Long lookup(Board board, int depth) {
+		return useCache && depth >= CACHE_DEPTH ? cache.get(depth).get(board.getKey()) : null;
+	}
+	
+	private void store(Board board, int depth, long nodes) {
+		if (useCache && depth >= CACHE_DEPTH) {
+			cache.get(depth).put(board.getKey(), nodes);
+		}
+	}
+	
+	/**
+	 * Counts a subtree, forking its children when it is deep enough to be worth splitting
+	 */
+	private class PerftTask extends RecursiveTask<Long> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private Board board;
+		private int depth;
+		
+		private PerftTask(Board board, int depth) {
+			this.board = board;
+			this.depth = depth;
+		}
+		
+		@Override
+		protected Long compute() {
+			if (depth < SPLIT_DEPTH) {
+				MoveList[] lists = new MoveList[depth + 1];
+				for (int i = 0; i < lists.length; i++) {
+					lists[i] = new MoveList();
+				}
+				return countSequential(board, depth, new MoveGenerator(board), lists);
+			}
+			
+			Long cached = lookup(board, depth);
+			if (cached != null) {
+				return cached;
+			}
+			
+			MoveGenerator generator = new MoveGenerator(board);
+			generator.update();
+			MoveList moves = new MoveList();
+			generator.generate(moves);
+			
+			List<PerftTask> children = new ArrayList<>();
+			for (int i = 0; i < moves.size(); i++) {
+				children.add(new PerftTask(play(board, moves.get(i)), depth - 1));
+			}
+			
+			long nodes = 0;
+			for (PerftTask child : invokeAll(children)) {
+				nodes += child.join();
+			}
+			
+			store(board, depth, nodes);
+			return nodes;
+		}
+	}
+	
+	/**
+	 * Leaf counts below each root move
+	 */
+	public static class Divide {
+		
+		public final MoveList moves;
+		public final long[] counts;
+		
+		private Divide(MoveList moves, long[] counts) {
+			this.moves = moves;
+			this.counts = counts;
+		}
+		
+		/**
+		 * @return the sum of all counts
+		 */
+		public long total() {
+			long total = 0;
+			for (long count : counts) {
+				total += count;
+			}
+			return total;
+		}
+		
+		/**
+		 * @param i index of a root move
+		 * @return the move in from-to coordinates, such as e2e4
+		 */
+		public String name(int i) {
+			return MoveCode.name(moves.get(i));
+		}
+	}
+	
+	/**
+	 * Runs perft from the starting position or a FEN, after any moves given in from-to coordinates
+	 * @param args depth, then options and moves
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("Usage: java Perft depth [-divide] [-threads n] [-nocache] [-fen \"fen\"] [moves...]");
+			return;
+		}
+		
+		int depth = Integer.parseInt(args[0]);
+		boolean divide = false;
+		boolean useCache = true;
+		int threads = Runtime.getRuntime().availableProcessors();
+		
+		Board board = new Board();
+		Game game = new Game(board);
+		
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-divide")) {
+				divide = true;
+			} else if (args[i].equals("-nocache")) {
+				useCache = false;
+			} else if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-fen")) {
+				game.setPosition(args[++i]);
+			} else {
+				Move m = game.findMove(args[i]);
+				if (m == null) {
+					throw new IllegalArgumentException("Illegal move: " + args[i]);
+				}
+				game.move(m);
+			}
+		}
+		
+		Perft perft = new Perft(threads, useCache);
+		long start = System.nanoTime();
+		
+		long nodes;
+		if (depth == 0) {
+			nodes = 1;
+		} else {
+			Divide result = perft.divide(board, depth);
+			if (divide) {
+				for (int i = 0; i < result.moves.size(); i++) {
+					System.out.println(result.name(i) + ": " + result.counts[i]);
+				}
+				System.out.println();
+			}
+			nodes = result.total();
+		}
+		
+		long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+		perft.shutdown();
+		
+		System.out.println("Nodes: " + nodes);
+		System.out.println("Time: " + millis + " ms");
+		System.out.println("Nodes/s: " + nodes * 1000 / millis);
+	}
+}
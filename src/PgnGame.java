@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One game of a PGN file: its tag pairs in file order, its main line in SAN and its result
+ * Comments, variations and annotation glyphs are not kept
+ * @author Stephen S
+ *
+ */
+public class PgnGame {
+	
+	//the Seven Tag Roster, which PGN export writes first and in this order
+	public static final String[] ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+	
+	public static final String UNFINISHED = "*";
+	
+	private Map<String, String> tags;
+	private List<String> moves;
+	private String result;
+	
+	/**
+	 * Constructor for an empty, unfinished game
+	 */
+	public PgnGame() {
+		tags = new LinkedHashMap<>();
+		moves = new ArrayList<>();
+		result = UNFINISHED;
+	}
+	
+	/**
+	 * @param state one of Game's states
+	 * @return the PGN result, UNFINISHED while the game is not over
+	 */
+	public static String result(int state) {
+		switch (state) {
+		case Game.WHITE_WIN:
+			return "1-0";
+		case Game.BLACK_WIN:
+			return "0-1";
+		case Game.DRAW:
+			return "1/2-1/2";
+		default:
+			return UNFINISHED;
+		}
+	}
+	
+	/**
+	 * @param name
+	 * @return the value of the tag, or null if the game does not have it
+	 */
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+	
+	/**
+	 * The FEN tag gives the starting position of a game set up from a position, unless SetUp says otherwise
+	 * @return the FEN of the starting position, or null if the game starts from the usual position
+	 */
+	public String getStartFen() {
+		String fen = tags.get("FEN");
+		return fen == null || "0".equals(tags.get("SetUp")) ? null : fen;
+	}
+	
+	/**
+	 * Adds or replaces a tag
+	 * @param name
+	 * @param value
+	 */
+	public void setTag(String name, String value) {
+		tags.put(name, value);
+	}
+	
+	/**
+	 * @return the tags in the order they were set
+	 */
+	public Map<String, String> getTags() {
+		return tags;
+	}
+	
+	/**
+	 * @return the moves of the main line in SAN
+	 */
+	public List<String> getMoves() {
+		return moves;
+	}
+	
+	/**
+	 * @return 1-0, 0-1, 1/2-1/2 or *
+	 */
+	public String getResult() {
+		return result;
+	}
+	
+	/**
+	 * @param result 1-0, 0-1, 1/2-1/2 or *
+	 */
+	public void setResult(String result) {
+		this.result = result;
+	}
+}
@@ -0,0 +1,266 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads PGN games one at a time from a channel through a fixed-size buffer
+ * Memory use is the buffer plus the game being read, however large the file is
+ * Comments, variations, annotation glyphs and escaped lines are skipped, keeping the tags, main line and result
+ * @author Stephen S
+ *
+ */
+public class PgnReader implements Closeable {
+	
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	private ReadableByteChannel channel;
+	private ByteBuffer buffer;
+	private byte[] bytes;
+	private int position;
+	private int limit;
+	private boolean endOfInput;
+	
+	//the previous byte read, to find '%' escapes at the start of a line
+	private int previous = '\n';
+	
+	//reused for every token and tag value
+	private byte[] token = new byte[256];
+	private int tokenLength;
+	
+	/**
+	 * Opens a file for reading
+	 * @param path
+	 */
+	public PgnReader(Path path) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.READ));
+	}
+	
+	/**
+	 * Reads from any channel, such as one over standard input
+	 * @param channel
+	 */
+	public PgnReader(ReadableByteChannel channel) {
+		this.channel = channel;
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		bytes = buffer.array();
+	}
+	
+	/**
+	 * Reads the next game
+	 * @return the game, or null at the end of the input
+	 */
+	public PgnGame next() throws IOException {
+		int c = skipWhitespace();
+		if (c < 0) {
+			return null;
+		}
+		
+		PgnGame game = new PgnGame();
+		
+		//tag pairs
+		while (c == '[') {
+			read();
+			readTag(game);
+			c = skipWhitespace();
+		}
+		
+		//movetext, up to the result or the tags of the next game
+		while (c >= 0 && c != '[') {
+			if (c == '{') {
+				skipPast('}');
+			} else if (c == ';') {
+				skipPast('\n');
+			} else if (c == '(') {
+				skipVariation();
+			} else if (c == '$') {
+				//numeric annotation glyph, such as $1
+				read();
+				readToken();
+			} else if (c == ')' || c == '.') {
+				read();
+			} else {
+				readToken();
+				String text = tokenString();
+				
+				if (isResult(text)) {
+					game.setResult(text);
+					break;
+				}
+				
+				//the optional en passant suffix, written apart from its move as in exd6 e.p.
+				if (text.equals(San.EN_PASSANT_SUFFIX)) {
+					c = skipWhitespace();
+					continue;
+				}
+				
+				//move numbers, which may be run into the move as in 1.e4, but not the zeros of 0-0
+				int start = 0;
+				while (start < text.length() && Character.isDigit(text.charAt(start))) {
+					start++;
+				}
+				if (start < text.length() && text.charAt(start) == '.') {
+					while (start < text.length() && text.charAt(start) == '.') {
+						start++;
+					}
+				} else {
+					start = 0;
+				}
+				if (start < text.length()) {
+					game.getMoves().add(start == 0 ? text : text.substring(start));
+				}
+			}
+			c = skipWhitespace();
+		}
+		return game;
+	}
+	
+	/**
+	 * Closes the channel
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	private static boolean isResult(String text) {
+		return text.equals("1-0") || text.equals("0-1") || text.equals("1/2-1/2") || text.equals(PgnGame.UNFINISHED);
+	}
+	
+	/**
+	 * Reads a tag pair after its opening bracket, such as Event "F/S Return Match"]
+	 */
+	private void readTag(PgnGame game) throws IOException {
+		skipWhitespace();
+		readToken();
+		String name = tokenString();
+		
+		int c = skipWhitespace();
+		tokenLength = 0;
+		if (c == '"') {
+			read();
+			while ((c = read()) >= 0 && c != '"') {
+				if (c == '\\') {
+					c = read();
+				}
+				append(c);
+			}
+		}
+		game.setTag(name, tokenString());
+		
+		skipPast(']');
+	}
+	
+	/**
+	 * Reads a symbol up to whitespace or a character with a meaning of its own
+	 */
+	private void readToken() throws IOException {
+		tokenLength = 0;
+		int c;
+		while ((c = peek()) >= 0 && c > ' ' && "{}()[];$\"".indexOf(c) < 0) {
+			append(read());
+		}
+		if (tokenLength == 0) {
+			//a stray character, taken on its own so reading always moves forward
+			append(read());
+		}
+	}
+	
+	private void append(int c) {
+		if (tokenLength == token.length) {
+			token = Arrays.copyOf(token, tokenLength * 2);
+		}
+		token[tokenLength++] = (byte) c;
+	}
+	
+	private String tokenString() {
+		return new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Skips a variation, including any variations and comments inside it
+	 */
+	private void skipVariation() throws IOException {
+		int depth = 0;
+		int c;
+		while ((c = read()) >= 0) {
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				if (--depth == 0) {
+					return;
+				}
+			} else if (c == '{') {
+				skipPast('}');
+			} else if (c == ';') {
+				skipPast('\n');
+			}
+		}
+	}
+	
+	private void skipPast(int end) throws IOException {
+		int c;
+		while ((c = read()) >= 0 && c != end) {
+		}
+	}
+	
+	/**
+	 * Skips whitespace and escaped lines, which start with '%'
+	 * @return the next byte after them, without consuming it, or -1 at the end
+	 */
+	private int skipWhitespace() throws IOException {
+		int c;
+		while ((c = peek()) >= 0 && (c <= ' ' || (c == '%' && previous == '\n'))) {
+			if (c == '%') {
+				skipPast('\n');
+			} else {
+				read();
+			}
+		}
+		return c;
+	}
+	
+	private int peek() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return bytes[position] & 0xFF;
+	}
+	
+	private int read() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		previous = bytes[position++] & 0xFF;
+		return previous;
+	}
+	
+	/**
+	 * Refills the buffer from the channel
+	 * @return false at the end of the input
+	 */
+	private boolean fill() throws IOException {
+		if (endOfInput) {
+			return false;
+		}
+		
+		buffer.clear();
+		int read;
+		do {
+			read = channel.read(buffer);
+		} while (read == 0);
+		
+		if (read < 0) {
+			endOfInput = true;
+			return false;
+		}
+		position = 0;
+		limit = buffer.position();
+		return true;
+	}
+}
@@ -0,0 +1,197 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays every game of a PGN file to check that its moves are legal
+ * One thread reads the file while a fixed pool replays batches of games, and at most a few batches
+ * are held at once so memory stays flat however large the file is
+ * With -out the legal games are written back in the same order with their moves normalized
+ * Usage: java PgnReplay file.pgn [-threads n] [-out file]
+ * @author Stephen S
+ *
+ */
+public class PgnReplay {
+	
+	private static final int BATCH_SIZE = 256;
+	
+	//how many errors are printed before only counting them
+	private static final int REPORTED_ERRORS = 10;
+	
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * Outcome of replaying one batch
+	 */
+	private static class Batch {
+		
+		private final List<PgnGame> valid = new ArrayList<>();
+		private final List<String> errors = new ArrayList<>();
+		private int invalid;
+		private long plies;
+	}
+	
+	/**
+	 * Replays one game from its starting position, which is the one in its FEN tag if it has one
+	 * @param game the game, whose moves are replaced by normalized SAN when normalize is true
+	 * @param normalize
+	 * @return null if every move is legal, otherwise a description of the first illegal one
+	 */
+	public static String replay(PgnGame game, boolean normalize) {
+		Board board = new Board();
+		String fen = game.getStartFen();
+		if (fen != null) {
+			try {
+				board.setPosition(fen);
+			} catch (IllegalArgumentException e) {
+				return e.getMessage();
+			}
+		}
+		
+		San san = new San(board);
+		List<String> moves = game.getMoves();
+		
+		for (int i = 0; i < moves.size(); i++) {
+			int move = san.parse(moves.get(i));
+			if (move == MoveCode.NONE) {
+				return "ply " + (i + 1) + ": " + moves.get(i);
+			}
+			if (normalize) {
+				moves.set(i, san.toSan(move));
+			}
+			board.makeMove(move);
+		}
+		return null;
+	}
+	
+	/**
+	 * Replays a whole file
+	 * @param reader
+	 * @param writer where the legal games are written, or null
+	 */
+	public void run(PgnReader reader, PgnWriter writer) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<Batch>> pending = new ArrayDeque<>();
+		long[] totals = new long[3];
+		long start = System.nanoTime();
+		long firstGame = 1;
+		
+		try {
+			PgnGame game = reader.next();
+			while (game != null) {
+				final List<PgnGame> games = new ArrayList<>(BATCH_SIZE);
+				while (game != null && games.size() < BATCH_SIZE) {
+					games.add(game);
+					game = reader.next();
+				}
+				
+				final long first = firstGame;
+				final boolean normalize = writer != null;
+				pending.add(pool.submit(() -> replay(games, first, normalize)));
+				firstGame += games.size();
+				
+				//wait for the oldest batch before reading further ahead
+				if (pending.size() >= threads * 2) {
+					finish(pending.poll(), writer, totals);
+				}
+			}
+			while (!pending.isEmpty()) {
+				finish(pending.poll(), writer, totals);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long games = totals[0] + totals[1];
+		System.err.printf("%d games, %d valid, %d invalid, %d plies in %.1f s on %d threads: %.0f games/hour%n",
+				games, totals[0], totals[1], totals[2], seconds, threads, games / seconds * 3600);
+	}
+	
+	private static Batch replay(List<PgnGame> games, long first, boolean normalize) {
+		Batch batch = new Batch();
+		for (int i = 0; i < games.size(); i++) {
+			PgnGame game = games.get(i);
+			String error = replay(game, normalize);
+			
+			if (error == null) {
+				batch.valid.add(game);
+				batch.plies += game.getMoves().size();
+			} else {
+				batch.invalid++;
+				if (batch.errors.size() < REPORTED_ERRORS) {
+					batch.errors.add("game " + (first + i) + ", " + error);
+				}
+			}
+		}
+		return batch;
+	}
+	
+	/**
+	 * Waits for a batch, then adds it to the totals and writes it
+	 */
+	private static void finish(Future<Batch> future, PgnWriter writer, long[] totals) throws Exception {
+		Batch batch = future.get();
+		
+		for (String error : batch.errors) {
+			if (totals[1]++ < REPORTED_ERRORS) {
+				System.err.println("Illegal move in " + error);
+			}
+		}
+		totals[1] += batch.invalid - batch.errors.size();
+		totals[0] += batch.valid.size();
+		totals[2] += batch.plies;
+		
+		if (writer != null) {
+			for (PgnGame game : batch.valid) {
+				writer.write(game);
+			}
+		}
+	}
+	
+	/**
+	 * Replays a file from the command line
+	 * @param args file, then options
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("Usage: java PgnReplay file.pgn [-threads n] [-out file]");
+			return;
+		}
+		
+		PgnReplay replay = new PgnReplay();
+		String file = null;
+		
+		for (int i = 1; i < args.length; i++) {
+			String value = i + 1 < args.length ? args[i + 1] : null;
+			
+			switch (args[i++]) {
+			case "-threads":
+				replay.threads = Integer.parseInt(value);
+				break;
+			case "-out":
+				file = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+			}
+		}
+		
+		PgnReader reader = new PgnReader(Paths.get(args[0]));
+		PgnWriter writer = file == null ? null : new PgnWriter(new BufferedWriter(new FileWriter(file), 1 << 16));
+		try {
+			replay.run(reader, writer);
+		} finally {
+			reader.close();
+			if (writer != null) {
+				writer.close();
+			}
+		}
+	}
+}
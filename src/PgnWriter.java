@@ -0,0 +1,134 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes games in PGN export format: the Seven Tag Roster first, then the other tags,
+ * then the numbered movetext wrapped below 80 columns and ending in the result
+ * @author Stephen S
+ *
+ */
+public class PgnWriter implements Closeable {
+	
+	private static final int LINE_LENGTH = 79;
+	
+	private Writer out;
+	private StringBuilder line;
+	
+	/**
+	 * Constructor
+	 * @param out where games go, which should be buffered
+	 */
+	public PgnWriter(Writer out) {
+		this.out = out;
+		line = new StringBuilder();
+	}
+	
+	/**
+	 * Writes one game followed by a blank line
+	 * Missing roster tags are written as unknown
+	 * @param game
+	 */
+	public void write(PgnGame game) throws IOException {
+		Map<String, String> tags = game.getTags();
+		
+		for (String name : PgnGame.ROSTER) {
+			String value = tags.get(name);
+			if (name.equals("Result")) {
+				value = game.getResult();
+			} else if (value == null) {
+				value = name.equals("Date") ? "????.??.??" : "?";
+			}
+			writeTag(name, value);
+		}
+		for (Map.Entry<String, String> tag : tags.entrySet()) {
+			if (!isRoster(tag.getKey())) {
+				writeTag(tag.getKey(), tag.getValue());
+			}
+		}
+		out.write('\n');
+		
+		//a game set up from a position is numbered from its move number, with N... when black moves first
+		int number = 1;
+		int first = 0;
+		String fen = game.getStartFen();
+		if (fen != null) {
+			String[] fields = fen.trim().split("\\s+");
+			if (fields.length > 1 && fields[1].equals("b")) {
+				first = 1;
+			}
+			if (fields.length > 5) {
+				try {
+					number = Math.max(1, Integer.parseInt(fields[5]));
+				} catch (NumberFormatException e) {
+					//keep numbering from 1
+				}
+			}
+		}
+		
+		List<String> moves = game.getMoves();
+		line.setLength(0);
+		for (int i = 0; i < moves.size(); i++) {
+			int ply = first + i;
+			if (ply % 2 == 0) {
+				addToken((number + ply / 2) + ".");
+			} else if (i == 0) {
+				addToken(number + "...");
+			}
+			addToken(moves.get(i));
+		}
+		addToken(game.getResult());
+		
+		out.write(line.toString());
+		out.write("\n\n");
+	}
+	
+	/**
+	 * Flushes the output
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	/**
+	 * Closes the output
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+	
+	private void writeTag(String name, String value) throws IOException {
+		out.write('[');
+		out.write(name);
+		out.write(" \"");
+		out.write(value.replace("\\", "\\\\").replace("\"", "\\\""));
+		out.write("\"]\n");
+	}
+	
+	/**
+	 * Adds a token to the movetext line, starting a new line when it would run past the limit
+	 */
+	private void addToken(String token) throws IOException {
+		if (line.length() > 0 && line.length() + 1 + token.length() > LINE_LENGTH) {
+			out.write(line.toString());
+			out.write('\n');
+			line.setLength(0);
+		}
+		if (line.length() > 0) {
+			line.append(' ');
+		}
+		line.append(token);
+	}
+	
+	private static boolean isRoster(String name) {
+		for (String roster : PgnGame.ROSTER) {
+			if (roster.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -6,17 +6,37 @@
  */
 public abstract class Piece {
 	
+	//piece types, used by Board to pick which bitboard a piece lives in
+	public static final int PAWN = 0;
+	public static final int KNIGHT = 1;
+	public static final int BISHOP = 2;
+	public static final int ROOK = 3;
+	public static final int QUEEN = 4;
+	public static final int KING = 5;
+	public static final int TYPES = 6;
+	
+	//ids run from 0 to MAX_ID - 1 within each color
+	public static final int MAX_ID = 16;
+	
 	public final boolean isWhite;
+	public final int type;
+	
+	//slot of the piece in its board's location index, unique among the pieces of its color on a board
+	public final int id;
 	
 	/**
 	 * Superclass constructor
 	 * @param isWhite color of the piece
+	 * @param type one of the piece type constants
+	 * @param id slot in the board's location index, which a promoted piece takes over from its pawn
 	 */
-	public Piece(boolean isWhite) {
+	public Piece(boolean isWhite, int type, int id) {
 		this.isWhite = isWhite;
+		this.type = type;
+		this.id = id;
 	}
 	
 	/**
 	 * Pieces are only equal if they are the exact same piece
-	 */	
+	 */
 }
@@ -0,0 +1,349 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Opening book in the Polyglot .bin format, memory-mapped and searched by key
+ * Entries are 16 big-endian bytes (key, move, weight, learn) sorted by key, so a lookup is a binary search
+ * The book is only read with absolute gets, so one instance can serve every game in the JVM at once
+ * Polyglot keys come from its own table of 781 random numbers, which is not shipped with the game;
+ * readRandom loads it from a text file and checks it against the test keys of the format's specification
+ * Usage: java PolyglotBook book.bin random64.txt [moves...]
+ * @author Stephen S
+ *
+ */
+public class PolyglotBook {
+	
+	public static final int RANDOM_SIZE = 781;
+	
+	private static final int ENTRY_SIZE = 16;
+	
+	//offsets into the random table
+	private static final int CASTLING = 768;
+	private static final int EN_PASSANT = 772;
+	private static final int TURN = 780;
+	
+	//keys from the specification, each after the moves before it from the starting position
+	private static final String[] TEST_MOVES = {"", "e2e4", "d7d5", "e4e5", "f7f5", "e1e2", "e8f7"};
+	private static final long[] TEST_KEYS = {0x463b96181691fc9cL, 0x823c9b50fd114196L, 0x0756b94461c50fb0L,
+		0x662fafb965db29d4L, 0x22a48b5a8e47ff78L, 0x652a607ca3f242c1L, 0x00fdd303c946bdd9L};
+		
+	private final ByteBuffer book;
+	private final int entries;
+	private final long[] random;
+	
+	/**
+	 * Maps a book file
+	 * @param path the .bin file
+	 * @param random Polyglot's random table, from readRandom
+	 */
+	public PolyglotBook(Path path, long[] random) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size % ENTRY_SIZE != 0 || size > Integer.MAX_VALUE) {
+				throw new IOException("Not a Polyglot book: " + path);
+			}
+			
+			//the mapping stays valid after the channel is closed
+			book = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			entries = (int) (size / ENTRY_SIZE);
+		}
+		this.random = random;
+	}
+	
+	/**
+	 * Reads the 781 numbers of Polyglot's random table, written in hex in the order of the specification
+	 * Separators and C or Java decoration such as 0x, U, L and commas are ignored
+	 * @param path
+	 * @return the table
+	 * @throws IllegalArgumentException if the file does not hold the right table
+	 */
+	public static long[] readRandom(Path path) throws IOException {
+		String text = new String(Files.readAllBytes(path), StandardCharsets.US_ASCII);
+		long[] random = new long[RANDOM_SIZE];
+		int count = 0;
+		
+		for (String token : text.split("[^0-9A-Za-z]+")) {
+			String hex = token.startsWith("0x") || token.startsWith("0X") ? token.substring(2) : token;
+			while (!hex.isEmpty() && "uUlL".indexOf(hex.charAt(hex.length() - 1)) >= 0) {
+				hex = hex.substring(0, hex.length() - 1);
+			}
+			if (hex.isEmpty()) {
+				continue;
+			}
+			if (count == RANDOM_SIZE) {
+				throw new IllegalArgumentException("More than " + RANDOM_SIZE + " numbers in " + path);
+			}
+			random[count++] = Long.parseUnsignedLong(hex, 16);
+		}
+		if (count != RANDOM_SIZE) {
+			throw new IllegalArgumentException("Expected " + RANDOM_SIZE + " numbers but found " + count + " in " + path);
+		}
+		
+		checkRandom(random);
+		return random;
+	}
+	
+	/**
+	 * Checks a random table against the keys given in the Polyglot specification
+	 * @param random
+	 * @throws IllegalArgumentException if a key does not match
+	 */
+	public static void checkRandom(long[] random) {
+		Board board = new Board();
+		Game game = new Game(board);
+		
+		for (int i = 0; i < TEST_MOVES.length; i++) {
+			if (!TEST_MOVES[i].isEmpty()) {
+				game.move(game.findMove(TEST_MOVES[i]));
+			}
+			if (key(board, random) != TEST_KEYS[i]) {
+				throw new IllegalArgumentException("Random table does not give the Polyglot key of " + board.toFen());
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of entries in the book
+	 */
+	public int size() {
+		return entries;
+	}
+	
+	/**
+	 * Finds the book move with the highest weight
+	 * @param board
+	 * @return the packed legal move, or MoveCode.NONE if the position is not in the book
+	 */
+	public int bestMove(Board board) {
+		long key = key(board, random);
+		int best = MoveCode.NONE;
+		int bestWeight = -1;
+		MoveList legal = null;
+		
+		for (int i = first(key); i < entries && keyAt(i) == key; i++) {
+			//the legal moves are only generated once the position turns out to be in the book
+			if (legal == null) {
+				legal = legalMoves(board);
+			}
+			int move = toMove(board, legal, moveAt(i));
+			if (move != MoveCode.NONE && weightAt(i) > bestWeight) {
+				best = move;
+				bestWeight = weightAt(i);
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Picks a book move at random, in proportion to the weights
+	 * @param board
+	 * @param rng
+	 * @return the packed legal move, or MoveCode.NONE if the position is not in the book with a legal move
+	 */
+	public int randomMove(Board board, Random rng) {
+		long key = key(board, random);
+		int start = first(key);
+		int end = start;
+		while (end < entries && keyAt(end) == key) {
+			end++;
+		}
+		if (end == start) {
+			return MoveCode.NONE;
+		}
+		
+		//each entry is matched against the legal moves once; entries that are not legal here,
+		//from a key collision or a bad book, are left out of the draw
+		MoveList legal = legalMoves(board);
+		int[] moves = new int[end - start];
+		long total = 0;
+		for (int i = start; i < end; i++) {
+			moves[i - start] = toMove(board, legal, moveAt(i));
+			if (moves[i - start] != MoveCode.NONE) {
+				total += weightAt(i);
+			}
+		}
+		if (total == 0) {
+			return MoveCode.NONE;
+		}
+		
+		long pick = (long) (rng.nextDouble() * total);
+		for (int i = start; i < end; i++) {
+			if (moves[i - start] == MoveCode.NONE) {
+				continue;
+			}
+			pick -= weightAt(i);
+			if (pick < 0) {
+				return moves[i - start];
+			}
+		}
+		return MoveCode.NONE;
+	}
+	
+	/**
+	 * @return the index of the first entry with the key, or of the first larger one if there is none
+	 */
+	private int first(long key) {
+		int low = 0;
+		int high = entries;
+		
+		//keys are compared unsigned, as the book is sorted
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (Long.compareUnsigned(keyAt(middle), key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	private long keyAt(int i) {
+		return book.getLong(i * ENTRY_SIZE);
+	}
+	
+	private int moveAt(int i) {
+		return book.getShort(i * ENTRY_SIZE + 8) & 0xFFFF;
+	}
+	
+	private int weightAt(int i) {
+		return book.getShort(i * ENTRY_SIZE + 10) & 0xFFFF;
+	}
+	
+	/**
+	 * Turns a Polyglot move into the matching legal move of the board
+	 * Polyglot writes castling as the king taking its own rook, and any promotion piece
+	 * @param board
+	 * @param polyglot to file in bits 0-2, to rank 3-5, from file 6-8, from rank 9-11, promotion 12-14
+	 * @return the packed legal move, or MoveCode.NONE if it is not legal here
+	 */
+	public static int toMove(Board board, int polyglot) {
+		return toMove(board, legalMoves(board), polyglot);
+	}
+	
+	/**
+	 * Turns a Polyglot move into the matching move of a list already generated for the board
+	 * @param board
+	 * @param legal the board's legal moves
+	 * @param polyglot
+	 * @return the packed legal move, or MoveCode.NONE if it is not in the list
+	 */
+	private static int toMove(Board board, MoveList legal, int polyglot) {
+		int to = Bitboard.square(polyglot & 7, (polyglot >>> 3) & 7);
+		int from = Bitboard.square((polyglot >>> 6) & 7, (polyglot >>> 9) & 7);
+		int promotion = (polyglot >>> 12) & 7;
+		if (promotion > 4) {
+			return MoveCode.NONE;
+		}
+		
+		Piece piece = board.get(from);
+		Piece target = board.get(to);
+		if (piece != null && piece.type == Piece.KING && target != null && target.type == Piece.ROOK && target.isWhite == piece.isWhite) {
+			to = to > from ? from + 2 : from - 2;
+		}
+		
+		for (int i = 0; i < legal.size(); i++) {
+			int move = legal.get(i);
+			if (MoveCode.from(move) != from || MoveCode.to(move) != to || MoveCode.isPromotion(move) != (promotion != 0)) {
+				continue;
+			}
+			
+			//the generator only promotes to a queen, so the piece is taken from the book
+			return promotion == 0 ? move : MoveCode.promotion(from, to, Piece.KNIGHT + promotion - 1, MoveCode.isCapture(move));
+		}
+		return MoveCode.NONE;
+	}
+	
+	/**
+	 * @return the legal moves of the side to move
+	 */
+	private static MoveList legalMoves(Board board) {
+		MoveGenerator generator = new MoveGenerator(board);
+		MoveList legal = new MoveList();
+		generator.update();
+		generator.generate(legal);
+		return legal;
+	}
+	
+	/**
+	 * Computes the Polyglot key of a position
+	 * The en passant file only counts when a pawn of the side to move stands ready to capture
+	 * @param board
+	 * @param random Polyglot's random table
+	 * @return the key
+	 */
+	public static long key(Board board, long[] random) {
+		long key = 0;
+		
+		for (long occupied = board.getOccupied(); occupied != 0; occupied &= occupied - 1) {
+			int square = Bitboard.first(occupied);
+			Piece piece = board.get(square);
+			
+			//black pawn, white pawn, black knight and so on up to the white king
+			int kind = 2 * piece.type + (piece.isWhite ? 1 : 0);
+			key ^= random[64 * kind + square];
+		}
+		
+		if (board.canCastle(Board.WHITE_KINGSIDE)) {
+			key ^= random[CASTLING];
+		}
+		if (board.canCastle(Board.WHITE_QUEENSIDE)) {
+			key ^= random[CASTLING + 1];
+		}
+		if (board.canCastle(Board.BLACK_KINGSIDE)) {
+			key ^= random[CASTLING + 2];
+		}
+		if (board.canCastle(Board.BLACK_QUEENSIDE)) {
+			key ^= random[CASTLING + 3];
+		}
+		
+		int enPassant = board.getEnPassant();
+		boolean white = board.isWhiteTurn();
+		if (enPassant != Board.NO_EN_PASSANT && (Bitboard.pawnAttacks(!white, enPassant) & board.getPieces(white, Piece.PAWN)) != 0) {
+			key ^= random[EN_PASSANT + Bitboard.x(enPassant)];
+		}
+		
+		if (white) {
+			key ^= random[TURN];
+		}
+		return key;
+	}
+	
+	/**
+	 * Prints the book moves of the starting position, after any moves given in from-to coordinates
+	 * @param args book, random table, then moves
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: java PolyglotBook book.bin random64.txt [moves...]");
+			return;
+		}
+		
+		PolyglotBook book = new PolyglotBook(Paths.get(args[0]), readRandom(Paths.get(args[1])));
+		Board board = new Board();
+		Game game = new Game(board);
+		
+		for (int i = 2; i < args.length; i++) {
+			Move move = game.findMove(args[i]);
+			if (move == null) {
+				throw new IllegalArgumentException("Illegal move: " + args[i]);
+			}
+			game.move(move);
+		}
+		
+		long key = key(board, book.random);
+		System.out.printf("%s%nkey %016x, %d entries in the book%n", board.toFen(), key, book.size());
+		MoveList legal = legalMoves(board);
+		for (int i = book.first(key); i < book.entries && book.keyAt(i) == key; i++) {
+			int move = toMove(board, legal, book.moveAt(i));
+			System.out.println((move == MoveCode.NONE ? "illegal" : MoveCode.name(move)) + " weight " + book.weightAt(i));
+		}
+	}
+}
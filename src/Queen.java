@@ -5,12 +5,13 @@
  *
  */
 public class Queen extends Piece {
-
+	
 	/**
 	 * Calls superclass constructor
 	 * @param isWhite color of the piece
+	 * @param id slot in the board's location index
 	 */
-	public Queen(boolean isWhite) {
-		super(isWhite);
+	public Queen(boolean isWhite, int id) {
+		super(isWhite, QUEEN, id);
 	}
 }
@@ -0,0 +1,119 @@
+import java.util.Arrays;
+
+/**
+ * Counts how often each position of a game has been reached, by Zobrist key
+ * Keys are kept by open addressing in a table that doubles when half full, so adding, removing and counting
+ * take constant time and nothing is allocated once the table has grown to the length of the game
+ * @author Stephen S
+ *
+ */
+public class RepetitionTable {
+	
+	private static final int INITIAL_CAPACITY = 16;
+	
+	private long[] keys;
+	private int[] counts;
+	private int size;
+	
+	/**
+	 * Constructor
+	 */
+	public RepetitionTable() {
+		keys = new long[INITIAL_CAPACITY];
+		counts = new int[INITIAL_CAPACITY];
+	}
+	
+	/**
+	 * Records one more visit to a position
+	 * @param key Zobrist key of the position
+	 * @return how many times the position has now been reached
+	 */
+	public int add(long key) {
+		int slot = find(key);
+		if (counts[slot] == 0) {
+			if (2 * (size + 1) > keys.length) {
+				grow();
+				slot = find(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		return ++counts[slot];
+	}
+	
+	/**
+	 * Takes back one visit to a position, when the move that reached it is taken back
+	 * @param key Zobrist key of the position
+	 */
+	public void remove(long key) {
+		int slot = find(key);
+		if (counts[slot] == 0) {
+			return;
+		}
+		if (--counts[slot] > 0) {
+			return;
+		}
+		
+		//close the gap, so that keys probed past this slot can still be found
+		size--;
+		int mask = keys.length - 1;
+		for (int next = (slot + 1) & mask; counts[next] != 0; next = (next + 1) & mask) {
+			int home = home(keys[next]);
+			
+			//move the key back if its home is not between the gap and where it sits
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				keys[slot] = keys[next];
+				counts[slot] = counts[next];
+				counts[next] = 0;
+				slot = next;
+			}
+		}
+	}
+	
+	/**
+	 * @param key Zobrist key of a position
+	 * @return how many times the position has been reached
+	 */
+	public int count(long key) {
+		return counts[find(key)];
+	}
+	
+	/**
+	 * Forgets every position
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		size = 0;
+	}
+	
+	/**
+	 * @return the slot holding the key, or the empty slot where it would go
+	 */
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int slot = home(key);
+		while (counts[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private int home(long key) {
+		return (int) (key ^ (key >>> 32)) & (keys.length - 1);
+	}
+	
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldCounts = counts;
+		keys = new long[oldKeys.length * 2];
+		counts = new int[oldKeys.length * 2];
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldCounts[i] != 0) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+}
@@ -1,35 +1,18 @@
 /**
  * Rook piece
  * Can move linearly
+ * Castling rights are kept by the Board, since they belong to the position rather than the piece
  * @author Stephen S
  *
  */
-public class Rook extends Piece implements Castleable {
+public class Rook extends Piece {
 	
-	private boolean canCastle;
-
 	/**
 	 * Calls superclass constructor
 	 * @param isWhite color of the piece
+	 * @param id slot in the board's location index
 	 */
-	public Rook(boolean isWhite) {
-		super(isWhite);
-		canCastle = true;
-	}
-
-	/**
-	 * Tells the rook that he cannot castle
-	 */
-	@Override
-	public void cannotCastle() {
-		canCastle = false;
-	}
-
-	/**
-	 * Asks if the rook can castle
-	 */
-	@Override
-	public boolean canCastle() {
-		return canCastle;
+	public Rook(boolean isWhite, int id) {
+		super(isWhite, ROOK, id);
 	}
 }
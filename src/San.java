@@ -0,0 +1,212 @@
+/**
+ * Converts between packed moves and standard algebraic notation (SAN), such as Nf3, exd5, O-O or e8=Q+
+ * Works on the current position of one board, using the board's legal moves to resolve and disambiguate
+ * The move generator only promotes to a queen, so an underpromotion is matched against the queen promotion
+ * on the same squares and then given the piece written
+ * @author Stephen S
+ *
+ */
+public class San {
+	
+	private static final String PIECE_LETTERS = "PNBRQK";
+	
+	//written after an en passant capture by some sources, as in exd6 e.p.
+	public static final String EN_PASSANT_SUFFIX = "e.p.";
+	
+	private Board board;
+	private MoveGenerator generator;
+	private MoveList legal;
+	private MoveList replies;
+	
+	/**
+	 * Constructor
+	 * @param board the board whose current position moves are read and written for
+	 */
+	public San(Board board) {
+		this.board = board;
+		generator = new MoveGenerator(board);
+		legal = new MoveList();
+		replies = new MoveList();
+	}
+	
+	/**
+	 * Finds the legal move a SAN string stands for
+	 * Check marks, annotations such as !?, an e.p. suffix and zeros written for castling are accepted
+	 * @param san
+	 * @return the packed move, or MoveCode.NONE if no legal move matches exactly one way
+	 */
+	public int parse(String san) {
+		int end = san.length();
+		while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+			end--;
+		}
+		if (san.startsWith(EN_PASSANT_SUFFIX, end - EN_PASSANT_SUFFIX.length())) {
+			end -= EN_PASSANT_SUFFIX.length();
+			while (end > 0 && san.charAt(end - 1) == ' ') {
+				end--;
+			}
+		}
+		String text = san.substring(0, end).replace('0', 'O');
+		
+		generateLegal();
+		
+		if (text.equals("O-O") || text.equals("O-O-O")) {
+			int flags = text.length() == 3 ? MoveCode.KING_CASTLE : MoveCode.QUEEN_CASTLE;
+			for (int i = 0; i < legal.size(); i++) {
+				if (MoveCode.flags(legal.get(i)) == flags) {
+					return legal.get(i);
+				}
+			}
+			return MoveCode.NONE;
+		}
+		
+		if (text.length() < 2) {
+			return MoveCode.NONE;
+		}
+		
+		//promotion, written e8=Q or e8Q
+		int promotion = -1;
+		int last = PIECE_LETTERS.indexOf(Character.toUpperCase(text.charAt(text.length() - 1)));
+		if (last > 0 && (text.indexOf('=') >= 0 || Character.isDigit(text.charAt(text.length() - 2)))) {
+			if (last < Piece.KNIGHT || last > Piece.QUEEN) {
+				return MoveCode.NONE;
+			}
+			promotion = last;
+			text = text.substring(0, text.charAt(text.length() - 2) == '=' ? text.length() - 2 : text.length() - 1);
+			
+			if (text.length() < 2) {
+				return MoveCode.NONE;
+			}
+		}
+		
+		int type = Piece.PAWN;
+		int start = 0;
+		if (PIECE_LETTERS.indexOf(text.charAt(0)) > 0) {
+			type = PIECE_LETTERS.indexOf(text.charAt(0));
+			start = 1;
+		}
+		
+		int to = Bitboard.parse(text.substring(text.length() - 2));
+		if (to < 0) {
+			return MoveCode.NONE;
+		}
+		
+		//whatever is left between the piece and the target square narrows down the starting square
+		int fromX = -1;
+		int fromY = -1;
+		for (int i = start; i < text.length() - 2; i++) {
+			char c = text.charAt(i);
+			if (c >= 'a' && c <= 'h') {
+				fromX = c - 'a';
+			} else if (c >= '1' && c <= '8') {
+				fromY = c - '1';
+			} else if (c != 'x' && c != '-') {
+				return MoveCode.NONE;
+			}
+		}
+		
+		int found = MoveCode.NONE;
+		for (int i = 0; i < legal.size(); i++) {
+			int move = legal.get(i);
+			int from = MoveCode.from(move);
+			
+			if (MoveCode.to(move) != to || board.get(from).type != type || MoveCode.isCastle(move)
+					|| (fromX >= 0 && Bitboard.x(from) != fromX) || (fromY >= 0 && Bitboard.y(from) != fromY)
+					|| MoveCode.isPromotion(move) != (promotion >= 0)) {
+				continue;
+			}
+			
+			if (found != MoveCode.NONE) {
+				//ambiguous
+				return MoveCode.NONE;
+			}
+			found = promotion >= 0 ? MoveCode.promotion(from, to, promotion, MoveCode.isCapture(move)) : move;
+		}
+		return found;
+	}
+	
+	/**
+	 * Writes a legal move in SAN, with + or # when it gives check or mate
+	 * @param move packed legal move of the current position
+	 * @return the move in SAN
+	 */
+	public String toSan(int move) {
+		generateLegal();
+		
+		StringBuilder san = new StringBuilder();
+		int from = MoveCode.from(move);
+		int to = MoveCode.to(move);
+		int type = board.get(from).type;
+		
+		if (MoveCode.isCastle(move)) {
+			san.append(MoveCode.flags(move) == MoveCode.KING_CASTLE ? "O-O" : "O-O-O");
+		} else {
+			if (type == Piece.PAWN) {
+				if (MoveCode.isCapture(move)) {
+					san.append((char) ('a' + Bitboard.x(from)));
+				}
+			} else {
+				san.append(PIECE_LETTERS.charAt(type));
+				appendDisambiguation(san, move, type);
+			}
+			
+			if (MoveCode.isCapture(move)) {
+				san.append('x');
+			}
+			san.append(Bitboard.name(to));
+			
+			if (MoveCode.isPromotion(move)) {
+				san.append('=').append(PIECE_LETTERS.charAt(MoveCode.promotionType(move)));
+			}
+		}
+		
+		//play the move to see whether it checks or mates
+		board.makeMove(move);
+		generator.update();
+		if (generator.inCheck()) {
+			replies.clear();
+			generator.generate(replies);
+			san.append(replies.isEmpty() ? '#' : '+');
+		}
+		board.unmakeMove();
+		
+		return san.toString();
+	}
+	
+	/**
+	 * Adds the file, rank or both of the starting square when another piece of the same type can reach the same square
+	 */
+	private void appendDisambiguation(StringBuilder san, int move, int type) {
+		int from = MoveCode.from(move);
+		boolean ambiguous = false;
+		boolean sameFile = false;
+		boolean sameRank = false;
+		
+		for (int i = 0; i < legal.size(); i++) {
+			int other = MoveCode.from(legal.get(i));
+			
+			if (MoveCode.to(legal.get(i)) == MoveCode.to(move) && other != from && board.get(other).type == type) {
+				ambiguous = true;
+				sameFile |= Bitboard.x(other) == Bitboard.x(from);
+				sameRank |= Bitboard.y(other) == Bitboard.y(from);
+			}
+		}
+		
+		if (!ambiguous) {
+			return;
+		}
+		if (!sameFile) {
+			san.append((char) ('a' + Bitboard.x(from)));
+		} else if (!sameRank) {
+			san.append((char) ('1' + Bitboard.y(from)));
+		} else {
+			san.append(Bitboard.name(from));
+		}
+	}
+	
+	private void generateLegal() {
+		generator.update();
+		legal.clear();
+		generator.generate(legal);
+	}
+}
@@ -0,0 +1,661 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses moves for the computer player
+ * Iterative deepening principal variation search with aspiration windows, a transposition table
+ * and a quiescence search over captures
+ * Moves are tried hash move first, then captures by most valuable victim and least valuable attacker,
+ * then killer moves, then the remaining quiet moves by history
+ * @author Stephen S
+ *
+ */
+public class Search {
+	
+	public static final int INFINITY = 30000;
+	public static final int MATE = 29000;
+	public static final int MAX_PLY = 64;
+	
+	//material values by piece type, for ordering captures
+	private static final int[] VALUES = {100, 320, 330, 500, 900, 0};
+	
+	private static final int MAX_MOVES = 256;
+	private static final int ASPIRATION_WINDOW = 50;
+	private static final int CHECK_INTERVAL = 1024;
+	
+	//move ordering bands
+	private static final int HASH_MOVE = 1 << 30;
+	private static final int CAPTURE = 1 << 24;
+	private static final int FIRST_KILLER = 1 << 23;
+	private static final int SECOND_KILLER = FIRST_KILLER - 1;
+	private static final int HISTORY_LIMIT = 1 << 20;
+	
+	private TranspositionTable table;
+	private volatile boolean stopped;
+	private Listener listener;
+	private Tablebase tablebase;
+	
+	//0 for the main search, otherwise the number of a helper thread in a parallel search
+	private int helper;
+	
+	private Limits limits;
+	private long start;
+	private long deadline;
+	private long nodes;
+	
+	//moves of each ply of the current line, reused from node to node
+	private MoveList[] moves;
+	private int[][] order;
+	private int rootCount;
+	
+	private int[][] killers;
+	private int[][] history;
+	private int[][] pv;
+	private int[] pvLength;
+	
+	//keys of the positions on the current line, to spot repetitions
+	private long[] path;
+	
+	//keys of the game positions before the root that a repetition could still reach, oldest first
+	private long[] gameKeys = new long[0];
+	private int gameCount;
+	
+	//the board being searched and its move generator, which only has to be up to date while a node generates moves
+	private Board root;
+	private MoveGenerator generator;
+	
+	/**
+	 * How long a search may run
+	 * A limit of 0 means no limit of that kind
+	 */
+	public static class Limits {
+		
+		public final int depth;
+		public final long nodes;
+		public final long millis;
+		
+		/**
+		 * @param depth deepest iteration to search
+		 * @param nodes nodes to search before stopping
+		 * @param millis time to search before stopping
+		 */
+		public Limits(int depth, long nodes, long millis) {
+			this.depth = depth;
+			this.nodes = nodes;
+			this.millis = millis;
+		}
+	}
+	
+	/**
+	 * Told about every completed iteration of the main search, on the searching thread
+	 */
+	public interface Listener {
+		void iteration(Result result);
+	}
+	
+	/**
+	 * Outcome of the last completed iteration
+	 */
+	public static class Result {
+		
+		public final Move move;
+		public final int score;
+		public final int depth;
+		public final long nodes;
+		public final long millis;
+		public final List<String> pv;
+		
+		/**
+		 * @param move best move, or null if there are no legal moves
+		 * @param score score of the best move from the side to move's point of view
+		 * @param depth depth of the last completed iteration
+		 * @param nodes nodes searched
+		 * @param millis time searched
+		 * @param pv principal variation in from-to coordinates
+		 */
+		public Result(Move move, int score, int depth, long nodes, long millis, List<String> pv) {
+			this.move = move;
+			this.score = score;
+			this.depth = depth;
+			this.nodes = nodes;
+			this.millis = millis;
+			this.pv = pv;
+		}
+	}
+	
+	/**
+	 * Constructor
+	 * @param table transposition table to use, which may be shared with other searches
+	 */
+	public Search(TranspositionTable table) {
+		this(table, 0);
+	}
+	
+	/**
+	 * Constructor for one of several searches running at once on the same table
+	 * Helpers start their iterations at different depths, so the threads fill the table with different subtrees
+	 * @param table transposition table shared by all the threads
+	 * @param helper 0 for the main search, 1 and up for helpers
+	 */
+	public Search(TranspositionTable table, int helper) {
+		this.table = table;
+		this.helper = helper;
+		
+		moves = new MoveList[MAX_PLY];
+		for (int i = 0; i < MAX_PLY; i++) {
+			moves[i] = new MoveList();
+		}
+		order = new int[MAX_PLY][MAX_MOVES];
+		killers = new int[MAX_PLY][2];
+		history = new int[Board.SQUARES][Board.SQUARES];
+		pv = new int[MAX_PLY][MAX_PLY];
+		pvLength = new int[MAX_PLY];
+		path = new long[MAX_PLY];
+	}
+	
+	/**
+	 * @param listener told about each completed iteration, or null
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * @param tablebase endgame tables that decide positions with few pieces, or null
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+	
+	/**
+	 * Stops a running search as soon as possible; it returns the result of its last completed iteration
+	 * A stop made while no search runs is kept, so the next search returns at once unless ready() is called first
+	 */
+	public void stop() {
+		stopped = true;
+	}
+	
+	/**
+	 * Clears a stop made since the last search ended, so the next search runs until its limits
+	 * Called by whoever schedules the search before handing it to the searching thread,
+	 * so a stop made in between is not lost
+	 */
+	public void ready() {
+		stopped = false;
+	}
+	
+	/**
+	 * Searches for the best move of the side to move
+	 * Returns at once if stopped since the last search ended; the stop that ends a search is cleared
+	 * when it returns, whether it came from stop() or from the limits, so the next search runs normally
+	 * @param board position to search, which is not changed
+	 * @param limits when to stop
+	 * @return the best move found, which is null if there are no legal moves
+	 */
+	public Result search(Board board, Limits limits) {
+		try {
+			return deepen(board, limits);
+		} finally {
+			stopped = false;
+		}
+	}
+	
+	/**
+	 * Iterative deepening up to the limits
+	 */
+	private Result deepen(Board board, Limits limits) {
+		this.limits = limits;
+		nodes = 0;
+		start = System.nanoTime();
+		deadline = limits.millis > 0 ? start + limits.millis * 1000000 : Long.MAX_VALUE;
+		
+		//helpers run alongside a main search that has already aged the table
+		if (helper == 0) {
+			table.newSearch();
+		}
+		for (int[] k : killers) {
+			k[0] = 0;
+			k[1] = 0;
+		}
+		for (int[] h : history) {
+			for (int i = 0; i < h.length; i++) {
+				h[i] /= 2;
+			}
+		}
+		
+		//the copy below starts with no moves to take back, so remember the game positions before the root
+		seedGameKeys(board);
+		
+		//the search makes and takes back moves in place, on its own copy of the board
+		board = new Board(board);
+		root = board;
+		generator = new MoveGenerator(board);
+		rootCount = 0;
+		pv[0][0] = MoveCode.NONE;
+		
+		int maxDepth = limits.depth > 0 ? Math.min(limits.depth, MAX_PLY - 1) : MAX_PLY - 1;
+		
+		Result result = null;
+		int score = 0;
+		
+		for (int depth = 1 + (helper & 1); depth <= maxDepth; depth++) {
+			int delta = ASPIRATION_WINDOW;
+			int alpha = -INFINITY;
+			int beta = INFINITY;
+			
+			//expect the score to stay near the last one, and widen the window if it does not
+			if (depth >= 4) {
+				alpha = Math.max(-INFINITY, score - delta);
+				beta = Math.min(INFINITY, score + delta);
+			}
+			
+			int iterationScore;
+			while (true) {
+				iterationScore = search(board, depth, alpha, beta, 0);
+				
+				if (stopped) {
+					break;
+				}
+				if (iterationScore <= alpha) {
+					alpha = Math.max(-INFINITY, alpha - delta);
+				} else if (iterationScore >= beta) {
+					beta = Math.min(INFINITY, beta + delta);
+				} else {
+					break;
+				}
+				delta *= 2;
+			}
+			
+			//a stopped iteration's scores and line are unfinished, so only completed iterations count
+			if (stopped) {
+				break;
+			}
+			
+			//no legal moves at the root
+			if (rootCount == 0) {
+				break;
+			}
+			
+			score = iterationScore;
+			result = new Result(rootMove(pv[0][0]), score, depth, nodes, elapsedMillis(), pvNames());
+			if (listener != null && helper == 0) {
+				listener.iteration(result);
+			}
+			
+			//the next iteration would not finish in time, or the game is decided
+			if (stopped || (limits.millis > 0 && elapsedMillis() * 2 > limits.millis) || Math.abs(score) > MATE - MAX_PLY) {
+				break;
+			}
+		}
+		
+		if (result == null) {
+			//stopped before the first iteration finished, so fall back on a legal root move
+			return new Result(firstRootMove(), 0, 0, nodes, elapsedMillis(), new ArrayList<String>());
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the first root move of this search, generating the root moves if the search never reached them,
+	 * or null if there are no legal moves
+	 */
+	private Move firstRootMove() {
+		MoveList list = moves[0];
+		if (rootCount == 0) {
+			generator.update();
+			list.clear();
+			generator.generate(list);
+			rootCount = list.size();
+		}
+		return rootCount > 0 ? new Move(root, list.get(0)) : null;
+	}
+	
+	/**
+	 * Forgets the node count of the last search, so a search about to start on another thread does not report it
+	 */
+	public void resetNodes() {
+		nodes = 0;
+	}
+	
+	/**
+	 * @return the nodes searched so far
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * Negamax alpha-beta search with a null window for every move after the first
+	 * @return score from the side to move's point of view
+	 */
+	private int search(Board board, int depth, int alpha, int beta, int ply) {
+		pvLength[ply] = ply;
+		long key = board.getKey();
+		path[ply] = key;
+		
+		if (ply > 0 && isRepetition(key, ply)) {
+			return 0;
+		}
+		if (tablebase != null && ply > 0 && Long.bitCount(board.getOccupied()) <= Tablebase.MAX_PIECES) {
+			int value = tablebase.probe(board);
+			if (value != Tablebase.UNKNOWN) {
+				return tablebaseScore(value, ply);
+			}
+		}
+		if (depth <= 0 || ply >= MAX_PLY - 1) {
+			return quiesce(board, alpha, beta, ply);
+		}
+		
+		if (++nodes % CHECK_INTERVAL == 0) {
+			checkLimits();
+		}
+		if (stopped) {
+			return 0;
+		}
+		
+		boolean pvNode = beta - alpha > 1;
+		int hashMove = 0;
+		
+		long entry = table.probe(key);
+		if (entry != 0) {
+			hashMove = TranspositionTable.move(entry);
+			
+			if (!pvNode && TranspositionTable.depth(entry) >= depth) {
+				int score = fromTable(TranspositionTable.score(entry), ply);
+				int bound = TranspositionTable.bound(entry);
+				
+				if (bound == TranspositionTable.BOUND_EXACT
+						|| (bound == TranspositionTable.BOUND_LOWER && score >= beta)
+						|| (bound == TranspositionTable.BOUND_UPPER && score <= alpha)) {
+					return score;
+				}
+			}
+		}
+		
+		generator.update();
+		boolean inCheck = generator.inCheck();
+		
+		MoveList list = moves[ply];
+		list.clear();
+		generator.generate(list);
+		int count = list.size();
+		if (ply == 0) {
+			rootCount = count;
+		}
+		if (count == 0) {
+			return inCheck ? -MATE + ply : 0;
+		}
+		
+		//look one ply further at checks so they are not cut off at the horizon
+		if (inCheck) {
+			depth++;
+		}
+		
+		scoreMoves(board, ply, count, hashMove);
+		
+		int oldAlpha = alpha;
+		int best = -INFINITY;
+		int bestMove = MoveCode.NONE;
+		
+		for (int i = 0; i < count; i++) {
+			pickNext(ply, i, count);
+			int move = list.get(i);
+			board.makeMove(move);
+			
+			int score;
+			if (i == 0) {
+				score = -search(board, depth - 1, -beta, -alpha, ply + 1);
+			} else {
+				score = -search(board, depth - 1, -alpha - 1, -alpha, ply + 1);
+				if (score > alpha && score < beta) {
+					score = -search(board, depth - 1, -beta, -alpha, ply + 1);
+				}
+			}
+			
+			board.unmakeMove();
+			
+			if (stopped) {
+				return 0;
+			}
+			
+			if (score > best) {
+				best = score;
+				bestMove = move;
+				
+				if (score > alpha) {
+					alpha = score;
+					updatePv(ply, move);
+					
+					if (score >= beta) {
+						if (!MoveCode.isCapture(move) && !MoveCode.isPromotion(move)) {
+							rememberQuiet(ply, move, depth);
+						}
+						break;
+					}
+				}
+			}
+		}
+		
+		int bound = best >= beta ? TranspositionTable.BOUND_LOWER
+				: best > oldAlpha ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+		table.store(key, bestMove, toTable(best, ply), depth, bound);
+		
+		return best;
+	}
+	
+	/**
+	 * Searches captures until the position is quiet, so the evaluation is not taken in the middle of an exchange
+	 * @return score from the side to move's point of view
+	 */
+	private int quiesce(Board board, int alpha, int beta, int ply) {
+		if (++nodes % CHECK_INTERVAL == 0) {
+			checkLimits();
+		}
+		
+		int standPat = Evaluation.evaluate(board);
+		if (standPat >= beta || ply >= MAX_PLY - 1 || stopped) {
+			return standPat;
+		}
+		if (standPat > alpha) {
+			alpha = standPat;
+		}
+		
+		generator.update();
+		
+		MoveList list = moves[ply];
+		list.clear();
+		generator.generateCaptures(list);
+		int count = list.size();
+		scoreMoves(board, ply, count, MoveCode.NONE);
+		
+		for (int i = 0; i < count; i++) {
+			pickNext(ply, i, count);
+			board.makeMove(list.get(i));
+			int score = -quiesce(board, -beta, -alpha, ply + 1);
+			board.unmakeMove();
+			
+			if (score >= beta) {
+				return score;
+			}
+			if (score > alpha) {
+				alpha = score;
+			}
+		}
+		return alpha;
+	}
+	
+	/**
+	 * Gives each move of a ply its ordering score
+	 */
+	private void scoreMoves(Board board, int ply, int count, int hashMove) {
+		for (int i = 0; i < count; i++) {
+			int move = moves[ply].get(i);
+			
+			if (move == hashMove) {
+				order[ply][i] = HASH_MOVE;
+			} else if (MoveCode.isCapture(move) || MoveCode.isPromotion(move)) {
+				Piece victim = board.get(MoveCode.to(move));
+				int gain = (victim == null ? VALUES[Piece.PAWN] : VALUES[victim.type])
+						+ (MoveCode.isPromotion(move) ? VALUES[MoveCode.promotionType(move)] : 0);
+				order[ply][i] = CAPTURE + gain * 8 - board.get(MoveCode.from(move)).type;
+			} else if (move == killers[ply][0]) {
+				order[ply][i] = FIRST_KILLER;
+			} else if (move == killers[ply][1]) {
+				order[ply][i] = SECOND_KILLER;
+			} else {
+				order[ply][i] = history[MoveCode.from(move)][MoveCode.to(move)];
+			}
+		}
+	}
+	
+	/**
+	 * Swaps the best scored remaining move into position i
+	 */
+	private void pickNext(int ply, int i, int count) {
+		int best = i;
+		for (int j = i + 1; j < count; j++) {
+			if (order[ply][j] > order[ply][best]) {
+				best = j;
+			}
+		}
+		
+		if (best != i) {
+			moves[ply].swap(i, best);
+			
+			int score = order[ply][i];
+			order[ply][i] = order[ply][best];
+			order[ply][best] = score;
+		}
+	}
+	
+	/**
+	 * Records a quiet move that caused a cutoff as a killer and in the history table
+	 */
+	private void rememberQuiet(int ply, int move, int depth) {
+		if (killers[ply][0] != move) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+		
+		int from = MoveCode.from(move);
+		int to = MoveCode.to(move);
+		history[from][to] += depth * depth;
+		
+		//keep history scores below the killers
+		if (history[from][to] > HISTORY_LIMIT) {
+			for (int[] h : history) {
+				for (int i = 0; i < h.length; i++) {
+					h[i] /= 2;
+				}
+			}
+		}
+	}
+	
+	private void updatePv(int ply, int move) {
+		pv[ply][ply] = move;
+		for (int i = ply + 1; i < pvLength[ply + 1]; i++) {
+			pv[ply][i] = pv[ply + 1][i];
+		}
+		pvLength[ply] = Math.max(ply + 1, pvLength[ply + 1]);
+	}
+	
+	/**
+	 * @return if the position already appeared on the current line with the same side to move
+	 */
+	private boolean isRepetition(long key, int ply) {
+		for (int i = ply - 2; i >= 0; i -= 2) {
+			if (path[i] == key) {
+				return true;
+			}
+		}
+		
+		//then the game positions before the root with the same side to move, the last of which is one ply back
+		for (int i = gameCount - 2 + (ply & 1); i >= 0; i -= 2) {
+			if (gameKeys[i] == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Copies the keys of the positions a repetition of the root could still reach, which are the ones
+	 * since the last capture or pawn move
+	 */
+	private void seedGameKeys(Board board) {
+		int count = board.getUndoCount();
+		int first = Math.max(0, count - board.getHalfmoveClock());
+		
+		gameCount = count - first;
+		if (gameKeys.length < gameCount) {
+			gameKeys = new long[gameCount];
+		}
+		for (int i = first; i < count; i++) {
+			gameKeys[i - first] = board.getKey(i);
+		}
+	}
+	
+	private void checkLimits() {
+		if ((limits.nodes > 0 && nodes >= limits.nodes) || System.nanoTime() >= deadline) {
+			stopped = true;
+		}
+	}
+	
+	private long elapsedMillis() {
+		return (System.nanoTime() - start) / 1000000;
+	}
+	
+	/**
+	 * @return the root move wrapped for the GUI
+	 */
+	private Move rootMove(int move) {
+		return new Move(root, move);
+	}
+	
+	/**
+	 * @return the principal variation in from-to coordinates
+	 */
+	private List<String> pvNames() {
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < pvLength[0]; i++) {
+			names.add(MoveCode.name(pv[0][i]));
+		}
+		return names;
+	}
+	
+	/**
+	 * Turns a tablebase value into a score: a mate score when the mate is near enough for one,
+	 * and otherwise a score just short of mate that still prefers the quicker win
+	 */
+	private static int tablebaseScore(int value, int ply) {
+		if (value == Tablebase.DRAW) {
+			return 0;
+		}
+		int plies = Tablebase.plies(value);
+		int score = ply + plies < MAX_PLY ? MATE - ply - plies : MATE - MAX_PLY - plies;
+		return Tablebase.isWin(value) ? score : -score;
+	}
+	
+	/**
+	 * Mate scores are stored relative to the node rather than the root
+	 */
+	private static int toTable(int score, int ply) {
+		if (score > MATE - MAX_PLY) {
+			return score + ply;
+		}
+		if (score < -MATE + MAX_PLY) {
+			return score - ply;
+		}
+		return score;
+	}
+	
+	private static int fromTable(int score, int ply) {
+		if (score > MATE - MAX_PLY) {
+			return score - ply;
+		}
+		if (score < -MATE + MAX_PLY) {
+			return score + ply;
+		}
+		return score;
+	}
+}
@@ -0,0 +1,321 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plays batches of games with no GUI, several at once on a fixed thread pool
+ * Each side either searches with the engine or picks a random legal move, and every game is seeded
+ * so a batch can be replayed exactly (engine games only when limited by depth or nodes, not time)
+ * Games are written as PGN as they finish, followed by the batch throughput
+ * Usage: java SelfPlay games [-threads n] [-seed s] [-white engine|random] [-black engine|random]
+ *        [-depth d] [-nodes n] [-millis m] [-hash mb] [-maxplies n] [-openplies n] [-book file.bin -random random64.txt]
+ *        [-tablebase dir] [-out file]
+ * The engine plays from the opening book while it has moves, picked at random by weight
+ * Out of book, the first few plies of every game are random moves drawn from the game's seed,
+ * since the engine alone would play the same game every time
+ * With endgame tables, games end as soon as they reach a position the tables decide, and the engine searches with them
+ * @author Stephen S
+ *
+ */
+public class SelfPlay {
+	
+	public static final String ENGINE = "engine";
+	public static final String RANDOM = "random";
+	
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long seed = 1;
+	private String white = ENGINE;
+	private String black = ENGINE;
+	private Search.Limits limits = new Search.Limits(0, 0, 0);
+	private int hashMegabytes = 16;
+	private int maxPlies = 400;
+	
+	//plies at the start of a game that the engine plays at random when the book has no move
+	private int openingPlies = 4;
+	
+	//read only, so every worker shares it
+	private PolyglotBook book;
+	private Tablebase tablebase;
+	
+	//each worker thread keeps its own table, which is cleared for every game
+	private ThreadLocal<TranspositionTable> tables = new ThreadLocal<TranspositionTable>() {
+		@Override
+		protected TranspositionTable initialValue() {
+			return new TranspositionTable(hashMegabytes);
+		}
+	};
+	
+	/**
+	 * Outcome of one game
+	 */
+	public static class Record {
+		
+		public final int round;
+		public final long seed;
+		public final String result;
+		public final int plies;
+		public final long nodes;
+		public final long millis;
+		
+		//the moves in SAN
+		public final List<String> moves;
+		
+		private Record(int round, long seed, String result, int plies, long nodes, long millis, List<String> moves) {
+			this.round = round;
+			this.seed = seed;
+			this.result = result;
+			this.plies = plies;
+			this.nodes = nodes;
+			this.millis = millis;
+			this.moves = moves;
+		}
+	}
+	
+	/**
+	 * Plays one game on the current thread
+	 * @param round number of the game in the batch, starting at 1
+	 * @return the finished game
+	 */
+	public Record play(int round) {
+		long gameSeed = seed + round;
+		Random random = new Random(gameSeed);
+		
+		Board board = new Board();
+		Game game = new Game(board);
+		game.setTablebase(tablebase);
+		San san = new San(board);
+		List<String> moves = new ArrayList<>();
+		
+		//a fresh search and an empty table make each game depend only on its seed and limits
+		Search search = null;
+		if (white.equals(ENGINE) || black.equals(ENGINE)) {
+			TranspositionTable table = tables.get();
+			table.clear();
+			search = new Search(table);
+			search.setTablebase(tablebase);
+		}
+		
+		long start = System.nanoTime();
+		long nodes = 0;
+		int plies = 0;
+		int state = game.isGameOver();
+		
+		while (state == Game.NOT_OVER && plies < maxPlies) {
+			String policy = board.isWhiteTurn() ? white : black;
+			int move;
+			
+			if (policy.equals(ENGINE)) {
+				move = book == null ? MoveCode.NONE : book.randomMove(board, random);
+				
+				if (move == MoveCode.NONE && plies < openingPlies) {
+					MoveList legal = game.generateLegalMoves();
+					move = legal.get(random.nextInt(legal.size()));
+				} else if (move == MoveCode.NONE) {
+					search.ready();
+					Search.Result result = search.search(board, limits);
+					nodes += result.nodes;
+					move = result.move.getCode();
+				}
+			} else {
+				MoveList legal = game.generateLegalMoves();
+				move = legal.get(random.nextInt(legal.size()));
+			}
+			
+			moves.add(san.toSan(move));
+			
+			game.move(move);
+			plies++;
+			state = game.isGameOver();
+		}
+		
+		long millis = (System.nanoTime() - start) / 1000000;
+		return new Record(round, gameSeed, PgnGame.result(state), plies, nodes, millis, moves);
+	}
+	
+	/**
+	 * Plays a batch of games on the thread pool, writing each one as it finishes
+	 * @param games number of games
+	 * @param out where the games and the summary go
+	 */
+	public void run(int games, Writer out) throws IOException, InterruptedException, ExecutionException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<Record> finished = new ExecutorCompletionService<>(pool);
+		
+		long start = System.nanoTime();
+		for (int i = 1; i <= games; i++) {
+			final int round = i;
+			finished.submit(() -> play(round));
+		}
+		
+		long plies = 0;
+		long nodes = 0;
+		int[] results = new int[4];
+		PgnWriter writer = new PgnWriter(out);
+		
+		try {
+			//only this thread writes, so the workers never wait on the output
+			for (int i = 0; i < games; i++) {
+				Record record = finished.take().get();
+				writer.write(toPgn(record));
+				
+				plies += record.plies;
+				nodes += record.nodes;
+				results[resultIndex(record.result)]++;
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		double minutes = (System.nanoTime() - start) / 6e10;
+		double seconds = minutes * 60;
+		
+		System.err.printf("%d games in %.1f s on %d threads: %.1f games/min, %.0f plies/s, %.0f nodes/s%n",
+				games, seconds, threads, games / minutes, plies / seconds, nodes / seconds);
+		System.err.printf("white wins %d, black wins %d, draws %d, unfinished %d%n", results[0], results[1], results[2], results[3]);
+		out.flush();
+	}
+	
+	/**
+	 * @return the game as PGN, with the batch details as extra tags
+	 */
+	private PgnGame toPgn(Record record) {
+		PgnGame game = new PgnGame();
+		game.setTag("Event", "SelfPlay");
+		game.setTag("Round", Integer.toString(record.round));
+		game.setTag("White", white);
+		game.setTag("Black", black);
+		game.setTag("PlyCount", Integer.toString(record.plies));
+		game.setTag("Seed", Long.toString(record.seed));
+		game.setTag("OpeningPlies", Integer.toString(openingPlies));
+		game.setTag("Nodes", Long.toString(record.nodes));
+		game.setTag("NodesPerSecond", Long.toString(record.nodes * 1000 / Math.max(1, record.millis)));
+		game.getMoves().addAll(record.moves);
+		game.setResult(record.result);
+		return game;
+	}
+	
+	private static int resultIndex(String result) {
+		switch (result) {
+		case "1-0":
+			return 0;
+		case "0-1":
+			return 1;
+		case "1/2-1/2":
+			return 2;
+		default:
+			return 3;
+		}
+	}
+	
+	/**
+	 * Runs a batch from the command line
+	 * @param args game count, then options
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("Usage: java SelfPlay games [-threads n] [-seed s] [-white engine|random] [-black engine|random]");
+			System.out.println("       [-depth d] [-nodes n] [-millis m] [-hash mb] [-maxplies n] [-openplies n]");
+			System.out.println("       [-book file.bin -random random64.txt] [-tablebase dir] [-out file]");
+			return;
+		}
+		
+		int games = Integer.parseInt(args[0]);
+		SelfPlay selfPlay = new SelfPlay();
+		String file = null;
+		String bookFile = null;
+		String randomFile = null;
+		
+		int depth = 0;
+		long nodes = 0;
+		long millis = 0;
+		
+		for (int i = 1; i < args.length; i++) {
+			String value = i + 1 < args.length ? args[i + 1] : null;
+			
+			switch (args[i++]) {
+			case "-threads":
+				selfPlay.threads = Integer.parseInt(value);
+				break;
+			case "-seed":
+				selfPlay.seed = Long.parseLong(value);
+				break;
+			case "-white":
+				selfPlay.white = policy(value);
+				break;
+			case "-black":
+				selfPlay.black = policy(value);
+				break;
+			case "-depth":
+				depth = Integer.parseInt(value);
+				break;
+			case "-nodes":
+				nodes = Long.parseLong(value);
+				break;
+			case "-millis":
+				millis = Long.parseLong(value);
+				break;
+			case "-hash":
+				selfPlay.hashMegabytes = Integer.parseInt(value);
+				break;
+			case "-maxplies":
+				selfPlay.maxPlies = Integer.parseInt(value);
+				break;
+			case "-openplies":
+				selfPlay.openingPlies = Integer.parseInt(value);
+				break;
+			case "-book":
+				bookFile = value;
+				break;
+			case "-random":
+				randomFile = value;
+				break;
+			case "-tablebase":
+				selfPlay.tablebase = Tablebase.open(Paths.get(value));
+				break;
+			case "-out":
+				file = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+			}
+		}
+		
+		//an engine with no limit would never move, so default to a shallow search
+		if (depth == 0 && nodes == 0 && millis == 0) {
+			depth = 3;
+		}
+		selfPlay.limits = new Search.Limits(depth, nodes, millis);
+		
+		if (bookFile != null) {
+			if (randomFile == null) {
+				throw new IllegalArgumentException("A book needs Polyglot's random table: -random file");
+			}
+			selfPlay.book = new PolyglotBook(Paths.get(bookFile), PolyglotBook.readRandom(Paths.get(randomFile)));
+		}
+		
+		Writer out = new BufferedWriter(file == null ? new OutputStreamWriter(System.out) : new FileWriter(file), 1 << 16);
+		try {
+			selfPlay.run(games, out);
+		} finally {
+			out.close();
+		}
+	}
+	
+	private static String policy(String name) {
+		if (!ENGINE.equals(name) && !RANDOM.equals(name)) {
+			throw new IllegalArgumentException("Policy must be engine or random: " + name);
+		}
+		return name;
+	}
+}
@@ -0,0 +1,1025 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Endgame tablebases for up to four pieces, built by retrograde analysis and probed from memory-mapped files
+ * A table holds one byte per position of a material signature such as KQKR: 0 for a draw, otherwise the plies to mate plus one,
+ * which is even when the side to move wins and odd when it loses
+ * Positions are indexed by the side to move and the squares of the pieces, with the white king folded into the a1-d1-d4 triangle,
+ * or onto the a-d files when there are pawns, so the largest table takes 17 MB
+ * Only the stronger side is stored as white; the other way round is probed by flipping the board
+ * Castling and en passant are not part of a position, so probes where either is possible return UNKNOWN
+ * Usage: java Tablebase generate dir [-threads n] KQK KRK ... | all
+ *        java Tablebase probe dir "fen"
+ * @author Stephen S
+ *
+ */
+public class Tablebase {
+	
+	public static final int MAX_PIECES = 4;
+	public static final int UNKNOWN = -1;
+	public static final int DRAW = 0;
+	
+	private static final int ILLEGAL = 255;
+	private static final int MAX_VALUE = 254;
+	
+	private static final byte[] MAGIC = "CHESSTB1".getBytes(StandardCharsets.US_ASCII);
+	private static final String EXTENSION = ".tb";
+	
+	//letters by piece type, and the order the pieces of a side are written and indexed in
+	private static final String LETTERS = "PNBRQK";
+	private static final String ORDER = "KQRBNP";
+	private static final int[] WORTH = {1, 3, 3, 5, 9, 0};
+	
+	//the eight symmetries of the board, of which tables with pawns only use the first two
+	private static final int[][] TRANSFORMS = new int[8][Board.SQUARES];
+	
+	//slot of the white king for each square, or -1 where the king is folded away
+	private static final int[] TRIANGLE = new int[Board.SQUARES];
+	private static final int[] HALF = new int[Board.SQUARES];
+	
+	static {
+		for (int t = 0; t < TRANSFORMS.length; t++) {
+			for (int square = 0; square < Board.SQUARES; square++) {
+				int x = Bitboard.x(square);
+				int y = Bitboard.y(square);
+				if ((t & 1) != 0) {
+					x = Board.SIDES - 1 - x;
+				}
+				if ((t & 2) != 0) {
+					y = Board.SIDES - 1 - y;
+				}
+				TRANSFORMS[t][square] = (t & 4) != 0 ? Bitboard.square(y, x) : Bitboard.square(x, y);
+			}
+		}
+		
+		int slot = 0;
+		for (int square = 0; square < Board.SQUARES; square++) {
+			int x = Bitboard.x(square);
+			int y = Bitboard.y(square);
+			TRIANGLE[square] = x < 4 && y <= x ? slot++ : -1;
+			HALF[square] = x < 4 ? y * 4 + x : -1;
+		}
+	}
+	
+	private final Map<String, Table> tables;
+	
+	/**
+	 * Creates an empty tablebase, to generate tables into
+	 */
+	public Tablebase() {
+		tables = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Maps every table file in a directory
+	 * @param directory
+	 * @return the tablebase
+	 */
+	public static Tablebase open(Path directory) throws IOException {
+		Tablebase tablebase = new Tablebase();
+		
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+			for (Path path : files) {
+				String file = path.getFileName().toString();
+				String name = normalize(file.substring(0, file.length() - EXTENSION.length()));
+				Table table = new Table(name);
+				table.map(path);
+				tablebase.tables.put(name, table);
+			}
+		}
+		return tablebase;
+	}
+	
+	/**
+	 * @return the material signatures of the loaded tables
+	 */
+	public Set<String> getTables() {
+		return tables.keySet();
+	}
+	
+	/**
+	 * Looks up a position
+	 * @param board
+	 * @return DRAW, a value whose plies and sign are given by plies, isWin and isLoss, or UNKNOWN if no table covers the position
+	 */
+	public int probe(Board board) {
+		long occupied = board.getOccupied();
+		int count = Long.bitCount(occupied);
+		if (count > MAX_PIECES || board.getCastlingRights() != 0) {
+			return UNKNOWN;
+		}
+		
+		boolean white = board.isWhiteTurn();
+		int enPassant = board.getEnPassant();
+		if (enPassant != Board.NO_EN_PASSANT && (Bitboard.pawnAttacks(!white, enPassant) & board.getPieces(white, Piece.PAWN)) != 0) {
+			return UNKNOWN;
+		}
+		if (count == 2) {
+			return DRAW;
+		}
+		
+		String whiteSide = side(board, true);
+		String blackSide = side(board, false);
+		boolean flip = compareSides(whiteSide, blackSide) < 0;
+		Table table = tables.get(flip ? blackSide + whiteSide : whiteSide + blackSide);
+		if (table == null) {
+			return UNKNOWN;
+		}
+		
+		//the stronger side's pieces come first, seen from its own side of the board
+		int[] squares = new int[count];
+		int i = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			boolean color = (pass == 0) != flip;
+			for (int j = 0; j < ORDER.length(); j++) {
+				for (long bits = board.getPieces(color, LETTERS.indexOf(ORDER.charAt(j))); bits != 0; bits &= bits - 1) {
+					squares[i++] = flip ? Bitboard.first(bits) ^ (Board.SQUARES - Board.SIDES) : Bitboard.first(bits);
+				}
+			}
+		}
+		
+		int value = table.get(table.index(squares, white != flip ? 0 : 1, new int[count]));
+		return value == ILLEGAL ? UNKNOWN : value;
+	}
+	
+	/**
+	 * @return if a probed value is a win for the side to move
+	 */
+	public static boolean isWin(int value) {
+		return value > 0 && value % 2 == 0;
+	}
+	
+	/**
+	 * @return if a probed value is a loss for the side to move
+	 */
+	public static boolean isLoss(int value) {
+		return value > 0 && value % 2 == 1;
+	}
+	
+	/**
+	 * @return the plies to mate of a win or loss
+	 */
+	public static int plies(int value) {
+		return value - 1;
+	}
+	
+	/**
+	 * Builds a table, after the tables its captures and promotions lead to
+	 * Tables already built or loaded are kept
+	 * @param material signature such as KQKR, with either side first
+	 * @param threads
+	 */
+	public void generate(String material, int threads) {
+		String name = normalize(material);
+		if (tables.containsKey(name) || name.length() == 2) {
+			return;
+		}
+		
+		Table table = new Table(name);
+		for (String child : table.children()) {
+			generate(child, threads);
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			long start = System.nanoTime();
+			new Builder(table, pool, threads).build();
+			tables.put(name, table);
+			System.out.println(table.summary() + String.format(", %.1f s", (System.nanoTime() - start) / 1e9));
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Writes every table built in memory to a directory
+	 * @param directory
+	 */
+	public void write(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		for (Table table : tables.values()) {
+			if (table.values != null) {
+				try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(directory.resolve(table.name + EXTENSION)))) {
+					out.write(MAGIC);
+					out.write(table.values);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Puts the pieces of a signature in order, with the stronger side first
+	 * @param material such as KRKQ
+	 * @return the signature, such as KQKR
+	 * @throws IllegalArgumentException if it is not two kings and up to two other pieces
+	 */
+	public static String normalize(String material) {
+		String upper = material.toUpperCase();
+		int split = upper.indexOf('K', 1);
+		if (!upper.startsWith("K") || split < 0 || upper.length() > MAX_PIECES || !upper.substring(1).replace("K", "").matches("[QRBNP]*")
+				|| upper.indexOf('K', split + 1) >= 0) {
+			throw new IllegalArgumentException("Bad material: " + material);
+		}
+		
+		String white = sort(upper.substring(0, split));
+		String black = sort(upper.substring(split));
+		return compareSides(white, black) < 0 ? black + white : white + black;
+	}
+	
+	private static String sort(String side) {
+		char[] letters = side.toCharArray();
+		for (int i = 1; i < letters.length; i++) {
+			for (int j = i; j > 0 && ORDER.indexOf(letters[j]) < ORDER.indexOf(letters[j - 1]); j--) {
+				char swap = letters[j];
+				letters[j] = letters[j - 1];
+				letters[j - 1] = swap;
+			}
+		}
+		return new String(letters);
+	}
+	
+	/**
+	 * Compares two sides by material, then by piece count, then by their strongest pieces
+	 * @return above 0 if the first side is stronger
+	 */
+	private static int compareSides(String a, String b) {
+		int difference = worth(a) - worth(b);
+		if (difference == 0) {
+			difference = a.length() - b.length();
+		}
+		for (int i = 0; difference == 0 && i < a.length(); i++) {
+			difference = ORDER.indexOf(b.charAt(i)) - ORDER.indexOf(a.charAt(i));
+		}
+		return difference;
+	}
+	
+	private static int worth(String side) {
+		int worth = 0;
+		for (int i = 0; i < side.length(); i++) {
+			worth += WORTH[LETTERS.indexOf(side.charAt(i))];
+		}
+		return worth;
+	}
+	
+	/**
+	 * @return the letters of one side's pieces on the board, in order
+	 */
+	private static String side(Board board, boolean white) {
+		StringBuilder side = new StringBuilder();
+		for (int i = 0; i < ORDER.length(); i++) {
+			int count = Long.bitCount(board.getPieces(white, LETTERS.indexOf(ORDER.charAt(i))));
+			for (int j = 0; j < count; j++) {
+				side.append(ORDER.charAt(i));
+			}
+		}
+		return side.toString();
+	}
+	
+	/**
+	 * @return every signature of three or four pieces
+	 */
+	private static Set<String> allMaterials() {
+		Set<String> materials = new LinkedHashSet<>();
+		String others = ORDER.substring(1);
+		List<String> sides = new ArrayList<>();
+		sides.add("K");
+		for (int i = 0; i < others.length(); i++) {
+			sides.add("K" + others.charAt(i));
+			for (int j = i; j < others.length(); j++) {
+				sides.add("K" + others.charAt(i) + others.charAt(j));
+			}
+		}
+		
+		//smaller tables first, since the larger ones are built from them
+		for (int pieces = 3; pieces <= MAX_PIECES; pieces++) {
+			for (String white : sides) {
+				for (String black : sides) {
+					if (white.length() + black.length() == pieces) {
+						materials.add(normalize(white + black));
+					}
+				}
+			}
+		}
+		return materials;
+	}
+	
+	/**
+	 * One material signature: its pieces, its index and its values
+	 */
+	private static class Table {
+		
+		final String name;
+		final int size;
+		final int[] types;
+		final boolean[] whites;
+		final int blackKing;
+		
+		//symmetries used, and the white king's slots
+		final int transforms;
+		final int[] slots;
+		final int[] kingSquares;
+		final int kingSlots;
+		final int entries;
+		
+		//values while building, or the mapped file once written
+		byte[] values;
+		ByteBuffer mapped;
+		
+		//tables reached by captures and promotions, by kind of move
+		final Map<Integer, Exit> exits;
+		
+		Table(String name) {
+			this.name = name;
+			size = name.length();
+			types = new int[size];
+			whites = new boolean[size];
+			blackKing = name.indexOf('K', 1);
+			
+			for (int i = 0; i < size; i++) {
+				types[i] = LETTERS.indexOf(name.charAt(i));
+				whites[i] = i < blackKing;
+			}
+			
+			boolean pawns = name.indexOf('P') >= 0;
+			transforms = pawns ? 2 : TRANSFORMS.length;
+			slots = pawns ? HALF : TRIANGLE;
+			kingSlots = pawns ? 32 : 10;
+			kingSquares = new int[kingSlots];
+			for (int square = 0; square < Board.SQUARES; square++) {
+				if (slots[square] >= 0) {
+					kingSquares[slots[square]] = square;
+				}
+			}
+			entries = 2 * kingSlots << (6 * (size - 1));
+			exits = new ConcurrentHashMap<>();
+		}
+		
+		void map(Path path) throws IOException {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				if (channel.size() != MAGIC.length + entries) {
+					throw new IOException("Wrong size for " + name + ": " + path);
+				}
+				mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (mapped.get(i) != MAGIC[i]) {
+					throw new IOException("Not a tablebase file: " + path);
+				}
+			}
+		}
+		
+		int get(int index) {
+			return (values != null ? values[index] : mapped.get(MAGIC.length + index)) & 0xFF;
+		}
+		
+		/**
+		 * Finds the index of a position: the smallest over the symmetries that bring the white king to its slots,
+		 * with pieces of the same kind sorted by square so each position has exactly one index
+		 * @param squares square of each piece, in table order
+		 * @param turn 0 for white to move, 1 for black
+		 * @param scratch array as long as squares
+		 */
+		int index(int[] squares, int turn, int[] scratch) {
+			int best = -1;
+			for (int t = 0; t < transforms; t++) {
+				int[] transform = TRANSFORMS[t];
+				int slot = slots[transform[squares[0]]];
+				if (slot < 0) {
+					continue;
+				}
+				
+				for (int i = 0; i < size; i++) {
+					scratch[i] = transform[squares[i]];
+					for (int j = i; j > 0 && types[j - 1] == types[j] && whites[j - 1] == whites[j] && scratch[j - 1] > scratch[j]; j--) {
+						int swap = scratch[j];
+						scratch[j] = scratch[j - 1];
+						scratch[j - 1] = swap;
+					}
+				}
+				
+				int index = turn * kingSlots + slot;
+				for (int i = 1; i < size; i++) {
+					index = index * Board.SQUARES + scratch[i];
+				}
+				if (best < 0 || index < best) {
+					best = index;
+				}
+			}
+			return best;
+		}
+		
+		/**
+		 * Fills in the squares of an index
+		 * @return 0 for white to move, 1 for black
+		 */
+		int decode(int index, int[] squares) {
+			for (int i = size - 1; i > 0; i--) {
+				squares[i] = index % Board.SQUARES;
+				index /= Board.SQUARES;
+			}
+			squares[0] = kingSquares[index % kingSlots];
+			return index / kingSlots;
+		}
+		
+		long occupancy(int[] squares) {
+			long occupied = 0;
+			for (int square : squares) {
+				if (square >= 0) {
+					occupied |= Bitboard.bit(square);
+				}
+			}
+			return occupied;
+		}
+		
+		long attacks(int piece, int square, long occupied) {
+			switch (types[piece]) {
+			case Piece.PAWN:
+				return Bitboard.pawnAttacks(whites[piece], square);
+			case Piece.KNIGHT:
+				return Bitboard.knightAttacks(square);
+			case Piece.BISHOP:
+				return Bitboard.bishopAttacks(square, occupied);
+			case Piece.ROOK:
+				return Bitboard.rookAttacks(square, occupied);
+			case Piece.QUEEN:
+				return Bitboard.rookAttacks(square, occupied) | Bitboard.bishopAttacks(square, occupied);
+			default:
+				return Bitboard.kingAttacks(square);
+			}
+		}
+		
+		/**
+		 * @param squares square of each piece, or -1 for a captured one
+		 * @return if a side's pieces attack the square
+		 */
+		boolean attacked(int square, boolean byWhite, int[] squares) {
+			long occupied = occupancy(squares);
+			for (int i = 0; i < size; i++) {
+				if (whites[i] == byWhite && squares[i] >= 0 && (attacks(i, squares[i], occupied) & Bitboard.bit(square)) != 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * A position is legal if no two pieces share a square, no pawn is on the first or last rank,
+		 * and the side that just moved is not in check
+		 */
+		boolean isLegal(int[] squares, int turn) {
+			long occupied = occupancy(squares);
+			if (Long.bitCount(occupied) != size) {
+				return false;
+			}
+			for (int i = 0; i < size; i++) {
+				int y = Bitboard.y(squares[i]);
+				if (types[i] == Piece.PAWN && (y == 0 || y == Board.SIDES - 1)) {
+					return false;
+				}
+			}
+			boolean white = turn == 0;
+			return !attacked(squares[white ? blackKing : 0], white, squares);
+		}
+		
+		/**
+		 * @return the signatures a capture or promotion can lead to
+		 */
+		Set<String> children() {
+			Set<String> children = new LinkedHashSet<>();
+			for (int i = 0; i < size; i++) {
+				for (int captured = -1; captured < size; captured++) {
+					if (captured == i || (captured >= 0 && (types[captured] == Piece.KING || whites[captured] == whites[i]))) {
+						continue;
+					}
+					if (types[i] == Piece.PAWN) {
+						for (int type = Piece.KNIGHT; type <= Piece.QUEEN; type++) {
+							children.add(exit(captured, i, type).name);
+						}
+					}
+					if (captured >= 0) {
+						children.add(exit(captured, -1, 0).name);
+					}
+				}
+			}
+			return children;
+		}
+		
+		/**
+		 * Describes where a capture or promotion leads, without looking the table up
+		 * @param captured piece taken, or -1
+		 * @param promoted pawn promoting, or -1
+		 * @param type piece it becomes
+		 */
+		Exit exit(int captured, int promoted, int type) {
+			int key = ((captured + 1) * 8 + promoted + 1) * 8 + type;
+			Exit exit = exits.get(key);
+			if (exit != null) {
+				return exit;
+			}
+			
+			StringBuilder white = new StringBuilder();
+			StringBuilder black = new StringBuilder();
+			List<Integer> whitePieces = new ArrayList<>();
+			List<Integer> blackPieces = new ArrayList<>();
+			
+			//pieces stay in table order, except that a promoted piece moves up among its side's pieces
+			for (int j = 0; j < ORDER.length(); j++) {
+				for (int i = 0; i < size; i++) {
+					int pieceType = i == promoted ? type : types[i];
+					if (i != captured && pieceType == LETTERS.indexOf(ORDER.charAt(j))) {
+						(whites[i] ? white : black).append(ORDER.charAt(j));
+						(whites[i] ? whitePieces : blackPieces).add(i);
+					}
+				}
+			}
+			
+			boolean flip = compareSides(white.toString(), black.toString()) < 0;
+			List<Integer> from = new ArrayList<>(flip ? blackPieces : whitePieces);
+			from.addAll(flip ? whitePieces : blackPieces);
+			
+			exit = new Exit(flip ? black.toString() + white : white.toString() + black, flip, from);
+			exits.put(key, exit);
+			return exit;
+		}
+		
+		String summary() {
+			long wins = 0;
+			long draws = 0;
+			long losses = 0;
+			int longest = 0;
+			for (int i = 0; i < entries; i++) {
+				int value = get(i);
+				if (value == ILLEGAL) {
+					continue;
+				}
+				if (isWin(value)) {
+					wins++;
+					longest = Math.max(longest, plies(value));
+				} else if (isLoss(value)) {
+					losses++;
+				} else {
+					draws++;
+				}
+			}
+			return String.format("%s: %d wins, %d draws, %d losses, longest mate in %d", name, wins, draws, losses, (longest + 1) / 2);
+		}
+	}
+	
+	/**
+	 * Where a capture or promotion leads: a table, whether its colors are flipped, and which piece fills each of its places
+	 */
+	private static class Exit {
+		
+		final String name;
+		final boolean flip;
+		final int[] from;
+		
+		//looked up once the table is built
+		Table table;
+		
+		Exit(String name, boolean flip, List<Integer> from) {
+			this.name = name;
+			this.flip = flip;
+			this.from = new int[from.size()];
+			for (int i = 0; i < this.from.length; i++) {
+				this.from[i] = from.get(i);
+			}
+		}
+	}
+	
+	/**
+	 * Fills in one table, a pass at a time, each pass split over the threads
+	 * The first pass finds mates and stalemates, looks up every capture and promotion in the smaller tables,
+	 * and counts the other moves of each position; later passes go back from the positions decided at each distance,
+	 * winning the positions that reach a loss and counting down the moves left of those that reach a win
+	 */
+	private class Builder {
+		
+		private final Table table;
+		private final ExecutorService pool;
+		private final int threads;
+		
+		private final byte[] values;
+		
+		//moves not yet known to lose, or 255 when a capture or promotion draws, so the position can never lose
+		private final AtomicIntegerArray counts;
+		
+		//value found through captures and promotions, which applies once the search reaches its distance
+		private final byte[] pending;
+		
+		Builder(Table table, ExecutorService pool, int threads) {
+			this.table = table;
+			this.pool = pool;
+			this.threads = threads;
+			values = new byte[table.entries];
+			counts = new AtomicIntegerArray(table.entries);
+			pending = new byte[table.entries];
+		}
+		
+		void build() {
+			parallel(this::initialize);
+			
+			int longest = 0;
+			for (byte value : pending) {
+				longest = Math.max(longest, value & 0xFF);
+			}
+			
+			for (int value = 1; ; value++) {
+				if (value > MAX_VALUE) {
+					throw new IllegalStateException("Mate too long for " + table.name);
+				}
+				final int current = value;
+				parallel((worker, start, end) -> commit(current, start, end));
+				long found = parallel((worker, start, end) -> retract(worker, current, start, end));
+				if (found == 0 && value >= longest) {
+					break;
+				}
+			}
+			
+			//whatever is left undecided is a draw
+			table.values = values;
+		}
+		
+		/**
+		 * Runs a pass over the whole table in chunks
+		 * @return the sum of what the chunks return
+		 */
+		private long parallel(Pass pass) {
+			int chunks = threads * 8;
+			List<Future<Long>> futures = new ArrayList<>();
+			for (int i = 0; i < chunks; i++) {
+				final int start = (int) ((long) table.entries * i / chunks);
+				final int end = (int) ((long) table.entries * (i + 1) / chunks);
+				futures.add(pool.submit(() -> pass.run(new Worker(table.size), start, end)));
+			}
+			
+			long sum = 0;
+			try {
+				for (Future<Long> future : futures) {
+					sum += future.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted building " + table.name);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Failed building " + table.name, e.getCause());
+			}
+			return sum;
+		}
+		
+		private long initialize(Worker worker, int start, int end) {
+			int[] squares = worker.squares;
+			for (int index = start; index < end; index++) {
+				int turn = table.decode(index, squares);
+				if (!table.isLegal(squares, turn) || table.index(squares, turn, worker.scratch) != index) {
+					values[index] = (byte) ILLEGAL;
+					continue;
+				}
+				
+				worker.clear();
+				forward(worker, turn);
+				
+				if (worker.moves == 0) {
+					boolean white = turn == 0;
+					boolean inCheck = table.attacked(squares[white ? 0 : table.blackKing], !white, squares);
+					values[index] = (byte) (inCheck ? 1 : DRAW);
+					counts.set(index, ILLEGAL);
+					continue;
+				}
+				
+				counts.set(index, worker.draws ? ILLEGAL : worker.seen);
+				pending[index] = (byte) (worker.bestWin != 0 ? worker.bestWin : worker.worstLoss);
+			}
+			return 0;
+		}
+		
+		/**
+		 * Generates the legal moves of the side to move, looking up captures and promotions
+		 * and collecting the distinct positions the other moves reach
+		 */
+		private void forward(Worker worker, int turn) {
+			int[] squares = worker.squares;
+			boolean white = turn == 0;
+			long occupied = table.occupancy(squares);
+			long own = 0;
+			for (int i = 0; i < table.size; i++) {
+				if (table.whites[i] == white) {
+					own |= Bitboard.bit(squares[i]);
+				}
+			}
+			long enemy = occupied & ~own;
+			
+			for (int i = 0; i < table.size; i++) {
+				if (table.whites[i] != white) {
+					continue;
+				}
+				int from = squares[i];
+				
+				if (table.types[i] == Piece.PAWN) {
+					int forward = white ? Board.SIDES : -Board.SIDES;
+					int to = from + forward;
+					if ((occupied & Bitboard.bit(to)) == 0) {
+						move(worker, turn, i, to, -1);
+						
+						int startY = white ? 1 : Board.SIDES - 2;
+						if (Bitboard.y(from) == startY && (occupied & Bitboard.bit(to + forward)) == 0) {
+							move(worker, turn, i, to + forward, -1);
+						}
+					}
+					for (long targets = Bitboard.pawnAttacks(white, from) & enemy; targets != 0; targets &= targets - 1) {
+						int target = Bitboard.first(targets);
+						move(worker, turn, i, target, pieceAt(squares, target));
+					}
+				} else {
+					for (long targets = table.attacks(i, from, occupied) & ~own; targets != 0; targets &= targets - 1) {
+						int target = Bitboard.first(targets);
+						move(worker, turn, i, target, (enemy & Bitboard.bit(target)) != 0 ? pieceAt(squares, target) : -1);
+					}
+				}
+			}
+		}
+		
+		private void move(Worker worker, int turn, int piece, int to, int captured) {
+			int[] moved = worker.moved;
+			System.arraycopy(worker.squares, 0, moved, 0, table.size);
+			moved[piece] = to;
+			if (captured >= 0) {
+				moved[captured] = -1;
+			}
+			
+			boolean white = turn == 0;
+			if (table.attacked(moved[white ? 0 : table.blackKing], !white, moved)) {
+				return;
+			}
+			worker.moves++;
+			
+			int y = Bitboard.y(to);
+			if (table.types[piece] == Piece.PAWN && (y == 0 || y == Board.SIDES - 1)) {
+				for (int type = Piece.KNIGHT; type <= Piece.QUEEN; type++) {
+					leave(worker, table.exit(captured, piece, type), 1 - turn);
+				}
+			} else if (captured >= 0) {
+				leave(worker, table.exit(captured, -1, 0), 1 - turn);
+			} else {
+				worker.add(table.index(moved, 1 - turn, worker.scratch));
+			}
+		}
+		
+		/**
+		 * Scores a move into a smaller table from the side of the player making it
+		 */
+		private void leave(Worker worker, Exit exit, int turn) {
+			if (exit.name.length() == 2) {
+				worker.draws = true;
+				return;
+			}
+			if (exit.table == null) {
+				exit.table = tables.get(exit.name);
+			}
+			
+			int[] child = worker.child;
+			for (int i = 0; i < exit.from.length; i++) {
+				int square = worker.moved[exit.from[i]];
+				child[i] = exit.flip ? square ^ (Board.SQUARES - Board.SIDES) : square;
+			}
+			int value = exit.table.get(exit.table.index(child, exit.flip ? 1 - turn : turn, worker.scratch));
+			
+			//a loss for the opponent in n plies is a win in n + 1, stored as one more again
+			if (value == ILLEGAL) {
+				throw new IllegalStateException("Move into an illegal position of " + exit.name);
+			} else if (value == DRAW) {
+				worker.draws = true;
+			} else if (isLoss(value)) {
+				worker.bestWin = worker.bestWin == 0 ? value + 1 : Math.min(worker.bestWin, value + 1);
+			} else {
+				worker.worstLoss = Math.max(worker.worstLoss, value + 1);
+			}
+		}
+		
+		/**
+		 * Settles positions whose captures or promotions decide them at this distance
+		 */
+		private long commit(int value, int start, int end) {
+			for (int index = start; index < end; index++) {
+				if (values[index] == 0 && (pending[index] & 0xFF) == value && (isWin(value) || counts.get(index) == 0)) {
+					values[index] = (byte) value;
+				}
+			}
+			return 0;
+		}
+		
+		/**
+		 * Goes back one move from every position decided at this distance
+		 * @return how many positions were decided at it
+		 */
+		private long retract(Worker worker, int value, int start, int end) {
+			long found = 0;
+			int[] squares = worker.squares;
+			int[] moved = worker.moved;
+			
+			for (int index = start; index < end; index++) {
+				if ((values[index] & 0xFF) != value) {
+					continue;
+				}
+				found++;
+				
+				int turn = table.decode(index, squares);
+				boolean white = turn == 1;
+				long occupied = table.occupancy(squares);
+				worker.clear();
+				
+				//the side that just moved is the opponent of the side to move
+				for (int i = 0; i < table.size; i++) {
+					if (table.whites[i] != white) {
+						continue;
+					}
+					int to = squares[i];
+					
+					long froms;
+					if (table.types[i] == Piece.PAWN) {
+						int back = white ? -Board.SIDES : Board.SIDES;
+						int from = to + back;
+						int fromY = Bitboard.y(from);
+						froms = 0;
+						if (fromY >= 1 && fromY <= Board.SIDES - 2 && (occupied & Bitboard.bit(from)) == 0) {
+							froms = Bitboard.bit(from);
+							if (fromY == (white ? 2 : Board.SIDES - 3) && (occupied & Bitboard.bit(from + back)) == 0) {
+								froms |= Bitboard.bit(from + back);
+							}
+						}
+					} else {
+						froms = table.attacks(i, to, occupied) & ~occupied;
+					}
+					
+					for (; froms != 0; froms &= froms - 1) {
+						System.arraycopy(squares, 0, moved, 0, table.size);
+						moved[i] = Bitboard.first(froms);
+						
+						//the side not to move must not be in check before the move either
+						if (table.attacked(moved[white ? table.blackKing : 0], white, moved)) {
+							continue;
+						}
+						int previous = table.index(moved, 1 - turn, worker.scratch);
+						if ((values[previous] & 0xFF) == ILLEGAL || !worker.add(previous)) {
+							continue;
+						}
+						update(previous, value);
+					}
+				}
+			}
+			return found;
+		}
+		
+		/**
+		 * Passes a decided position's value to a position one move before it
+		 */
+		private void update(int index, int value) {
+			if (values[index] != 0) {
+				return;
+			}
+			if (isLoss(value)) {
+				values[index] = (byte) (value + 1);
+			} else if (counts.decrementAndGet(index) == 0) {
+				//every move loses; the position waits if a capture or promotion loses more slowly, and cannot lose if one wins
+				int waiting = pending[index] & 0xFF;
+				if (waiting <= value + 1) {
+					values[index] = (byte) (value + 1);
+				}
+			}
+		}
+	}
+	
+	private static int pieceAt(int[] squares, int square) {
+		for (int i = 0; i < squares.length; i++) {
+			if (squares[i] == square) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Work done on one chunk of a pass
+	 */
+	private interface Pass {
+		long run(Worker worker, int start, int end);
+	}
+	
+	/**
+	 * Scratch space of one chunk, and what the moves of the current position found
+	 */
+	private static class Worker {
+		
+		final int[] squares;
+		final int[] moved;
+		final int[] child;
+		final int[] scratch;
+		
+		//distinct positions reached, which a symmetry can make fewer than the moves
+		final int[] reached = new int[64];
+		int seen;
+		
+		int moves;
+		boolean draws;
+		int bestWin;
+		int worstLoss;
+		
+		Worker(int size) {
+			squares = new int[size];
+			moved = new int[size];
+			child = new int[size];
+			scratch = new int[size];
+		}
+		
+		void clear() {
+			seen = 0;
+			moves = 0;
+			draws = false;
+			bestWin = 0;
+			worstLoss = 0;
+		}
+		
+		/**
+		 * @return false if the position was already reached
+		 */
+		boolean add(int index) {
+			for (int i = 0; i < seen; i++) {
+				if (reached[i] == index) {
+					return false;
+				}
+			}
+			reached[seen++] = index;
+			return true;
+		}
+	}
+	
+	/**
+	 * Generates tables into a directory, or probes a position
+	 * @param args
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.out.println("Usage: java Tablebase generate dir [-threads n] KQK KRK ... | all");
+			System.out.println("       java Tablebase probe dir \"fen\"");
+			return;
+		}
+		Path directory = Paths.get(args[1]);
+		
+		if (args[0].equals("probe")) {
+			Tablebase tablebase = open(directory);
+			Board board = new Board(args[2]);
+			int value = tablebase.probe(board);
+			if (value == UNKNOWN) {
+				System.out.println("unknown");
+			} else if (value == DRAW) {
+				System.out.println("draw");
+			} else {
+				System.out.println((isWin(value) ? "win" : "loss") + ", mate in " + (plies(value) + 1) / 2);
+			}
+			return;
+		}
+		
+		int threads = Runtime.getRuntime().availableProcessors();
+		Set<String> materials = new LinkedHashSet<>();
+		for (int i = 2; i < args.length; i++) {
+			switch (args[i]) {
+			case "-threads":
+				threads = Math.max(1, Integer.parseInt(args[++i]));
+				break;
+			case "all":
+				materials.addAll(allMaterials());
+				break;
+			default:
+				materials.add(args[i]);
+				break;
+			}
+		}
+		
+		Tablebase tablebase = new Tablebase();
+		for (String material : materials) {
+			tablebase.generate(material, threads);
+		}
+		tablebase.write(directory);
+	}
+}
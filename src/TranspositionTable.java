@@ -0,0 +1,198 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of search results, shared by any number of search threads without locking
+ * Entries live in a flat long array, two longs each: the position key XORed with the data, then the data
+ * A reader only accepts an entry whose two halves XOR back to its own key, so an entry torn by two
+ * threads writing at once reads as a miss instead of as another position's result
+ * The data word packs the best move, score, depth, bound type and the age of the search that stored it
+ * @author Stephen S
+ *
+ */
+public class TranspositionTable {
+	
+	//bound types
+	public static final int BOUND_NONE = 0;
+	public static final int BOUND_UPPER = 1;
+	public static final int BOUND_LOWER = 2;
+	public static final int BOUND_EXACT = 3;
+	
+	//entries that share a slot, one 64-byte cache line
+	private static final int BUCKET_SIZE = 4;
+	private static final int ENTRY_BYTES = 16;
+	
+	//layout of the data word
+	private static final int SCORE_SHIFT = 16;
+	private static final int DEPTH_SHIFT = 32;
+	private static final int BOUND_SHIFT = 40;
+	private static final int AGE_SHIFT = 42;
+	private static final int AGE_MASK = 0x3F;
+	
+	private long[] table;
+	private long bucketMask;
+	private volatile int age;
+	
+	/**
+	 * Constructor
+	 * @param megabytes size of the table, rounded down to a power of two
+	 */
+	public TranspositionTable(int megabytes) {
+		resize(megabytes);
+	}
+	
+	/**
+	 * Replaces the table with an empty one of the given size
+	 * Must not be called while a search is using the table
+	 * @param megabytes size of the table, rounded down to a power of two
+	 */
+	public void resize(int megabytes) {
+		long buckets = Long.highestOneBit(Math.max(1, (long) megabytes * 1024 * 1024 / (ENTRY_BYTES * BUCKET_SIZE)));
+		
+		//a Java array holds at most 2^31 - 1 longs
+		while (buckets * BUCKET_SIZE * 2 > Integer.MAX_VALUE) {
+			buckets >>= 1;
+		}
+		
+		table = new long[(int) (buckets * BUCKET_SIZE * 2)];
+		bucketMask = buckets - 1;
+		age = 0;
+	}
+	
+	/**
+	 * Empties the table
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		age = 0;
+	}
+	
+	/**
+	 * Starts a new search, so entries from older searches are replaced first
+	 */
+	public void newSearch() {
+		age = (age + 1) & AGE_MASK;
+	}
+	
+	/**
+	 * Looks up a position
+	 * @param key Zobrist key of the position
+	 * @return the data word of the entry, or 0 if the position is not in the table
+	 */
+	public long probe(long key) {
+		int index = bucket(key);
+		
+		for (int i = 0; i < BUCKET_SIZE; i++, index += 2) {
+			long data = table[index + 1];
+			
+			if ((table[index] ^ data) == key && data != 0) {
+				return data;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Stores a search result, replacing the same position or else the shallowest and oldest entry of its bucket
+	 * @param key Zobrist key of the position
+	 * @param move best move as a 16-bit code, or 0 if there is none
+	 * @param score score from the side to move's point of view, which must fit in 16 bits
+	 * @param depth remaining depth searched, at most 255
+	 * @param bound one of the bound constants
+	 */
+	public void store(long key, int move, int score, int depth, int bound) {
+		int index = bucket(key);
+		int replace = index;
+		int worst = Integer.MAX_VALUE;
+		
+		for (int i = 0; i < BUCKET_SIZE; i++, index += 2) {
+			long data = table[index + 1];
+			
+			if ((table[index] ^ data) == key) {
+				//keep the old best move if this search did not find one
+				if (move == 0) {
+					move = move(data);
+				}
+				replace = index;
+				break;
+			}
+			
+			//every search that has passed since the entry was written counts against it like lost depth
+			int entryAge = (int) (data >>> AGE_SHIFT) & AGE_MASK;
+			int priority = depth(data) - 8 * ((age - entryAge) & AGE_MASK);
+			
+			if (data == 0) {
+				priority = Integer.MIN_VALUE;
+			}
+			if (priority < worst) {
+				worst = priority;
+				replace = index;
+			}
+		}
+		
+		long data = (move & 0xFFFFL)
+				| ((score & 0xFFFFL) << SCORE_SHIFT)
+				| ((long) Math.min(depth, 0xFF) << DEPTH_SHIFT)
+				| ((long) bound << BOUND_SHIFT)
+				| ((long) age << AGE_SHIFT);
+				
+		table[replace] = key ^ data;
+		table[replace + 1] = data;
+	}
+	
+	/**
+	 * Estimates how full the table is from its first thousand entries
+	 * @return entries written during the current search, per thousand
+	 */
+	public int hashfull() {
+		int used = 0;
+		int entries = Math.min(1000, table.length / 2);
+		
+		for (int i = 0; i < entries; i++) {
+			long data = table[2 * i + 1];
+			if (data != 0 && ((int) (data >>> AGE_SHIFT) & AGE_MASK) == age) {
+				used++;
+			}
+		}
+		return used * 1000 / entries;
+	}
+	
+	/**
+	 * @param key
+	 * @return index of the first long of the key's bucket
+	 */
+	private int bucket(long key) {
+		return (int) (key & bucketMask) * BUCKET_SIZE * 2;
+	}
+	
+	/**
+	 * @param data data word from probe
+	 * @return the stored best move code
+	 */
+	public static int move(long data) {
+		return (int) (data & 0xFFFF);
+	}
+	
+	/**
+	 * @param data data word from probe
+	 * @return the stored score
+	 */
+	public static int score(long data) {
+		return (short) (data >>> SCORE_SHIFT);
+	}
+	
+	/**
+	 * @param data data word from probe
+	 * @return the stored depth
+	 */
+	public static int depth(long data) {
+		return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+	}
+	
+	/**
+	 * @param data data word from probe
+	 * @return the stored bound type
+	 */
+	public static int bound(long data) {
+		return (int) (data >>> BOUND_SHIFT) & 3;
+	}
+}
@@ -0,0 +1,409 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the engine under the Universal Chess Interface, for tournament managers and analysis GUIs
+ * Commands are read on the calling thread while the search runs on a thread of its own,
+ * so a stop or ponderhit is acted on the moment it arrives, even in the middle of an iteration
+ * Output is buffered and flushed once per message
+ * Usage: java Uci
+ * @author Stephen S
+ *
+ */
+public class Uci {
+	
+	private static final String NAME = "Chess";
+	private static final String AUTHOR = "Stephen S";
+	
+	private static final int DEFAULT_HASH = 16;
+	private static final int MAX_HASH = 4096;
+	private static final int MAX_THREADS = 64;
+	
+	//time kept back from every move for the GUI and the pipe, and the moves left assumed when the GUI does not say
+	private static final long MOVE_OVERHEAD = 30;
+	private static final int MOVES_TO_GO = 30;
+	
+	private PrintStream out;
+	
+	private Board board;
+	private Game game;
+	
+	private TranspositionTable table;
+	private ParallelSearch search;
+	private int threads;
+	
+	private ExecutorService searchThread;
+	private ScheduledExecutorService timer;
+	private Future<?> running;
+	private ScheduledFuture<?> ponderStop;
+	
+	//set while a ponder or infinite search must not answer before stop or ponderhit
+	private boolean holding;
+	private final Object lock = new Object();
+	
+	//time for the move being pondered, which starts counting at ponderhit
+	private long ponderMillis;
+	
+	/**
+	 * Constructor
+	 * @param out where responses go
+	 */
+	public Uci(PrintStream out) {
+		this.out = out;
+		board = new Board();
+		game = new Game(board);
+		table = new TranspositionTable(DEFAULT_HASH);
+		threads = 1;
+		search = newSearch();
+		
+		searchThread = Executors.newSingleThreadExecutor(r -> daemon(r, "uci search"));
+		timer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "uci timer"));
+	}
+	
+	private static Thread daemon(Runnable r, String name) {
+		Thread thread = new Thread(r, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+	
+	private ParallelSearch newSearch() {
+		ParallelSearch parallel = new ParallelSearch(table, threads);
+		parallel.setListener(this::info);
+		return parallel;
+	}
+	
+	/**
+	 * Handles one command line
+	 * @param line
+	 * @return false after quit
+	 */
+	public boolean command(String line) {
+		String[] tokens = line.trim().split("\\s+");
+		
+		switch (tokens[0]) {
+		case "uci":
+			send("id name " + NAME + "\nid author " + AUTHOR
+					+ "\noption name Hash type spin default " + DEFAULT_HASH + " min 1 max " + MAX_HASH
+					+ "\noption name Threads type spin default 1 min 1 max " + MAX_THREADS
+					+ "\noption name Ponder type check default false"
+					+ "\nuciok");
+			break;
+		case "isready":
+			send("readyok");
+			break;
+		case "ucinewgame":
+			stopSearch();
+			table.clear();
+			break;
+		case "setoption":
+			stopSearch();
+			setOption(tokens);
+			break;
+		case "position":
+			stopSearch();
+			position(tokens);
+			break;
+		case "go":
+			stopSearch();
+			go(tokens);
+			break;
+		case "stop":
+			stopSearch();
+			break;
+		case "ponderhit":
+			ponderhit();
+			break;
+		case "quit":
+			stopSearch();
+			search.shutdown();
+			return false;
+		default:
+			//debug, register and unknown commands are ignored, as the protocol asks
+			break;
+		}
+		return true;
+	}
+	
+	/**
+	 * setoption name Hash value 64
+	 */
+	private void setOption(String[] tokens) {
+		String name = value(tokens, "name");
+		String value = value(tokens, "value");
+		if (name == null || value == null) {
+			return;
+		}
+		
+		try {
+			if (name.equalsIgnoreCase("Hash")) {
+				table.resize(Math.max(1, Math.min(MAX_HASH, Integer.parseInt(value))));
+			} else if (name.equalsIgnoreCase("Threads")) {
+				threads = Math.max(1, Math.min(MAX_THREADS, Integer.parseInt(value)));
+				search.shutdown();
+				search = newSearch();
+			}
+		} catch (NumberFormatException e) {
+			send("info string bad value for " + name + ": " + value);
+		}
+	}
+	
+	/**
+	 * position startpos moves e2e4 e7e5, or position fen <fen> moves ...
+	 */
+	private void position(String[] tokens) {
+		int i = 1;
+		try {
+			if (i < tokens.length && tokens[i].equals("startpos")) {
+				game.setPosition(Board.START_FEN);
+				i++;
+			} else if (i < tokens.length && tokens[i].equals("fen")) {
+				StringBuilder fen = new StringBuilder();
+				for (i++; i < tokens.length && !tokens[i].equals("moves"); i++) {
+					fen.append(tokens[i]).append(' ');
+				}
+				game.setPosition(fen.toString().trim());
+			} else {
+				send("info string position needs startpos or fen");
+				return;
+			}
+		} catch (IllegalArgumentException e) {
+			send("info string " + e.getMessage());
+			game.setPosition(Board.START_FEN);
+			return;
+		}
+		
+		if (i < tokens.length && tokens[i].equals("moves")) {
+			for (i++; i < tokens.length; i++) {
+				Move move = game.findMove(tokens[i]);
+				if (move == null) {
+					send("info string illegal move " + tokens[i]);
+					return;
+				}
+				game.move(move);
+			}
+		}
+	}
+	
+	/**
+	 * go [ponder] [infinite] [depth d] [nodes n] [movetime ms] [wtime ms] [btime ms] [winc ms] [binc ms] [movestogo n]
+	 */
+	private void go(String[] tokens) {
+		int depth = (int) number(tokens, "depth");
+		long nodes = number(tokens, "nodes");
+		long moveTime = number(tokens, "movetime");
+		boolean infinite = has(tokens, "infinite");
+		boolean ponder = has(tokens, "ponder");
+		
+		boolean white = board.isWhiteTurn();
+		long time = number(tokens, white ? "wtime" : "btime");
+		long increment = number(tokens, white ? "winc" : "binc");
+		long movesToGo = number(tokens, "movestogo");
+		
+		long millis = moveTime;
+		if (millis == 0 && time > 0) {
+			millis = time / (movesToGo > 0 ? movesToGo + 1 : MOVES_TO_GO) + increment * 3 / 4;
+			millis = Math.min(millis, time - MOVE_OVERHEAD);
+		}
+		if (moveTime > 0 || time > 0) {
+			millis = Math.max(1, millis);
+		}
+		
+		synchronized (lock) {
+			holding = infinite || ponder;
+		}
+		ponderMillis = ponder ? millis : 0;
+		
+		//a ponder search has no time limit until ponderhit, and an infinite one never has
+		final Search.Limits limits = new Search.Limits(depth, nodes, holding ? 0 : millis);
+		
+		//the search thread gets its own copy, so the next position command cannot change the board under it,
+		//with the moves played so far so the search sees repetitions of earlier positions
+		final Board position = new Board(board, true);
+		search.ready();
+		running = searchThread.submit(() -> {
+			Search.Result result = search.search(position, limits);
+			waitForStop();
+			bestMove(result);
+		});
+	}
+	
+	/**
+	 * The opponent played the move being pondered, so the search now runs on the clock
+	 */
+	private void ponderhit() {
+		synchronized (lock) {
+			holding = false;
+			lock.notifyAll();
+		}
+		if (ponderMillis > 0 && running != null && !running.isDone()) {
+			ponderStop = timer.schedule(() -> search.stop(), ponderMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Stops the search, if any, and waits until it has sent its best move
+	 * A search that has not started searching yet returns as soon as it starts
+	 */
+	private void stopSearch() {
+		synchronized (lock) {
+			holding = false;
+			lock.notifyAll();
+		}
+		if (ponderStop != null) {
+			ponderStop.cancel(false);
+			ponderStop = null;
+		}
+		if (running == null) {
+			return;
+		}
+		
+		search.stop();
+		try {
+			running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			send("info string search failed: " + e.getCause());
+		}
+		running = null;
+	}
+	
+	/**
+	 * A ponder or infinite search that ends on its own still waits for stop or ponderhit before answering
+	 */
+	private void waitForStop() {
+		synchronized (lock) {
+			while (holding) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sends an info line for a completed iteration
+	 */
+	private void info(Search.Result result) {
+		StringBuilder line = new StringBuilder("info depth ").append(result.depth);
+		
+		if (Math.abs(result.score) > Search.MATE - Search.MAX_PLY) {
+			//plies to mate, turned into moves, negative when the side to move is being mated
+			int plies = Search.MATE - Math.abs(result.score);
+			line.append(" score mate ").append(result.score > 0 ? (plies + 1) / 2 : -(plies / 2));
+		} else {
+			line.append(" score cp ").append(result.score);
+		}
+		
+		line.append(" nodes ").append(result.nodes)
+			.append(" nps ").append(result.nodes * 1000 / Math.max(1, result.millis))
+			.append(" time ").append(result.millis)
+			.append(" hashfull ").append(table.hashfull());
+			
+		if (!result.pv.isEmpty()) {
+			line.append(" pv");
+			for (String move : result.pv) {
+				line.append(' ').append(move);
+			}
+		}
+		send(line.toString());
+	}
+	
+	private void bestMove(Search.Result result) {
+		if (result.move == null) {
+			//no legal moves, which a GUI should not have asked about
+			send("bestmove 0000");
+		} else if (result.pv.size() > 1) {
+			send("bestmove " + MoveCode.name(result.move.getCode()) + " ponder " + result.pv.get(1));
+		} else {
+			send("bestmove " + MoveCode.name(result.move.getCode()));
+		}
+	}
+	
+	/**
+	 * Writes a message and flushes it, from either thread
+	 */
+	private void send(String message) {
+		synchronized (out) {
+			out.println(message);
+			out.flush();
+		}
+	}
+	
+	/**
+	 * @return the token after a keyword, up to the next value keyword for setoption, or null
+	 */
+	private static String value(String[] tokens, String keyword) {
+		StringBuilder value = null;
+		for (int i = 0; i < tokens.length; i++) {
+			if (value == null && tokens[i].equals(keyword)) {
+				value = new StringBuilder();
+			} else if (value != null) {
+				if (tokens[i].equals("value")) {
+					break;
+				}
+				value.append(value.length() > 0 ? " " : "").append(tokens[i]);
+			}
+		}
+		return value == null ? null : value.toString();
+	}
+	
+	/**
+	 * @return the number after a keyword, or 0 if it is missing
+	 */
+	private static long number(String[] tokens, String keyword) {
+		for (int i = 0; i + 1 < tokens.length; i++) {
+			if (tokens[i].equals(keyword)) {
+				try {
+					return Math.max(0, Long.parseLong(tokens[i + 1]));
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 0;
+	}
+	
+	private static boolean has(String[] tokens, String keyword) {
+		for (String token : tokens) {
+			if (token.equals(keyword)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Reads commands from standard input until quit or the end of the input
+	 * @param args
+	 */
+	public static void main(String[] args) throws IOException {
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		Uci uci = new Uci(out);
+		
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (!line.trim().isEmpty() && !uci.command(line)) {
+				break;
+			}
+		}
+		uci.stopSearch();
+		out.flush();
+	}
+}
@@ -0,0 +1,94 @@
+import java.util.Random;
+
+/**
+ * Random 64-bit keys for Zobrist hashing of positions
+ * A position's key is the XOR of the keys of every piece on its square, the side to move,
+ * the castling rights and the en passant file, so a move can update it with a few XORs
+ * The keys come from a fixed seed so they are the same on every run
+ * @author Stephen S
+ *
+ */
+public final class Zobrist {
+	
+	private static final long SEED = 0x5EED5EEDL;
+	
+	//indexed by color and piece type the same way as Board's bitboards, then by square
+	private static final long[][] PIECES = new long[2 * Piece.TYPES][Board.SQUARES];
+	private static final long[] CASTLING = new long[16];
+	private static final long[] EN_PASSANT = new long[Board.SIDES];
+	private static final long BLACK_TO_MOVE;
+	
+	static {
+		Random random = new Random(SEED);
+		
+		for (long[] squares : PIECES) {
+			for (int i = 0; i < squares.length; i++) {
+				squares[i] = random.nextLong();
+			}
+		}
+		for (int i = 0; i < CASTLING.length; i++) {
+			CASTLING[i] = random.nextLong();
+		}
+		for (int i = 0; i < EN_PASSANT.length; i++) {
+			EN_PASSANT[i] = random.nextLong();
+		}
+		BLACK_TO_MOVE = random.nextLong();
+	}
+	
+	private Zobrist() {
+	}
+	
+	/**
+	 * @param white
+	 * @param type
+	 * @param square
+	 * @return key of a piece standing on a square
+	 */
+	public static long piece(boolean white, int type, int square) {
+		return PIECES[white ? type : Piece.TYPES + type][square];
+	}
+	
+	/**
+	 * @param rights castling right bits
+	 * @return key of that set of castling rights
+	 */
+	public static long castling(int rights) {
+		return CASTLING[rights];
+	}
+	
+	/**
+	 * @param square en passant square, or Board.NO_EN_PASSANT
+	 * @return key of the en passant file, or 0 if there is none
+	 */
+	public static long enPassant(int square) {
+		return square == Board.NO_EN_PASSANT ? 0 : EN_PASSANT[Bitboard.x(square)];
+	}
+	
+	/**
+	 * @return key XORed in when it is black's turn
+	 */
+	public static long blackToMove() {
+		return BLACK_TO_MOVE;
+	}
+	
+	/**
+	 * Computes the key of a board from scratch
+	 * Board keeps its key up to date as it changes, so this is only needed to check that
+	 * @param board
+	 * @return the Zobrist key
+	 */
+	public static long hash(Board board) {
+		long key = castling(board.getCastlingRights()) ^ enPassant(board.getEnPassant());
+		
+		if (!board.isWhiteTurn()) {
+			key ^= BLACK_TO_MOVE;
+		}
+		
+		for (long occupied = board.getOccupied(); occupied != 0; occupied &= occupied - 1) {
+			int square = Bitboard.first(occupied);
+			Piece piece = board.get(square);
+			key ^= piece(piece.isWhite, piece.type, square);
+		}
+		return key;
+	}
+}